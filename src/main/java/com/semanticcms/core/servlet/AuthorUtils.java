@@ -1,6 +1,6 @@
 /*
  * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
- * Copyright (C) 2016, 2017, 2019, 2021, 2022, 2024  AO Industries, Inc.
+ * Copyright (C) 2016, 2017, 2019, 2021, 2022, 2024, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -24,12 +24,10 @@
 package com.semanticcms.core.servlet;
 
 import com.semanticcms.core.model.Author;
-import com.semanticcms.core.model.Book;
 import com.semanticcms.core.model.PageRef;
-import com.semanticcms.core.model.ParentRef;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import javax.servlet.ServletContext;
@@ -47,34 +45,6 @@ public final class AuthorUtils {
     throw new AssertionError();
   }
 
-  /**
-   * Finds all the authors for the given page.
-   *
-   * <p>When no authors provided, will use the author(s) of any parent
-   * page that is within the same book.  If there are no parent pages
-   * in this same book, uses the book's authors.</p>
-   *
-   * <p>When inheriting authorship from multiple parent pages, the authors must
-   * be in exact agreement.  This means exactly the same order and all
-   * values matching precisely.  Any mismatch in authors will result in
-   * an exception.</p>
-   */
-  public static Set<Author> findAuthors(
-      ServletContext servletContext,
-      HttpServletRequest request,
-      HttpServletResponse response,
-      com.semanticcms.core.model.Page page
-  ) throws ServletException, IOException {
-    // TODO: traversal
-    return findAuthorsRecursive(
-        servletContext,
-        request,
-        response,
-        page,
-        new HashMap<>()
-    );
-  }
-
   /**
    * Checks that both the iterables have equal objects in iteration order.
    */
@@ -94,53 +64,69 @@ public final class AuthorUtils {
     return !iter1.hasNext() && !iter2.hasNext();
   }
 
-  private static Set<Author> findAuthorsRecursive(
-      ServletContext servletContext,
-      HttpServletRequest request,
-      HttpServletResponse response,
-      com.semanticcms.core.model.Page page,
-      Map<PageRef, Set<Author>> finished
-  ) throws ServletException, IOException {
-    PageRef pageRef = page.getPageRef();
-    assert !finished.containsKey(pageRef);
-    // Use directly set authors first
-    Set<Author> pageAuthors = page.getAuthors();
-    if (pageAuthors.isEmpty()) {
-      // Use the authors of all parents in the same book
-      pageAuthors = null;
-      Book book = pageRef.getBook();
-      for (ParentRef parentRef : page.getParentRefs()) {
-        PageRef parentPageRef = parentRef.getPageRef();
-        if (book.equals(parentPageRef.getBook())) {
-          // Check finished already
-          Set<Author> parentAuthors = finished.get(parentPageRef);
-          if (parentAuthors == null) {
-            // Capture parent and find its authors
-            parentAuthors = findAuthorsRecursive(
-                servletContext,
-                request,
-                response,
-                CapturePage.capturePage(servletContext, request, response, parentPageRef, CaptureLevel.PAGE),
-                finished
-            );
-          }
+  private static final InheritedProperty<Set<Author>> AUTHORS = new InheritedProperty<>("authors") {
+    @Override
+    boolean isInherited(com.semanticcms.core.model.Page page) {
+      return page.getAuthors().isEmpty();
+    }
+
+    @Override
+    Set<Author> resolve(com.semanticcms.core.model.Page page, List<Set<Author>> parentAuthors) throws ServletException {
+      // Use directly set authors first
+      Set<Author> pageAuthors = page.getAuthors();
+      if (pageAuthors.isEmpty()) {
+        // Use the authors of all parents in the same book
+        pageAuthors = null;
+        for (Set<Author> parentAuthor : parentAuthors) {
           if (pageAuthors == null) {
-            pageAuthors = parentAuthors;
+            pageAuthors = parentAuthor;
           } else {
             // Must precisely match when have multiple parents
-            if (!exactMatch(pageAuthors, parentAuthors)) {
-              throw new ServletException("Mismatched authors inherited from different parents: " + pageAuthors + " does not match " + parentAuthors);
+            if (!exactMatch(pageAuthors, parentAuthor)) {
+              throw new ServletException("Mismatched authors inherited from different parents: " + pageAuthors + " does not match " + parentAuthor);
             }
           }
         }
+        // No parents in the same book, use book authors
+        if (pageAuthors == null) {
+          pageAuthors = page.getPageRef().getBook().getAuthors();
+        }
       }
-      // No parents in the same book, use book authors
-      if (pageAuthors == null) {
-        pageAuthors = book.getAuthors();
-      }
+      return pageAuthors;
     }
-    // Store in finished
-    finished.put(pageRef, pageAuthors);
-    return pageAuthors;
+  };
+
+  /**
+   * Finds all the authors for the given page.
+   *
+   * <p>When no authors provided, will use the author(s) of any parent
+   * page that is within the same book.  If there are no parent pages
+   * in this same book, uses the book's authors.</p>
+   *
+   * <p>When inheriting authorship from multiple parent pages, the authors must
+   * be in exact agreement.  This means exactly the same order and all
+   * values matching precisely.  Any mismatch in authors will result in
+   * an exception.</p>
+   */
+  public static Set<Author> findAuthors(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      com.semanticcms.core.model.Page page
+  ) throws ServletException, IOException {
+    return AUTHORS.get(servletContext, request, response, page);
+  }
+
+  /**
+   * Finds all the authors for the given page and every page below it within the same book,
+   * resolving the whole book in a single pass when given the book's content root.
+   */
+  public static Map<PageRef, Set<Author>> findAllAuthors(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      com.semanticcms.core.model.Page root
+  ) throws ServletException, IOException {
+    return AUTHORS.getAll(servletContext, request, response, root);
   }
 }
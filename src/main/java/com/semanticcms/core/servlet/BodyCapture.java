@@ -0,0 +1,111 @@
+/*
+ * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-servlet.
+ *
+ * semanticcms-core-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.servlet;
+
+import com.aoapps.encoding.taglib.EncodingBufferedTag;
+import com.aoapps.io.buffer.BufferResult;
+import com.aoapps.io.buffer.BufferWriter;
+import com.aoapps.io.buffer.EmptyResult;
+import java.io.IOException;
+import java.io.PrintWriter;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import javax.servlet.jsp.SkipPageException;
+import org.apache.commons.lang3.NotImplementedException;
+
+/**
+ * Captures the output of page and element bodies.
+ *
+ * <p>The output is recorded in segments, without copying, by the buffer from
+ * {@link EncodingBufferedTag#newBufferWriter(javax.servlet.ServletRequest)}.  Large bodies automatically spill to
+ * temporary files.  The results are trimmed as views over the buffer.</p>
+ */
+final class BodyCapture {
+
+  /** Make no instances. */
+  private BodyCapture() {
+    throw new AssertionError();
+  }
+
+  @FunctionalInterface
+  static interface Body {
+    /**
+     * @param  capturedResponse  the response with its writer capturing the output
+     */
+    void doBody(HttpServletResponse capturedResponse) throws ServletException, IOException, SkipPageException;
+  }
+
+  /**
+   * Invokes the body in a new page context, capturing its output.
+   */
+  static BufferResult capture(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      Body body
+  ) throws ServletException, IOException, SkipPageException {
+    BufferWriter capturedOut = EncodingBufferedTag.newBufferWriter(request);
+    try {
+      try (PrintWriter capturedPW = new PrintWriter(capturedOut)) {
+        final HttpServletResponse newResponse = new HttpServletResponseWrapper(response) {
+          @Override
+          public PrintWriter getWriter() throws IOException {
+            return capturedPW;
+          }
+
+          @Override
+          public ServletOutputStream getOutputStream() {
+            throw new NotImplementedException("getOutputStream not expected");
+          }
+        };
+        // Set PageContext
+        PageContext.newPageContextSkip(
+            servletContext,
+            request,
+            newResponse,
+            () -> body.doBody(newResponse)
+        );
+        if (capturedPW.checkError()) {
+          throw new IOException("Error on capturing PrintWriter");
+        }
+      }
+    } finally {
+      capturedOut.close();
+    }
+    return capturedOut.getResult();
+  }
+
+  /**
+   * Trims the captured output as a view over the buffer.  When nothing remains, the shared empty result is used
+   * so the buffer may be released, which is common for bodies containing only whitespace and nested elements.
+   */
+  static BufferResult trim(BufferResult result) throws IOException {
+    BufferResult trimmed = result.trim();
+    return (trimmed.getLength() == 0) ? EmptyResult.getInstance() : trimmed;
+  }
+}
@@ -0,0 +1,459 @@
+/*
+ * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-servlet.
+ *
+ * semanticcms-core-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.semanticcms.core.servlet;
+
+import com.aoapps.net.URIResolver;
+import com.semanticcms.core.model.Book;
+import com.semanticcms.core.model.PageRef;
+import com.semanticcms.core.model.ParentRef;
+import java.lang.ref.WeakReference;
+import java.net.MalformedURLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An immutable index of the books, built each time the books are loaded.  The books are reloaded by replacing the
+ * index as a whole.
+ *
+ * <p>Books are found by servlet path through a radix trie over the book names, which finds the longest matching
+ * book in a single pass without allocating any substrings.</p>
+ *
+ * <p>The index also holds the shared page references and memoized relative paths, which depend on the books and
+ * are discarded along with the index.</p>
+ *
+ * @see  SemanticCMS#getBook(java.lang.String)
+ */
+final class BookIndex {
+
+  private static final char[] EMPTY_FIRST_CHARS = {};
+  private static final TrieNode[] EMPTY_CHILDREN = {};
+
+  /**
+   * A node in the radix trie.  The trie is only modified while the index is being built.
+   */
+  private static final class TrieNode {
+
+    /**
+     * The characters on the edge from the parent to this node, empty only for the root.
+     */
+    private String label;
+
+    /**
+     * The book with a name ending at this node or {@code null} when none.
+     */
+    private Book book;
+
+    /**
+     * The first character of the label of each child, sorted for binary search.
+     */
+    private char[] firstChars = EMPTY_FIRST_CHARS;
+
+    /**
+     * The children, in the same order as {@link #firstChars}.
+     */
+    private TrieNode[] children = EMPTY_CHILDREN;
+
+    private TrieNode(String label) {
+      this.label = label;
+    }
+
+    private TrieNode getChild(char ch) {
+      int index = Arrays.binarySearch(firstChars, ch);
+      return index < 0 ? null : children[index];
+    }
+
+    private void addChild(TrieNode child) {
+      char ch = child.label.charAt(0);
+      int index = Arrays.binarySearch(firstChars, ch);
+      if (index >= 0) {
+        throw new AssertionError("Duplicate child: " + ch);
+      }
+      int insertAt = -(index + 1);
+      int len = firstChars.length;
+      char[] newFirstChars = new char[len + 1];
+      TrieNode[] newChildren = new TrieNode[len + 1];
+      System.arraycopy(firstChars, 0, newFirstChars, 0, insertAt);
+      System.arraycopy(children, 0, newChildren, 0, insertAt);
+      newFirstChars[insertAt] = ch;
+      newChildren[insertAt] = child;
+      System.arraycopy(firstChars, insertAt, newFirstChars, insertAt + 1, len - insertAt);
+      System.arraycopy(children, insertAt, newChildren, insertAt + 1, len - insertAt);
+      firstChars = newFirstChars;
+      children = newChildren;
+    }
+
+    private void replaceChild(TrieNode oldChild, TrieNode newChild) {
+      assert oldChild.label.charAt(0) == newChild.label.charAt(0);
+      int index = Arrays.binarySearch(firstChars, oldChild.label.charAt(0));
+      assert children[index] == oldChild;
+      children[index] = newChild;
+    }
+
+    private void insert(String name, int pos, Book book) {
+      TrieNode node = this;
+      while (pos < name.length()) {
+        TrieNode child = node.getChild(name.charAt(pos));
+        if (child == null) {
+          node.addChild(newLeaf(name.substring(pos), book));
+          return;
+        }
+        String childLabel = child.label;
+        int labelLen = childLabel.length();
+        int common = 1;
+        while (
+            common < labelLen
+                && pos + common < name.length()
+                && childLabel.charAt(common) == name.charAt(pos + common)
+        ) {
+          common++;
+        }
+        if (common < labelLen) {
+          // Split the edge
+          TrieNode split = new TrieNode(childLabel.substring(0, common));
+          child.label = childLabel.substring(common);
+          split.addChild(child);
+          node.replaceChild(child, split);
+          child = split;
+        }
+        node = child;
+        pos += common;
+      }
+      if (node.book != null) {
+        throw new AssertionError("Duplicate book: " + name);
+      }
+      node.book = book;
+    }
+
+    private static TrieNode newLeaf(String label, Book book) {
+      TrieNode leaf = new TrieNode(label);
+      leaf.book = book;
+      return leaf;
+    }
+  }
+
+  private final Map<String, Book> books;
+
+  private final Set<String> missingBooks;
+
+  private final Book rootBook;
+
+  private final Map<String, List<Object>> bookConfigs;
+
+  private final long lastModified;
+
+  private final byte[] booksXmlDigest;
+
+  private final TrieNode trie = new TrieNode("");
+
+  /**
+   * The book at "/", which contains every path not in a more specific book.
+   */
+  private final Book rootPathBook;
+
+  private final Map<PageRef, Book> booksByContentRoot;
+
+  private final Map<String, String> missingBookNames;
+
+  /**
+   * @param  bookConfigs   The configuration each book was created from, used to find unchanged books on reload
+   * @param  lastModified  The last modified time of the books configuration or {@code 0} when unknown
+   * @param  booksXmlDigest  The digest of the books configuration, which has been validated
+   */
+  BookIndex(
+      Map<String, Book> books,
+      Set<String> missingBooks,
+      Book rootBook,
+      Map<String, List<Object>> bookConfigs,
+      long lastModified,
+      byte[] booksXmlDigest
+  ) {
+    this.books = Collections.unmodifiableMap(books);
+    this.missingBooks = Collections.unmodifiableSet(missingBooks);
+    this.rootBook = rootBook;
+    this.bookConfigs = bookConfigs;
+    this.lastModified = lastModified;
+    this.booksXmlDigest = booksXmlDigest;
+    Book newRootPathBook = null;
+    Map<PageRef, Book> newBooksByContentRoot = new HashMap<>();
+    for (Map.Entry<String, Book> entry : books.entrySet()) {
+      String name = entry.getKey();
+      Book book = entry.getValue();
+      if ("/".equals(name)) {
+        newRootPathBook = book;
+      } else {
+        assert name.startsWith("/") : "Book name must begin with a slash (/): " + name;
+        assert !name.endsWith("/") : "Book name must not end with a slash (/): " + name;
+        trie.insert(name, 0, book);
+      }
+      PageRef contentRoot = book.getContentRoot();
+      if (contentRoot != null) {
+        // The first book wins, in the order loaded
+        newBooksByContentRoot.putIfAbsent(contentRoot, book);
+      }
+    }
+    this.rootPathBook = newRootPathBook;
+    this.booksByContentRoot = newBooksByContentRoot;
+    Map<String, String> newMissingBooks = new HashMap<>(missingBooks.size() * 4 / 3 + 1);
+    for (String missingBook : missingBooks) {
+      newMissingBooks.put(missingBook, missingBook);
+    }
+    this.missingBookNames = newMissingBooks;
+  }
+
+  /**
+   * Gets the books, in the order loaded.
+   */
+  Map<String, Book> getBooks() {
+    return books;
+  }
+
+  Set<String> getMissingBooks() {
+    return missingBooks;
+  }
+
+  Book getRootBook() {
+    return rootBook;
+  }
+
+  /**
+   * Gets the configuration the given book was created from or {@code null} when not a book.
+   */
+  List<Object> getBookConfig(String name) {
+    return bookConfigs.get(name);
+  }
+
+  /**
+   * Gets the last modified time of the books configuration or {@code 0} when unknown.
+   */
+  long getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * Gets the digest of the books configuration, which has been validated.
+   * The returned array must not be modified.
+   */
+  byte[] getBooksXmlDigest() {
+    return booksXmlDigest;
+  }
+
+  /**
+   * Finds the book with the longest name that is followed by a slash in the servlet path, or the book at "/".
+   *
+   * @see  SemanticCMS#getBook(java.lang.String)
+   */
+  Book getBook(String servletPath) {
+    final int len = servletPath.length();
+    Book book = rootPathBook;
+    TrieNode node = trie;
+    int pos = 0;
+    while (pos < len) {
+      TrieNode child = node.getChild(servletPath.charAt(pos));
+      if (child == null) {
+        break;
+      }
+      String label = child.label;
+      int labelLen = label.length();
+      if (!servletPath.regionMatches(pos, label, 0, labelLen)) {
+        break;
+      }
+      node = child;
+      pos += labelLen;
+      // Matched along segments only, and never the full servletPath
+      if (node.book != null && pos < len && servletPath.charAt(pos) == '/') {
+        book = node.book;
+      }
+    }
+    return book;
+  }
+
+  /**
+   * Gets the book that has the given page as its content root or {@code null} when none.
+   */
+  Book getBookByContentRoot(PageRef pageRef) {
+    return booksByContentRoot.get(pageRef);
+  }
+
+  /**
+   * Gets the shared instance of the name of a missing book or {@code null} when not a missing book.
+   */
+  String internMissingBook(String name) {
+    return missingBookNames.get(name);
+  }
+
+  /**
+   * The number of independently locked stripes of shared page references, a power of two.
+   */
+  private static final int PAGE_REFS_STRIPES = 64;
+
+  /**
+   * The shared instances of page references whose hash falls in one stripe, also used as the lock for the stripe.
+   */
+  private static final class PageRefsStripe {
+
+    /**
+     * Both the keys and values are weakly held, so page references are only retained while in use.
+     */
+    private final Map<PageRef, WeakReference<PageRef>> pageRefs = new WeakHashMap<>();
+
+    /**
+     * The shared parent references without a short title, by their shared page reference.
+     * Both the keys and values are weakly held, so parent references are only retained while in use.
+     */
+    private final Map<PageRef, WeakReference<ParentRef>> parentRefs = new WeakHashMap<>();
+  }
+
+  private final PageRefsStripe[] pageRefsStripes = newPageRefsStripes();
+
+  private static PageRefsStripe[] newPageRefsStripes() {
+    PageRefsStripe[] stripes = new PageRefsStripe[PAGE_REFS_STRIPES];
+    for (int i = 0; i < PAGE_REFS_STRIPES; i++) {
+      stripes[i] = new PageRefsStripe();
+    }
+    return stripes;
+  }
+
+  /**
+   * Gets the shared instance of the given page reference.
+   * Page references are striped by hash, so concurrent requests rarely contend for the same lock.
+   */
+  PageRef internPageRef(PageRef pageRef) {
+    PageRefsStripe stripe = getPageRefsStripe(pageRef);
+    synchronized (stripe) {
+      return internPageRef(stripe, pageRef);
+    }
+  }
+
+  private PageRefsStripe getPageRefsStripe(PageRef pageRef) {
+    int hash = pageRef.hashCode();
+    return pageRefsStripes[(hash ^ (hash >>> 16)) & (PAGE_REFS_STRIPES - 1)];
+  }
+
+  private static PageRef internPageRef(PageRefsStripe stripe, PageRef pageRef) {
+    assert Thread.holdsLock(stripe);
+    Map<PageRef, WeakReference<PageRef>> pageRefs = stripe.pageRefs;
+    WeakReference<PageRef> ref = pageRefs.get(pageRef);
+    PageRef existing = (ref == null) ? null : ref.get();
+    // Also match the book instance, in case equality only considers the book name
+    if (existing != null && existing.getBook() == pageRef.getBook()) {
+      return existing;
+    }
+    // Remove first, since put keeps the existing key
+    pageRefs.remove(pageRef);
+    pageRefs.put(pageRef, new WeakReference<>(pageRef));
+    return pageRef;
+  }
+
+  /**
+   * Gets the shared parent reference, without a short title, to the shared instance of the given page reference.
+   * Many pages have the same auto parent, so each of them refers to the same parent reference.
+   */
+  ParentRef internParentRef(PageRef pageRef) {
+    PageRefsStripe stripe = getPageRefsStripe(pageRef);
+    synchronized (stripe) {
+      pageRef = internPageRef(stripe, pageRef);
+      Map<PageRef, WeakReference<ParentRef>> parentRefs = stripe.parentRefs;
+      WeakReference<ParentRef> ref = parentRefs.get(pageRef);
+      ParentRef existing = (ref == null) ? null : ref.get();
+      // Only the shared page reference is used as a key
+      if (existing != null && existing.getPageRef() == pageRef) {
+        return existing;
+      }
+      ParentRef parentRef = new ParentRef(pageRef, null);
+      parentRefs.remove(pageRef);
+      parentRefs.put(pageRef, new WeakReference<>(parentRef));
+      return parentRef;
+    }
+  }
+
+  /**
+   * The maximum number of relative page references memoized before the memo is replaced.
+   */
+  private static final int MAX_RELATIVE_PAGE_REFS = 10000;
+
+  /**
+   * The memoized page references resolved relative to a page, by current page path then relative path, along with
+   * their number.  Replaced as a whole when full, so a page reference is never counted against a different map than
+   * the one it was added to.
+   */
+  private static final class RelativePageRefs {
+
+    private final ConcurrentMap<String, ConcurrentMap<String, PageRef>> byCurrentPagePath = new ConcurrentHashMap<>();
+
+    /**
+     * The number of page references added, which may count a page reference more than once when added concurrently.
+     */
+    private final AtomicInteger size = new AtomicInteger();
+  }
+
+  private final AtomicReference<RelativePageRefs> relativePageRefs = new AtomicReference<>(new RelativePageRefs());
+
+  /**
+   * Resolves a path relative to the given page, memoizing the result.
+   *
+   * @return  the shared instance of the page reference or {@code null} when the current page is not in a book
+   *
+   * @see  PageRefResolver#getPageRef(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, java.lang.String, java.lang.String)
+   */
+  PageRef getRelativePageRef(String currentPagePath, String path) throws MalformedURLException {
+    RelativePageRefs memo = relativePageRefs.get();
+    ConcurrentMap<String, PageRef> byPath = memo.byCurrentPagePath.get(currentPagePath);
+    PageRef pageRef = (byPath == null) ? null : byPath.get(path);
+    if (pageRef == null) {
+      Book currentBook = getBook(currentPagePath);
+      if (currentBook == null) {
+        return null;
+      }
+      pageRef = internPageRef(
+          new PageRef(
+              currentBook,
+              URIResolver.getAbsolutePath(
+                  currentPagePath.substring(currentBook.getPathPrefix().length()),
+                  path
+              )
+          )
+      );
+      if (memo.size.incrementAndGet() > MAX_RELATIVE_PAGE_REFS) {
+        // Start over, rather than track usage.  Only the first to find the memo full replaces it.
+        relativePageRefs.compareAndSet(memo, new RelativePageRefs());
+      } else {
+        if (byPath == null) {
+          byPath = memo.byCurrentPagePath.computeIfAbsent(currentPagePath, key -> new ConcurrentHashMap<>());
+        }
+        byPath.put(path, pageRef);
+      }
+    }
+    return pageRef;
+  }
+}
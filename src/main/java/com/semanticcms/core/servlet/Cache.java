@@ -1,6 +1,6 @@
 /*
  * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
- * Copyright (C) 2016, 2017, 2018, 2019, 2021, 2022, 2024  AO Industries, Inc.
+ * Copyright (C) 2016, 2017, 2018, 2019, 2021, 2022, 2024, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -26,6 +26,7 @@ package com.semanticcms.core.servlet;
 import com.semanticcms.core.model.Page;
 import com.semanticcms.core.model.PageRef;
 import java.util.Map;
+import java.util.Set;
 import javax.servlet.ServletException;
 
 /**
@@ -52,72 +53,100 @@ public abstract class Cache {
   protected static final boolean VERIFY_CACHE_PARENT_CHILD_RELATIONSHIPS = true;
 
   /**
-   * Caches pages that have been captured within the scope of a single request.
+   * Gets a captured page.
+   * A lookup of level PAGE will also perform a lookup of META if not found.
    *
    * <p>IDEA: Could also cache over time, since there is currently no concept of a "user" (except whether request is trusted
    *       127.0.0.1 or not).</p>
+   *
+   * @param  level  the capture level, which is never {@link CaptureLevel#BODY} since body captures are not cached
    */
-  static class CaptureKey {
-
-    final PageRef pageRef;
-    final CaptureLevel level;
+  abstract Page get(PageRef pageRef, CaptureLevel level);
 
-    CaptureKey(
-        PageRef pageRef,
-        CaptureLevel level
-    ) {
-      this.pageRef = pageRef;
-      assert level != CaptureLevel.BODY : "Body captures are not cached";
-      this.level = level;
-    }
+  /**
+   * Adds the provided page to the cache.  Will also verify parent-child relationships
+   * on an as-needed basis.
+   *
+   * @param  level  the capture level, which is never {@link CaptureLevel#BODY} since body captures are not cached
+   */
+  abstract void put(PageRef pageRef, CaptureLevel level, Page page) throws ServletException;
 
-    @Override
-    public boolean equals(Object o) {
-      if (!(o instanceof CaptureKey)) {
-        return false;
-      }
-      CaptureKey other = (CaptureKey) o;
-      return
-          level == other.level
-              && pageRef.equals(other.pageRef);
-    }
+  /**
+   * Adds the provided page to the cache, unless any page has been {@linkplain #invalidate(java.util.Set) invalidated}
+   * since the given {@linkplain DependencyGraph#getGeneration() generation} of the dependency graph, in which case the
+   * page may have been captured from stale pages.
+   *
+   * @param  level  the capture level, which is never {@link CaptureLevel#BODY} since body captures are not cached
+   */
+  void put(PageRef pageRef, CaptureLevel level, Page page, long generation) throws ServletException {
+    put(pageRef, level, page);
+  }
 
-    private int hash;
+  /**
+   * Gets the pages currently in this cache, at any capture level.
+   */
+  abstract Set<PageRef> getPageRefs();
 
-    @Override
-    public int hashCode() {
-      int h = hash;
-      if (h == 0) {
-        h = level.hashCode();
-        h = h * 31 + pageRef.hashCode();
-        hash = h;
-      }
-      return h;
-    }
+  /**
+   * Removes all pages from the given books, along with any pages that refer to them as a parent or child.
+   * Every page and attribute derived from the removed pages is also removed.
+   * When this cache does not track dependencies, all attributes are removed.
+   *
+   * @param  bookNames  the names of the books, which may include missing books
+   */
+  abstract void removeBooks(Set<String> bookNames);
 
-    @Override
-    public String toString() {
-      return '(' + level.toString() + ", " + pageRef.toString() + ')';
-    }
+  /**
+   * Gets the graph of which entries were derived from which pages.
+   *
+   * @return  the graph or {@code null} when this cache does not track dependencies
+   */
+  DependencyGraph getDependencyGraph() {
+    return null;
   }
 
   /**
-   * A lookup of level PAGE will also perform a lookup of META if not found.
+   * Removes the given pages, along with every page and attribute that was derived from them.
+   * When this cache does not track dependencies, all attributes are removed.
+   *
+   * @return  the pages that were invalidated, including the given pages
    */
-  abstract Page get(CaptureKey key);
+  abstract Set<PageRef> invalidate(Set<PageRef> pageRefs);
 
   /**
-   * A lookup of level PAGE will also perform a lookup of META if not found.
+   * Records that a cache attribute was derived from the given page, so the attribute is removed when the page is
+   * {@linkplain #invalidate(java.util.Set) invalidated}.  Pages read while capturing another page are recorded
+   * automatically; this is only needed for attributes.
+   * Does nothing when this cache does not track dependencies.
    */
-  Page get(PageRef pageRef, CaptureLevel level) {
-    return get(new CaptureKey(pageRef, level));
+  public void addDependency(String key, PageRef pageRef) {
+    DependencyGraph dependencyGraph = getDependencyGraph();
+    if (dependencyGraph != null) {
+      dependencyGraph.addDependency(key, pageRef);
+    }
   }
 
   /**
-   * Adds the provided page to the cache.  Will also verify parent-child relationships
-   * on an as-needed basis.
+   * Gets the current generation of this cache, which changes whenever any page is
+   * {@linkplain #invalidate(java.util.Set) invalidated}.  Always zero when this cache does not track dependencies.
+   *
+   * @see  #setAttribute(java.lang.String, java.lang.Object, long)
+   */
+  public long getGeneration() {
+    DependencyGraph dependencyGraph = getDependencyGraph();
+    return (dependencyGraph == null) ? 0 : dependencyGraph.getGeneration();
+  }
+
+  /**
+   * Sets an attribute derived from pages read since the given {@linkplain #getGeneration() generation}.  The attribute
+   * is removed again when any page has been invalidated since, since it may have been derived from stale pages.
    */
-  abstract void put(CaptureKey key, Page page) throws ServletException;
+  public void setAttribute(String key, Object value, long generation) {
+    setAttribute(key, value);
+    if (getGeneration() != generation) {
+      removeAttribute(key);
+    }
+  }
 
   /**
    * Creates a new map that is suitable for the expected thread safety requirements.
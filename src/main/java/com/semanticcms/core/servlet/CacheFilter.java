@@ -1,6 +1,6 @@
 /*
  * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
- * Copyright (C) 2016, 2017, 2019, 2020, 2021, 2022, 2024  AO Industries, Inc.
+ * Copyright (C) 2016, 2017, 2019, 2020, 2021, 2022, 2024, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -25,7 +25,9 @@ package com.semanticcms.core.servlet;
 
 import com.aoapps.servlet.attribute.AttributeEE;
 import com.aoapps.servlet.attribute.ScopeEE;
+import com.semanticcms.core.model.PageRef;
 import java.io.IOException;
+import java.util.Set;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -67,6 +69,34 @@ public class CacheFilter implements Filter {
     return cache;
   }
 
+  /**
+   * Gets the cache to use for the current request or {@code null} when the filter is not active on the current
+   * request.
+   */
+  static Cache findCache(ServletRequest request) {
+    return CAPTURE_CACHE_REQUEST_ATTRIBUTE.context(request).get();
+  }
+
+  /**
+   * Sets the cache to use for the given request, replacing any cache resolved by the filter.
+   *
+   * @param  cache  the new cache or {@code null} to remove the cache
+   *
+   * @return  the previous cache or {@code null} when none
+   *
+   * @see  Exporter
+   */
+  static Cache setCache(ServletRequest request, Cache cache) {
+    AttributeEE.Request<Cache> captureCacheRequestAttribute = CAPTURE_CACHE_REQUEST_ATTRIBUTE.context(request);
+    Cache oldCache = captureCacheRequestAttribute.get();
+    if (cache == null) {
+      captureCacheRequestAttribute.remove();
+    } else {
+      captureCacheRequestAttribute.set(cache);
+    }
+    return oldCache;
+  }
+
   /**
    * To speed up an export, the elements are cached between requests.
    * The first non-exporting request will clear this cache, and it will also
@@ -129,10 +159,59 @@ public class CacheFilter implements Filter {
       invalidateCache(currentTime);
       if (cache == null) {
         cacheStart = currentTime;
-        cache = concurrentSubrequests ? new ConcurrentCache() : new SynchronizedCache();
+        // Tracks dependencies, since this cache is used across requests
+        cache = concurrentSubrequests ? new ConcurrentCache(true) : new SynchronizedCache(true);
       }
       return cache;
     }
+
+    /**
+     * Removes the given books from the cache, if active.
+     */
+    void removeBooks(Set<String> bookNames) {
+      assert Thread.holdsLock(filter.exportCacheLock);
+      if (cache != null) {
+        cache.removeBooks(bookNames);
+      }
+    }
+
+    /**
+     * Invalidates the given pages in the cache, if active.
+     */
+    void invalidate(Set<PageRef> pageRefs) {
+      assert Thread.holdsLock(filter.exportCacheLock);
+      if (cache != null) {
+        cache.invalidate(pageRefs);
+      }
+    }
+  }
+
+  /**
+   * Removes the given books from the export cache, called when the books have been reloaded.
+   * Request-level caches are not affected, since they are discarded at the end of each request.
+   *
+   * @see  SemanticCMS#reloadBooks()
+   */
+  static void removeBooks(ServletContext servletContext, Set<String> bookNames) {
+    ExportPageCache exportCache = EXPORT_CACHE_APPLICATION_ATTRIBUTE.context(servletContext).get();
+    if (exportCache != null) {
+      synchronized (exportCache.filter.exportCacheLock) {
+        exportCache.removeBooks(bookNames);
+      }
+    }
+  }
+
+  /**
+   * Invalidates the given pages in the export cache, along with every page and attribute derived from them.
+   * Request-level caches are not affected, since they are discarded at the end of each request.
+   */
+  static void invalidate(ServletContext servletContext, Set<PageRef> pageRefs) {
+    ExportPageCache exportCache = EXPORT_CACHE_APPLICATION_ATTRIBUTE.context(servletContext).get();
+    if (exportCache != null) {
+      synchronized (exportCache.filter.exportCacheLock) {
+        exportCache.invalidate(pageRefs);
+      }
+    }
   }
 
   private ServletContext servletContext;
@@ -1,6 +1,6 @@
 /*
  * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
- * Copyright (C) 2013, 2014, 2015, 2016, 2017, 2018, 2019, 2020, 2021, 2022, 2024, 2025  AO Industries, Inc.
+ * Copyright (C) 2013, 2014, 2015, 2016, 2017, 2018, 2019, 2020, 2021, 2022, 2024, 2025, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -158,21 +158,28 @@ public final class CapturePage {
     PageRef pageRef = pageReferrer.getPageRef();
 
     // Don't use cache for full body captures
-    boolean useCache = level != CaptureLevel.BODY;
+    final boolean cacheable = level != CaptureLevel.BODY;
+    boolean useCache = cacheable;
+    if (cacheable) {
+      addDependency(request, pageRef);
+    } else {
+      // Still a dependency of the page being recorded
+      RecordingCache.recordBodyCapture(request, pageRef);
+    }
 
-    // cacheKey will be null when this capture is not to be cached
-    final Cache.CaptureKey cacheKey;
     Page capturedPage;
     if (useCache) {
       // Check the cache
-      cacheKey = new Cache.CaptureKey(pageRef, level);
-      capturedPage = cache.get(cacheKey);
+      capturedPage = cache.get(pageRef, level);
       // Set useCache = false to not put back into the cache unnecessarily below
       useCache = capturedPage == null;
     } else {
-      cacheKey = null;
       capturedPage = null;
     }
+    // Record the pages read by this capture when the cache tracks dependencies
+    final DependencyGraph dependencyGraph = useCache ? cache.getDependencyGraph() : null;
+    // Read before capturing, so an invalidation during the capture is detected on put
+    final long generation = dependencyGraph == null ? 0 : dependencyGraph.getGeneration();
 
     if (capturedPage == null) {
       // Clear request values that break captures
@@ -186,7 +193,7 @@ public final class CapturePage {
       DoctypeEE.set(subRequest, Doctype.DEFAULT);
       // Set new capture context
       CaptureLevel.setCaptureLevel(subRequest, level);
-      CapturePage captureContext = new CapturePage();
+      CapturePage captureContext = new CapturePage(pageRef, dependencyGraph);
       REQUEST_ATTRIBUTE.context(subRequest).set(captureContext);
       // Always capture as "GET" request
       subRequest.setMethod(HttpServletUtil.METHOD_GET);
@@ -228,7 +235,11 @@ public final class CapturePage {
     assert capturedPage != null;
     if (useCache) {
       // Add to cache
-      cache.put(cacheKey, capturedPage);
+      if (dependencyGraph != null) {
+        cache.put(pageRef, level, capturedPage, generation);
+      } else {
+        cache.put(pageRef, level, capturedPage);
+      }
     } else {
       // Body capture, performance is not the main objective, perform full child and parent verifications,
       // this will mean a "View All" will perform thorough verifications.
@@ -296,6 +307,7 @@ public final class CapturePage {
           Page page = cache.get(pageRef, level);
           if (page != null) {
             // Use cached value
+            addDependency(request, pageRef);
             results.put(pageRef, page);
           } else {
             // Will capture below
@@ -646,6 +658,7 @@ public final class CapturePage {
                 cached = cache.get(edge, level);
               }
               if (cached != null) {
+                addDependency(request, edge);
                 newReadyPages.add(cached);
               } else {
                 newEdgesToAdd.add(edge);
@@ -1145,8 +1158,29 @@ public final class CapturePage {
     return result;
   }
 
-  private CapturePage() {
-    // Do nothing
+  /**
+   * Records that the page being captured in the given request, if any, depends on the given page.
+   */
+  private static void addDependency(ServletRequest request, PageRef pageRef) {
+    CapturePage captureContext = getCaptureContext(request);
+    if (captureContext != null) {
+      DependencyGraph dependencyGraph = captureContext.dependencyGraph;
+      if (dependencyGraph != null) {
+        dependencyGraph.addDependency(captureContext.pageRef, pageRef);
+      }
+    }
+  }
+
+  private final PageRef pageRef;
+
+  /**
+   * The graph that records the pages read by this capture or {@code null} when not tracked.
+   */
+  private final DependencyGraph dependencyGraph;
+
+  private CapturePage(PageRef pageRef, DependencyGraph dependencyGraph) {
+    this.pageRef = pageRef;
+    this.dependencyGraph = dependencyGraph;
   }
 
   private Page capturedPage;
@@ -1,6 +1,6 @@
 /*
  * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
- * Copyright (C) 2016, 2017, 2018, 2019, 2021, 2022, 2024  AO Industries, Inc.
+ * Copyright (C) 2016, 2017, 2018, 2019, 2021, 2022, 2024, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -24,7 +24,9 @@
 package com.semanticcms.core.servlet;
 
 import com.semanticcms.core.model.Page;
+import com.semanticcms.core.model.PageRef;
 import java.util.HashMap;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import javax.servlet.ServletException;
@@ -38,16 +40,25 @@ class ConcurrentCache extends MapCache {
 
   private final ConcurrentMap<String, Object> concurrentAttributes;
 
-  ConcurrentCache() {
+  /**
+   * @param  trackDependencies  when {@code true}, tracks dependencies for precise {@linkplain #invalidate(java.util.Set) invalidation}
+   */
+  ConcurrentCache(boolean trackDependencies) {
     super(
+        new ConcurrentHashMap<>(),
         new ConcurrentHashMap<>(),
         VERIFY_CACHE_PARENT_CHILD_RELATIONSHIPS ? new HashMap<>() : null,
         VERIFY_CACHE_PARENT_CHILD_RELATIONSHIPS ? new HashMap<>() : null,
-        new ConcurrentHashMap<>()
+        new ConcurrentHashMap<>(),
+        trackDependencies
     );
     concurrentAttributes = (ConcurrentMap<String, Object>) attributes;
   }
 
+  ConcurrentCache() {
+    this(false);
+  }
+
   /**
    * Overridden to add synchronization.
    */
@@ -56,6 +67,30 @@ class ConcurrentCache extends MapCache {
     super.verifyAdded(page);
   }
 
+  /**
+   * Synchronized on the parent-child verifications, while pages continue to be concurrently available.
+   */
+  @Override
+  synchronized void removeBooks(Set<String> bookNames) {
+    super.removeBooks(bookNames);
+  }
+
+  /**
+   * Synchronized on the parent-child verifications, while pages continue to be concurrently available.
+   */
+  @Override
+  synchronized Set<PageRef> invalidate(Set<PageRef> pageRefs) {
+    return super.invalidate(pageRefs);
+  }
+
+  /**
+   * Synchronized on the parent-child verifications, while pages continue to be concurrently available.
+   */
+  @Override
+  synchronized void removeStale(PageRef pageRef, CaptureLevel level, Page page) {
+    super.removeStale(pageRef, level, page);
+  }
+
   @Override
   public <K, V> ConcurrentMap<K, V> newMap() {
     return new ConcurrentHashMap<>();
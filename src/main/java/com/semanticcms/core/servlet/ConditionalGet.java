@@ -0,0 +1,268 @@
+/*
+ * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-servlet.
+ *
+ * semanticcms-core-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.servlet;
+
+import com.aoapps.encoding.servlet.DoctypeEE;
+import com.aoapps.encoding.servlet.SerializationEE;
+import com.semanticcms.core.model.Page;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.joda.time.ReadableInstant;
+
+/**
+ * Answers conditional requests for rendered pages, so a client that already has the current page is sent
+ * {@code 304 (Not Modified)} without the theme being rendered.
+ *
+ * <p>Conditional requests are only supported when the view knows the
+ * {@linkplain View#getLastModified(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page) effective last modified time}
+ * of the page.  The validators then combine the view's last modified time, the last modified time of the resource
+ * being served, the time the books were loaded, the page dates, the names of the theme and view, and the negotiated
+ * serialization and doctype.  Since the serialization may be negotiated from the {@code Accept} header, responses
+ * with validators vary on {@code Accept}.</p>
+ */
+public final class ConditionalGet {
+
+  /** Make no instances. */
+  private ConditionalGet() {
+    throw new AssertionError();
+  }
+
+  private static final String ETAG_HEADER = "ETag";
+  private static final String LAST_MODIFIED_HEADER = "Last-Modified";
+  private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+  private static final String IF_MODIFIED_SINCE_HEADER = "If-Modified-Since";
+  private static final String VARY_HEADER = "Vary";
+  private static final String ACCEPT_HEADER = "Accept";
+
+  private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+
+  /**
+   * The number of bytes of the digest used in the entity tag.
+   */
+  private static final int ETAG_BYTES = 16;
+
+  /**
+   * Gets the last modified time of the given resource or {@code 0} when unknown or not a resource.
+   */
+  static long getResourceLastModified(ServletContext servletContext, String path) throws IOException {
+    URL url = servletContext.getResource(path);
+    return (url == null) ? 0 : url.openConnection().getLastModified();
+  }
+
+  private static void append(StringBuilder validator, ReadableInstant instant) {
+    validator.append('\0');
+    if (instant != null) {
+      validator.append(instant.getMillis());
+    }
+  }
+
+  private static String toEntityTag(StringBuilder validator) {
+    byte[] digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256").digest(validator.toString().getBytes(StandardCharsets.UTF_8));
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError("All implementations are required to support the SHA-256 algorithm.", e);
+    }
+    // Weak, since the same page may be rendered byte-for-byte differently, such as by concurrent element writing
+    StringBuilder etag = new StringBuilder(4 + ETAG_BYTES * 2).append("W/\"");
+    for (int i = 0; i < ETAG_BYTES; i++) {
+      int b = digest[i];
+      etag.append(HEX_CHARS[(b >>> 4) & 0xf]).append(HEX_CHARS[b & 0xf]);
+    }
+    return etag.append('"').toString();
+  }
+
+  /**
+   * Compares entity tags using the weak comparison function.
+   */
+  static boolean matches(String ifNoneMatch, String etag) {
+    String opaqueTag = etag.substring(2);
+    for (String tag : ifNoneMatch.split(",")) {
+      tag = tag.trim();
+      if ("*".equals(tag)) {
+        return true;
+      }
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+      if (tag.equals(opaqueTag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Evaluates the conditional request headers against the current validators.
+   * {@code If-None-Match} takes precedence, with {@code If-Modified-Since} only used when it is absent.
+   *
+   * @param  ifNoneMatch      the {@code If-None-Match} header or {@code null} when absent
+   * @param  ifModifiedSince  the {@code If-Modified-Since} header or {@code -1} when absent or malformed
+   */
+  static boolean isNotModified(String ifNoneMatch, long ifModifiedSince, String etag, long lastModified) {
+    if (ifNoneMatch != null) {
+      return matches(ifNoneMatch, etag);
+    }
+    // HTTP dates are in whole seconds
+    return ifModifiedSince != -1 && (lastModified / 1000) <= (ifModifiedSince / 1000);
+  }
+
+  /**
+   * Adds {@code Vary: Accept}, since the serialization of the page may be negotiated from the {@code Accept} header.
+   * Does nothing when already added.
+   */
+  static void addVaryAccept(HttpServletResponse response) {
+    for (String vary : response.getHeaders(VARY_HEADER)) {
+      if (ACCEPT_HEADER.equalsIgnoreCase(vary.trim())) {
+        return;
+      }
+    }
+    response.addHeader(VARY_HEADER, ACCEPT_HEADER);
+  }
+
+  /**
+   * The {@code ETag} and {@code Last-Modified} of a rendered page.
+   */
+  static final class Validators {
+
+    private final String etag;
+    private final long lastModified;
+
+    private Validators(String etag, long lastModified) {
+      this.etag = etag;
+      this.lastModified = lastModified;
+    }
+  }
+
+  /**
+   * Gets the validators of the page.
+   *
+   * @return  The validators or {@code null} when the view does not know the last modified time of the page
+   */
+  static Validators getValidators(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      View view,
+      Theme theme,
+      Page page
+  ) throws ServletException, IOException {
+    ReadableInstant viewLastModified = view.getLastModified(servletContext, request, response, page);
+    if (viewLastModified == null) {
+      return null;
+    }
+    long lastModified = Math.max(
+        viewLastModified.getMillis(),
+        Math.max(
+            getResourceLastModified(servletContext, request.getServletPath()),
+            SemanticCMS.getInstance(servletContext).getBooksLastModified()
+        )
+    );
+    StringBuilder validator = new StringBuilder();
+    validator
+        .append(theme.getName())
+        .append('\0').append(view.getName())
+        .append('\0').append(SerializationEE.get(servletContext, request).name())
+        .append('\0').append(DoctypeEE.get(servletContext, request).name())
+        .append('\0').append(lastModified);
+    append(validator, page.getDateCreated());
+    append(validator, page.getDatePublished());
+    append(validator, page.getDateModified());
+    append(validator, page.getDateReviewed());
+    return new Validators(toEntityTag(validator), lastModified);
+  }
+
+  /**
+   * Sets the {@code ETag} and {@code Last-Modified} headers from the given validators then checks the conditional
+   * request headers.  Does nothing for requests other than {@code GET} and {@code HEAD}.
+   *
+   * @return  {@code true} when the client has the current page and {@code 304 (Not Modified)} has been set, in which
+   *          case nothing more should be written
+   *
+   * @see  OutputCache
+   */
+  static boolean checkNotModified(
+      HttpServletRequest request,
+      HttpServletResponse response,
+      Validators validators
+  ) {
+    String method = request.getMethod();
+    if (!"GET".equals(method) && !"HEAD".equals(method)) {
+      return false;
+    }
+    addVaryAccept(response);
+    response.setHeader(ETAG_HEADER, validators.etag);
+    response.setDateHeader(LAST_MODIFIED_HEADER, validators.lastModified);
+    String ifNoneMatch = request.getHeader(IF_NONE_MATCH_HEADER);
+    long ifModifiedSince;
+    if (ifNoneMatch != null) {
+      // Not used
+      ifModifiedSince = -1;
+    } else {
+      try {
+        ifModifiedSince = request.getDateHeader(IF_MODIFIED_SINCE_HEADER);
+      } catch (IllegalArgumentException e) {
+        // Ignore malformed dates
+        ifModifiedSince = -1;
+      }
+    }
+    boolean notModified = isNotModified(ifNoneMatch, ifModifiedSince, validators.etag, validators.lastModified);
+    if (notModified) {
+      response.resetBuffer();
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    }
+    return notModified;
+  }
+
+  /**
+   * Sets the {@code ETag} and {@code Last-Modified} headers then checks the conditional request headers.
+   * Does nothing for requests other than {@code GET} and {@code HEAD}, or when the view does not know the last
+   * modified time of the page.
+   *
+   * @return  {@code true} when the client has the current page and {@code 304 (Not Modified)} has been set, in which
+   *          case nothing more should be written
+   */
+  public static boolean checkNotModified(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      View view,
+      Theme theme,
+      Page page
+  ) throws ServletException, IOException {
+    String method = request.getMethod();
+    if (!"GET".equals(method) && !"HEAD".equals(method)) {
+      return false;
+    }
+    Validators validators = getValidators(servletContext, request, response, view, theme, page);
+    return validators != null && checkNotModified(request, response, validators);
+  }
+}
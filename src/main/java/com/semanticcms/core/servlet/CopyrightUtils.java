@@ -1,6 +1,6 @@
 /*
  * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
- * Copyright (C) 2016, 2017, 2019, 2021, 2022, 2024  AO Industries, Inc.
+ * Copyright (C) 2016, 2017, 2019, 2021, 2022, 2024, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -23,12 +23,10 @@
 
 package com.semanticcms.core.servlet;
 
-import com.semanticcms.core.model.Book;
 import com.semanticcms.core.model.Copyright;
 import com.semanticcms.core.model.PageRef;
-import com.semanticcms.core.model.ParentRef;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -45,83 +43,36 @@ public final class CopyrightUtils {
     throw new AssertionError();
   }
 
-  /**
-   * Finds the effective copyright for the given page or null if none.
-   * If a copyright is returned, all fields in the resulting copyright will be
-   * non-null since all inheriting has been completed.
-   *
-   * <p>Any field not set (or set to null) will be inherited from the parent(s) in the same book.
-   * Any field set to "" will have no value and not inherit from parents.</p>
-   *
-   * <p>If there are no parent pages in this same book, uses the fields from the book's copyright.</p>
-   *
-   * <p>When inheriting a field from multiple parent pages, the field must
-   * have exactly the same value in all parents.  Any mismatch in value
-   * will result in an exception.</p>
-   */
-  public static Copyright findCopyright(
-      ServletContext servletContext,
-      HttpServletRequest request,
-      HttpServletResponse response,
-      com.semanticcms.core.model.Page page
-  ) throws ServletException, IOException {
-    // TODO: Implemented as depth-first traversel from page up through parents
-    Copyright copyright = findCopyrightRecursive(
-        servletContext,
-        request,
-        response,
-        page,
-        new HashMap<>()
-    );
-    assert copyright == null || !copyright.isEmpty();
-    return copyright;
-  }
+  private static final InheritedProperty<Copyright> COPYRIGHT = new InheritedProperty<>("copyright") {
+    @Override
+    boolean isInherited(com.semanticcms.core.model.Page page) {
+      Copyright pageCopyright = page.getCopyright();
+      return pageCopyright == null || !pageCopyright.hasAllFields();
+    }
 
-  private static Copyright findCopyrightRecursive(
-      ServletContext servletContext,
-      HttpServletRequest request,
-      HttpServletResponse response,
-      com.semanticcms.core.model.Page page,
-      Map<PageRef, Copyright> finished
-  ) throws ServletException, IOException {
-    PageRef pageRef = page.getPageRef();
-    assert !finished.containsKey(pageRef);
-    // Use directly set authors first
-    Copyright pageCopyright = page.getCopyright();
-    if (pageCopyright == null || !pageCopyright.hasAllFields()) {
-      // Find the fields that do not need inherited
-      String pageRightsHolder;
-      String pageRights;
-      String pageDateCopyrighted;
-      if (pageCopyright == null) {
-        pageRightsHolder = null;
-        pageRights = null;
-        pageDateCopyrighted = null;
-      } else {
-        pageRightsHolder = pageCopyright.getRightsHolder();
-        pageRights = pageCopyright.getRights();
-        pageDateCopyrighted = pageCopyright.getDateCopyrighted();
-      }
-      // Use the copyright fields of all parents in the same book
-      String parentsRightsHolder = null;
-      String parentsRights = null;
-      String parentsDateCopyrighted = null;
-      Book book = pageRef.getBook();
-      for (ParentRef parentRef : page.getParentRefs()) {
-        PageRef parentPageRef = parentRef.getPageRef();
-        if (book.equals(parentPageRef.getBook())) {
-          // Check finished already
-          Copyright parentCopyright = finished.get(parentPageRef);
-          if (!finished.containsKey(parentPageRef)) {
-            // Capture parent and find its authors
-            parentCopyright = findCopyrightRecursive(
-                servletContext,
-                request,
-                response,
-                CapturePage.capturePage(servletContext, request, response, parentPageRef, CaptureLevel.PAGE),
-                finished
-            );
-          }
+    @Override
+    Copyright resolve(com.semanticcms.core.model.Page page, List<Copyright> parentCopyrights) throws ServletException {
+      // Use directly set copyright first
+      Copyright pageCopyright = page.getCopyright();
+      if (pageCopyright == null || !pageCopyright.hasAllFields()) {
+        // Find the fields that do not need inherited
+        String pageRightsHolder;
+        String pageRights;
+        String pageDateCopyrighted;
+        if (pageCopyright == null) {
+          pageRightsHolder = null;
+          pageRights = null;
+          pageDateCopyrighted = null;
+        } else {
+          pageRightsHolder = pageCopyright.getRightsHolder();
+          pageRights = pageCopyright.getRights();
+          pageDateCopyrighted = pageCopyright.getDateCopyrighted();
+        }
+        // Use the copyright fields of all parents in the same book
+        String parentsRightsHolder = null;
+        String parentsRights = null;
+        String parentsDateCopyrighted = null;
+        for (Copyright parentCopyright : parentCopyrights) {
           if (pageRightsHolder == null) {
             String newRightsHolder = parentCopyright == null ? "" : parentCopyright.getRightsHolder();
             if (parentsRightsHolder == null) {
@@ -156,34 +107,71 @@ public final class CopyrightUtils {
             }
           }
         }
-      }
-      // No parents in the same book, use book copyright fields
-      Copyright bookCopyright = book.getCopyright();
-      if (pageRightsHolder == null) {
-        if (parentsRightsHolder == null) {
-          parentsRightsHolder = bookCopyright == null ? "" : bookCopyright.getRightsHolder();
+        // No parents in the same book, use book copyright fields
+        Copyright bookCopyright = page.getPageRef().getBook().getCopyright();
+        if (pageRightsHolder == null) {
+          if (parentsRightsHolder == null) {
+            parentsRightsHolder = bookCopyright == null ? "" : bookCopyright.getRightsHolder();
+          }
+          pageRightsHolder = parentsRightsHolder;
         }
-        pageRightsHolder = parentsRightsHolder;
-      }
-      if (pageRights == null) {
-        if (parentsRights == null) {
-          parentsRights = bookCopyright == null ? "" : bookCopyright.getRights();
+        if (pageRights == null) {
+          if (parentsRights == null) {
+            parentsRights = bookCopyright == null ? "" : bookCopyright.getRights();
+          }
+          pageRights = parentsRights;
         }
-        pageRights = parentsRights;
-      }
-      if (pageDateCopyrighted == null) {
-        if (parentsDateCopyrighted == null) {
-          parentsDateCopyrighted = bookCopyright == null ? "" : bookCopyright.getDateCopyrighted();
+        if (pageDateCopyrighted == null) {
+          if (parentsDateCopyrighted == null) {
+            parentsDateCopyrighted = bookCopyright == null ? "" : bookCopyright.getDateCopyrighted();
+          }
+          pageDateCopyrighted = parentsDateCopyrighted;
         }
-        pageDateCopyrighted = parentsDateCopyrighted;
+        pageCopyright = new Copyright(pageRightsHolder, pageRights, pageDateCopyrighted);
       }
-      pageCopyright = new Copyright(pageRightsHolder, pageRights, pageDateCopyrighted);
-    }
-    if (pageCopyright.isEmpty()) {
-      pageCopyright = null;
+      if (pageCopyright.isEmpty()) {
+        pageCopyright = null;
+      }
+      return pageCopyright;
     }
-    // Store in finished
-    finished.put(pageRef, pageCopyright);
-    return pageCopyright;
+  };
+
+  /**
+   * Finds the effective copyright for the given page or null if none.
+   * If a copyright is returned, all fields in the resulting copyright will be
+   * non-null since all inheriting has been completed.
+   *
+   * <p>Any field not set (or set to null) will be inherited from the parent(s) in the same book.
+   * Any field set to "" will have no value and not inherit from parents.</p>
+   *
+   * <p>If there are no parent pages in this same book, uses the fields from the book's copyright.</p>
+   *
+   * <p>When inheriting a field from multiple parent pages, the field must
+   * have exactly the same value in all parents.  Any mismatch in value
+   * will result in an exception.</p>
+   */
+  public static Copyright findCopyright(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      com.semanticcms.core.model.Page page
+  ) throws ServletException, IOException {
+    Copyright copyright = COPYRIGHT.get(servletContext, request, response, page);
+    assert copyright == null || !copyright.isEmpty();
+    return copyright;
+  }
+
+  /**
+   * Finds the effective copyright for the given page and every page below it within the same book,
+   * resolving the whole book in a single pass when given the book's content root.
+   * Pages without any effective copyright are mapped to {@code null}.
+   */
+  public static Map<PageRef, Copyright> findAllCopyrights(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      com.semanticcms.core.model.Page root
+  ) throws ServletException, IOException {
+    return COPYRIGHT.getAll(servletContext, request, response, root);
   }
 }
@@ -0,0 +1,295 @@
+/*
+ * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-servlet.
+ *
+ * semanticcms-core-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.semanticcms.core.servlet;
+
+import com.semanticcms.core.model.PageRef;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tracks which entries of a cache were derived from which pages, so invalidating a page cascades to exactly the
+ * entries that depend on it, directly or through other entries.
+ *
+ * <p>An entry is either the {@link PageRef} of a captured page or the name of a cache attribute.  Each entry is
+ * assigned a dense id, and both the dependents and the dependencies of each entry are held as adjacency lists of ids.
+ * Invalidated entries are removed from the graph, and their ids are reused by later entries.</p>
+ *
+ * <p>This graph is thread safe.</p>
+ */
+final class DependencyGraph {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final Map<Object, Integer> ids = new HashMap<>();
+
+  /**
+   * The entries, indexed by id.  The entry of a free id is {@code null}.
+   */
+  private final List<Object> entries = new ArrayList<>();
+
+  /**
+   * The ids of the entries that depend on each entry, indexed by id.  Only the first
+   * {@link #dependentCounts} elements are used, and an entry without dependents may be {@code null}.
+   */
+  private int[][] dependents = new int[INITIAL_CAPACITY][];
+  private int[] dependentCounts = new int[INITIAL_CAPACITY];
+
+  /**
+   * The ids of the entries each entry depends on, indexed by id.  Only the first
+   * {@link #dependencyCounts} elements are used, and an entry without dependencies may be {@code null}.
+   */
+  private int[][] dependencies = new int[INITIAL_CAPACITY][];
+  private int[] dependencyCounts = new int[INITIAL_CAPACITY];
+
+  /**
+   * The ids of removed entries, available for reuse.
+   */
+  private int[] freeIds = new int[INITIAL_CAPACITY];
+  private int freeCount;
+
+  /**
+   * Incremented on every {@linkplain #invalidate(java.util.Collection) invalidation}.
+   */
+  private long generation;
+
+  private int getId(Object entry) {
+    assert Thread.holdsLock(this);
+    Integer id = ids.get(entry);
+    if (id != null) {
+      return id;
+    }
+    int newId;
+    if (freeCount > 0) {
+      newId = freeIds[--freeCount];
+      entries.set(newId, entry);
+    } else {
+      newId = entries.size();
+      if (newId == dependents.length) {
+        dependents = Arrays.copyOf(dependents, newId << 1);
+        dependentCounts = Arrays.copyOf(dependentCounts, newId << 1);
+        dependencies = Arrays.copyOf(dependencies, newId << 1);
+        dependencyCounts = Arrays.copyOf(dependencyCounts, newId << 1);
+      }
+      entries.add(entry);
+    }
+    ids.put(entry, newId);
+    return newId;
+  }
+
+  /**
+   * Adds a value to the list at the given index, unless already present.
+   *
+   * @return  {@code true} when added
+   */
+  private static boolean add(int[][] lists, int[] counts, int index, int value) {
+    int[] list = lists[index];
+    int count = counts[index];
+    if (list == null) {
+      list = new int[1];
+      lists[index] = list;
+    } else {
+      // Search backwards, since the same dependency is often added repeatedly
+      for (int i = count - 1; i >= 0; i--) {
+        if (list[i] == value) {
+          return false;
+        }
+      }
+      if (count == list.length) {
+        list = Arrays.copyOf(list, count << 1);
+        lists[index] = list;
+      }
+    }
+    list[count] = value;
+    counts[index] = count + 1;
+    return true;
+  }
+
+  /**
+   * Removes a value from the list at the given index, if present.  The order of the list is not maintained.
+   */
+  private static void remove(int[][] lists, int[] counts, int index, int value) {
+    int[] list = lists[index];
+    int count = counts[index];
+    for (int i = 0; i < count; i++) {
+      if (list[i] == value) {
+        list[i] = list[--count];
+        counts[index] = count;
+        return;
+      }
+    }
+  }
+
+  private void add(int dependent, int dependency) {
+    assert Thread.holdsLock(this);
+    if (dependent != dependency && add(dependents, dependentCounts, dependency, dependent)) {
+      add(dependencies, dependencyCounts, dependent, dependency);
+    }
+  }
+
+  /**
+   * Removes an entry, which must have no dependents, and makes its id available for reuse.
+   */
+  private void free(int id) {
+    assert Thread.holdsLock(this);
+    assert dependentCounts[id] == 0;
+    dependents[id] = null;
+    dependencies[id] = null;
+    dependencyCounts[id] = 0;
+    ids.remove(entries.set(id, null));
+    if (freeCount == freeIds.length) {
+      freeIds = Arrays.copyOf(freeIds, freeCount << 1);
+    }
+    freeIds[freeCount++] = id;
+  }
+
+  /**
+   * Records that an entry was derived from the given page.
+   *
+   * @param  dependent  the {@link PageRef} of a captured page or the name of a cache attribute
+   */
+  synchronized void addDependency(Object dependent, PageRef dependency) {
+    add(getId(dependent), getId(dependency));
+  }
+
+  /**
+   * Records that an entry was derived from the given pages.
+   *
+   * @param  dependent  the {@link PageRef} of a captured page or the name of a cache attribute
+   */
+  synchronized void addDependencies(Object dependent, Collection<PageRef> dependencies) {
+    if (!dependencies.isEmpty()) {
+      int dependentId = getId(dependent);
+      for (PageRef dependency : dependencies) {
+        add(dependentId, getId(dependency));
+      }
+    }
+  }
+
+  /**
+   * Gets the pages in this graph that are in any of the given books.
+   *
+   * @param  bookNames  the names of the books, which may include missing books
+   */
+  synchronized Set<PageRef> getPageRefs(Set<String> bookNames) {
+    Set<PageRef> pageRefs = new HashSet<>();
+    for (Object entry : entries) {
+      if (entry instanceof PageRef) {
+        PageRef pageRef = (PageRef) entry;
+        if (bookNames.contains(pageRef.getBookName())) {
+          pageRefs.add(pageRef);
+        }
+      }
+    }
+    return pageRefs;
+  }
+
+  /**
+   * Gets the number of entries in this graph.
+   */
+  synchronized int size() {
+    return ids.size();
+  }
+
+  /**
+   * Gets the current generation, which is incremented on every
+   * {@linkplain #invalidate(java.util.Collection) invalidation}.  An entry created from pages read since a generation
+   * may be stale when the generation has changed.
+   */
+  synchronized long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Finds all the entries that depend on any of the given pages, directly or indirectly.
+   * The invalidated entries are removed from this graph, since their dependencies are expected to be recorded again
+   * when the entries are recreated.  Any dependency left without dependents or dependencies is also removed.
+   *
+   * @return  the given pages and all their dependents
+   */
+  synchronized Set<Object> invalidate(Collection<PageRef> pageRefs) {
+    generation++;
+    Set<Object> invalidated = new LinkedHashSet<>(pageRefs);
+    int size = entries.size();
+    BitSet visited = new BitSet(size);
+    int[] stack = new int[INITIAL_CAPACITY];
+    int stackSize = 0;
+    for (PageRef pageRef : pageRefs) {
+      Integer id = ids.get(pageRef);
+      if (id != null && !visited.get(id)) {
+        visited.set(id);
+        if (stackSize == stack.length) {
+          stack = Arrays.copyOf(stack, stackSize << 1);
+        }
+        stack[stackSize++] = id;
+      }
+    }
+    while (stackSize > 0) {
+      int id = stack[--stackSize];
+      invalidated.add(entries.get(id));
+      int[] list = dependents[id];
+      int count = dependentCounts[id];
+      for (int i = 0; i < count; i++) {
+        int dependent = list[i];
+        if (!visited.get(dependent)) {
+          visited.set(dependent);
+          if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize << 1);
+          }
+          stack[stackSize++] = dependent;
+        }
+      }
+    }
+    // Every dependent of a visited entry is also visited, so only the dependencies link to the rest of the graph
+    for (int id = visited.nextSetBit(0); id >= 0; id = visited.nextSetBit(id + 1)) {
+      int[] list = dependencies[id];
+      int count = dependencyCounts[id];
+      for (int i = 0; i < count; i++) {
+        int dependency = list[i];
+        if (!visited.get(dependency)) {
+          remove(dependents, dependentCounts, dependency, id);
+          if (
+              dependentCounts[dependency] == 0
+                  && dependencyCounts[dependency] == 0
+                  // May already be removed through another invalidated entry
+                  && entries.get(dependency) != null
+          ) {
+            free(dependency);
+          }
+        }
+      }
+      dependentCounts[id] = 0;
+      free(id);
+    }
+    return invalidated;
+  }
+}
@@ -1,6 +1,6 @@
 /*
  * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
- * Copyright (C) 2013, 2014, 2015, 2016, 2017, 2018, 2019, 2020, 2021, 2022, 2024  AO Industries, Inc.
+ * Copyright (C) 2013, 2014, 2015, 2016, 2017, 2018, 2019, 2020, 2021, 2022, 2024, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -25,24 +25,38 @@ package com.semanticcms.core.servlet;
 
 import static com.semanticcms.core.servlet.Resources.PACKAGE_RESOURCES;
 
+import com.aoapps.concurrent.Executor;
 import com.aoapps.encoding.taglib.EncodingBufferedTag;
+import com.aoapps.io.buffer.BufferResult;
 import com.aoapps.io.buffer.BufferWriter;
 import com.aoapps.lang.LocalizedIllegalStateException;
+import com.aoapps.lang.concurrent.ExecutionExceptions;
+import com.aoapps.servlet.attribute.ScopeEE;
 import com.aoapps.servlet.http.NullHttpServletResponseWrapper;
+import com.aoapps.servlet.subrequest.HttpServletSubRequest;
+import com.aoapps.servlet.subrequest.HttpServletSubResponse;
+import com.aoapps.servlet.subrequest.UnmodifiableCopyHttpServletRequest;
+import com.aoapps.servlet.subrequest.UnmodifiableCopyHttpServletResponse;
+import com.aoapps.tempfiles.TempFileContext;
+import com.aoapps.tempfiles.servlet.TempFileContextEE;
+import com.semanticcms.core.model.ElementContext;
 import com.semanticcms.core.model.ElementWriter;
 import com.semanticcms.core.model.Node;
 import com.semanticcms.core.model.NodeBodyWriter;
 import com.semanticcms.core.model.Page;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
-import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.servlet.http.HttpServletResponseWrapper;
 import javax.servlet.jsp.SkipPageException;
-import org.apache.commons.lang3.NotImplementedException;
 
 /**
  * The base for capturing elements.
@@ -127,9 +141,24 @@ public abstract class Element<E extends com.semanticcms.core.model.Element> impl
         }
 
         Long elementKey;
+        ConcurrentWriter concurrentWriter;
         if (parentNode != null) {
-          elementKey = parentNode.addChildElement(element, this);
+          if (
+              captureLevel == CaptureLevel.BODY
+                  // Only the page being served is written by this request, pages captured at BODY level may be
+                  // written elsewhere or not at all
+                  && CapturePage.getCaptureContext(request) == null
+                  && isWriteConcurrent()
+                  && ConcurrencyCoordinator.isConcurrentProcessingRecommended(request)
+          ) {
+            concurrentWriter = new ConcurrentWriter();
+            elementKey = parentNode.addChildElement(element, concurrentWriter);
+          } else {
+            concurrentWriter = null;
+            elementKey = parentNode.addChildElement(element, this);
+          }
         } else {
+          concurrentWriter = null;
           elementKey = null;
         }
         // Freeze element once body done
@@ -141,6 +170,10 @@ public abstract class Element<E extends com.semanticcms.core.model.Element> impl
             element.freeze();
           }
         }
+        if (concurrentWriter != null) {
+          // Started once the page body is written
+          concurrentWriter.prepare();
+        }
         // Write now
         if (captureLevel == CaptureLevel.BODY) {
           PrintWriter out = response.getWriter();
@@ -165,6 +198,150 @@ public abstract class Element<E extends com.semanticcms.core.model.Element> impl
     }
   }
 
+  /**
+   * Checks if this element may be written concurrently, ahead of its position in the page body.
+   * Elements that are expensive to write and free of side effects, such as syntax highlighting, diagrams,
+   * and file listings, may return {@code true}.
+   *
+   * <p>When concurrent processing is recommended, the elements of the page being served are written on the
+   * executor once the page body starts being written.  Their output is then joined into their element markers,
+   * so the page body remains in the correct order.  Elements of pages captured at {@link CaptureLevel#BODY}, such
+   * as by views that include the bodies of other pages, are always written directly.  While written concurrently,
+   * {@link #writeTo(java.io.Writer, com.semanticcms.core.model.ElementContext)} is given a thread-safe copy of the
+   * request, and must not use the {@link PageContext}.</p>
+   *
+   * @return  {@code false} by default
+   */
+  protected boolean isWriteConcurrent() {
+    return false;
+  }
+
+  /**
+   * The concurrent writers of the page being served that have not yet been started.
+   */
+  private static final class PendingWriters {
+
+    private static final ScopeEE.Request.Attribute<PendingWriters> REQUEST_ATTRIBUTE =
+        ScopeEE.REQUEST.attribute(PendingWriters.class.getName());
+
+    private final Queue<Element<?>.ConcurrentWriter> writers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Starts all the pending writers.  Called from the first concurrent writer written, which may be on any thread.
+     */
+    private void startAll() {
+      Element<?>.ConcurrentWriter writer;
+      while ((writer = writers.poll()) != null) {
+        writer.start();
+      }
+    }
+  }
+
+  /**
+   * Writes this element on the executor, then writes the buffered output in place of the element marker.
+   * Writing is only started once the page body is written, so nothing is written for a page body that is never
+   * written.  When not prepared, such as when the body failed, writes this element directly.
+   */
+  private class ConcurrentWriter implements ElementWriter {
+
+    private PendingWriters pending;
+    private Executor executor;
+    private Callable<BufferResult> task;
+    private Future<BufferResult> future;
+
+    /**
+     * Prepares the thread-safe copies of the request and response, then queues this writer until the page body is
+     * written.  Called on the request thread once the element body is done.
+     */
+    private void prepare() {
+      final TempFileContext tempFileContext = TempFileContextEE.get(request);
+      final HttpServletRequest threadSafeReq = new UnmodifiableCopyHttpServletRequest(request);
+      final HttpServletResponse threadSafeResp = new UnmodifiableCopyHttpServletResponse(response);
+      final BufferWriter capturedOut = EncodingBufferedTag.newBufferWriter(request);
+      PendingWriters p = PendingWriters.REQUEST_ATTRIBUTE.context(request).computeIfAbsent(name -> new PendingWriters());
+      synchronized (this) {
+        pending = p;
+        executor = ConcurrencyCoordinator.getRecommendedExecutor(servletContext, request);
+        task = () -> {
+          try {
+            try {
+              Element.this.writeTo(
+                  capturedOut,
+                  new ServletElementContext(
+                      servletContext,
+                      new HttpServletSubRequest(threadSafeReq),
+                      new HttpServletSubResponse(threadSafeResp, tempFileContext)
+                  )
+              );
+            } finally {
+              capturedOut.close();
+            }
+          } catch (Error | RuntimeException | ServletException | IOException | SkipPageException e) {
+            throw e;
+          } catch (Throwable t) {
+            throw new ServletException(t);
+          }
+          return capturedOut.getResult();
+        };
+      }
+      p.writers.add(this);
+    }
+
+    /**
+     * Starts writing on the executor, if not already started.
+     */
+    private synchronized void start() {
+      if (future == null) {
+        future = executor.submit(task);
+        task = null;
+      }
+    }
+
+    @Override
+    @SuppressWarnings({"UseSpecificCatch", "TooBroadCatch"})
+    public void writeTo(Writer out, ElementContext context) throws IOException, ServletException, SkipPageException {
+      PendingWriters p;
+      synchronized (this) {
+        p = pending;
+      }
+      if (p == null) {
+        try {
+          Element.this.writeTo(out, context);
+        } catch (Error | RuntimeException | ServletException | IOException | SkipPageException e) {
+          throw e;
+        } catch (Throwable t) {
+          throw new ServletException(t);
+        }
+      } else {
+        // Write the rest of the page concurrently while waiting for this element
+        p.startAll();
+        start();
+        Future<BufferResult> f;
+        synchronized (this) {
+          f = future;
+        }
+        BufferResult result;
+        try {
+          result = f.get();
+        } catch (InterruptedException e) {
+          // Restore the interrupted status
+          Thread.currentThread().interrupt();
+          throw new ServletException(e);
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof SkipPageException) {
+            throw (SkipPageException) cause;
+          }
+          // Maintain expected exception types while not losing stack trace
+          ExecutionExceptions.wrapAndThrow(e, IOException.class, IOException::new);
+          ExecutionExceptions.wrapAndThrow(e, ServletException.class, ServletException::new);
+          throw new ServletException(e);
+        }
+        result.writeTo(out);
+      }
+    }
+  }
+
   /**
    * @see  #invoke(com.semanticcms.core.servlet.Element.Body)
    */
@@ -197,35 +374,16 @@ public abstract class Element<E extends com.semanticcms.core.model.Element> impl
     if (body != null) {
       if (captureLevel == CaptureLevel.BODY) {
         // Invoke tag body, capturing output
-        BufferWriter capturedOut = EncodingBufferedTag.newBufferWriter(request);
-        try {
-          try (PrintWriter capturedPW = new PrintWriter(capturedOut)) {
-            final HttpServletResponse newResponse = new HttpServletResponseWrapper(response) {
-              @Override
-              public PrintWriter getWriter() throws IOException {
-                return capturedPW;
-              }
-
-              @Override
-              public ServletOutputStream getOutputStream() {
-                throw new NotImplementedException("getOutputStream not expected");
-              }
-            };
-            // Set PageContext
-            PageContext.newPageContextSkip(
-                servletContext,
-                request,
-                newResponse,
-                () -> body.doBody(request, newResponse, element)
-            );
-            if (capturedPW.checkError()) {
-              throw new IOException("Error on capturing PrintWriter");
-            }
-          }
-        } finally {
-          capturedOut.close();
-        }
-        element.setBody(capturedOut.getResult().trim());
+        element.setBody(
+            BodyCapture.trim(
+                BodyCapture.capture(
+                    servletContext,
+                    request,
+                    response,
+                    newResponse -> body.doBody(request, newResponse, element)
+                )
+            )
+        );
       } else if (captureLevel == CaptureLevel.META) {
         // Invoke body for any meta data, but discard any output
         final HttpServletResponse newResponse = new NullHttpServletResponseWrapper(response);
@@ -0,0 +1,209 @@
+/*
+ * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-servlet.
+ *
+ * semanticcms-core-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.semanticcms.core.servlet;
+
+import com.semanticcms.core.model.PageRef;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletContext;
+
+/**
+ * Records, for each page exported in each view, the last modified times of the resources of the page and of every
+ * page captured while rendering it.  This allows a later export to only render the pages that may have changed.
+ *
+ * <p>The manifest is stored as a tab-separated file in the output directory.  The first line is the last
+ * modified time of the books, followed by one line per exported
+ * page: view name, servlet path, then pairs of dependency servlet path and last modified time.</p>
+ *
+ * @see  Exporter
+ */
+final class ExportManifest {
+
+  private static final Logger logger = Logger.getLogger(ExportManifest.class.getName());
+
+  /**
+   * The name of the manifest file within the output directory.
+   */
+  private static final String FILE_NAME = ".semanticcms-export";
+
+  private static final char SEPARATOR = '\t';
+
+  private static String getKey(View view, PageRef pageRef) {
+    return view.getName() + SEPARATOR + pageRef.getServletPath();
+  }
+
+  private final long booksLastModified;
+
+  /**
+   * The dependencies, including the page itself, with their last modified times by view name and servlet path.
+   */
+  private final ConcurrentMap<String, Map<String, Long>> dependencies = new ConcurrentHashMap<>();
+
+  ExportManifest(long booksLastModified) {
+    this.booksLastModified = booksLastModified;
+  }
+
+  /**
+   * Reads the manifest from the given output directory.
+   *
+   * @return  the manifest or {@code null} when there is no manifest or it could not be read
+   */
+  static ExportManifest read(Path outputDirectory) throws IOException {
+    Path file = outputDirectory.resolve(FILE_NAME);
+    try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      String line = in.readLine();
+      if (line == null) {
+        return null;
+      }
+      ExportManifest manifest = new ExportManifest(Long.parseLong(line));
+      while ((line = in.readLine()) != null) {
+        String[] values = line.split(String.valueOf(SEPARATOR), -1);
+        if (values.length < 2 || (values.length & 1) != 0) {
+          throw new NumberFormatException("Unexpected number of values: " + values.length);
+        }
+        Map<String, Long> pageDependencies = new LinkedHashMap<>(values.length * 2 / 3 + 1);
+        for (int i = 2; i < values.length; i += 2) {
+          pageDependencies.put(values[i], Long.parseLong(values[i + 1]));
+        }
+        manifest.dependencies.put(
+            values[0] + SEPARATOR + values[1],
+            Collections.unmodifiableMap(pageDependencies)
+        );
+      }
+      return manifest;
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (NumberFormatException e) {
+      if (logger.isLoggable(Level.WARNING)) {
+        logger.log(Level.WARNING, "Ignoring invalid export manifest: " + file, e);
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Writes the manifest to the given output directory, replacing any existing manifest.
+   */
+  void write(Path outputDirectory) throws IOException {
+    Files.createDirectories(outputDirectory);
+    Path file = outputDirectory.resolve(FILE_NAME);
+    Path tempFile = Files.createTempFile(outputDirectory, FILE_NAME, null);
+    try {
+      try (BufferedWriter out = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+        out.write(Long.toString(booksLastModified));
+        out.newLine();
+        for (Map.Entry<String, Map<String, Long>> entry : dependencies.entrySet()) {
+          out.write(entry.getKey());
+          for (Map.Entry<String, Long> dependency : entry.getValue().entrySet()) {
+            out.write(SEPARATOR);
+            out.write(dependency.getKey());
+            out.write(SEPARATOR);
+            out.write(dependency.getValue().toString());
+          }
+          out.newLine();
+        }
+      }
+      Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+  }
+
+  long getBooksLastModified() {
+    return booksLastModified;
+  }
+
+  /**
+   * Gets the dependencies recorded for a page in a view.
+   *
+   * @return  the dependencies or {@code null} when the page was not exported in the view
+   */
+  Map<String, Long> get(View view, PageRef pageRef) {
+    return dependencies.get(getKey(view, pageRef));
+  }
+
+  void put(View view, PageRef pageRef, Map<String, Long> pageDependencies) {
+    dependencies.put(getKey(view, pageRef), pageDependencies);
+  }
+
+  /**
+   * Gets the pages that were exported in this manifest but are not in the given manifest, such as pages that have
+   * been removed, are no longer applicable to a view, or no longer render successfully.
+   *
+   * @return  the view name and servlet path of each page
+   */
+  List<Map.Entry<String, String>> getRemoved(ExportManifest current) {
+    List<Map.Entry<String, String>> removed = new ArrayList<>();
+    for (String key : dependencies.keySet()) {
+      if (!current.dependencies.containsKey(key)) {
+        int separator = key.indexOf(SEPARATOR);
+        removed.add(new AbstractMap.SimpleImmutableEntry<>(key.substring(0, separator), key.substring(separator + 1)));
+      }
+    }
+    return removed;
+  }
+
+  /**
+   * Checks if none of the given dependencies have been modified.  A dependency with an unknown last modified time
+   * is always considered modified.
+   *
+   * @param  lastModifieds  the last modified times looked-up so far, shared between checks to look-up each resource
+   *                        only once per export
+   */
+  static boolean isCurrent(
+      ServletContext servletContext,
+      Map<String, Long> pageDependencies,
+      ConcurrentMap<String, Long> lastModifieds
+  ) throws IOException {
+    for (Map.Entry<String, Long> dependency : pageDependencies.entrySet()) {
+      String servletPath = dependency.getKey();
+      Long lastModified = lastModifieds.get(servletPath);
+      if (lastModified == null) {
+        lastModified = ConditionalGet.getResourceLastModified(servletContext, servletPath);
+        lastModifieds.put(servletPath, lastModified);
+      }
+      if (lastModified == 0 || lastModified.longValue() != dependency.getValue()) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,414 @@
+/*
+ * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-servlet.
+ *
+ * semanticcms-core-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.semanticcms.core.servlet;
+
+import com.aoapps.lang.concurrent.ExecutionExceptions;
+import com.aoapps.net.URIEncoder;
+import com.aoapps.servlet.http.Dispatcher;
+import com.aoapps.servlet.http.HttpServletUtil;
+import com.aoapps.servlet.subrequest.HttpServletSubRequest;
+import com.aoapps.servlet.subrequest.HttpServletSubResponse;
+import com.aoapps.servlet.subrequest.UnmodifiableCopyHttpServletRequest;
+import com.aoapps.servlet.subrequest.UnmodifiableCopyHttpServletResponse;
+import com.aoapps.tempfiles.TempFileContext;
+import com.aoapps.tempfiles.servlet.TempFileContextEE;
+import com.semanticcms.core.model.Book;
+import com.semanticcms.core.model.Page;
+import com.semanticcms.core.model.PageRef;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import javax.servlet.jsp.SkipPageException;
+
+/**
+ * Exports every page of every book, in every applicable view, to a directory, without going through HTTP.
+ *
+ * <p>All pages are rendered in export mode, as if the {@linkplain Headers#isExporting(javax.servlet.http.HttpServletRequest) exporting header}
+ * were sent, and share a single capture cache for the duration of the export.  Each page is captured once, no matter
+ * how many pages or views refer to it, and the pages are rendered concurrently.</p>
+ *
+ * <p>Each view is written to its own directory, named by the view, containing the pages by servlet path.
+ * A servlet path ending in a slash is written as {@code index.html} in that directory.</p>
+ */
+public final class Exporter {
+
+  /** Make no instances. */
+  private Exporter() {
+    throw new AssertionError();
+  }
+
+  /**
+   * The file name used for servlet paths ending in a slash.
+   */
+  private static final String DIRECTORY_INDEX = "index.html";
+
+  /**
+   * Conditional request headers, which are hidden from the rendered pages so they are always rendered in full.
+   */
+  private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+  private static final String IF_MODIFIED_SINCE_HEADER = "If-Modified-Since";
+
+  /**
+   * Renders the pages in export mode, always as a {@code GET} and never conditional.
+   */
+  private static class ExportRequest extends HttpServletRequestWrapper {
+
+    private ExportRequest(HttpServletRequest request) {
+      super(request);
+    }
+
+    private static boolean isHidden(String name) {
+      return IF_NONE_MATCH_HEADER.equalsIgnoreCase(name) || IF_MODIFIED_SINCE_HEADER.equalsIgnoreCase(name);
+    }
+
+    @Override
+    public String getMethod() {
+      return HttpServletUtil.METHOD_GET;
+    }
+
+    @Override
+    public String getHeader(String name) {
+      if (Headers.EXPORTING_HEADER.equalsIgnoreCase(name)) {
+        return Headers.EXPORTING_HEADER_VALUE;
+      }
+      if (isHidden(name)) {
+        return null;
+      }
+      return super.getHeader(name);
+    }
+
+    @Override
+    public Enumeration<String> getHeaders(String name) {
+      if (Headers.EXPORTING_HEADER.equalsIgnoreCase(name)) {
+        return Collections.enumeration(Collections.singleton(Headers.EXPORTING_HEADER_VALUE));
+      }
+      if (isHidden(name)) {
+        return Collections.emptyEnumeration();
+      }
+      return super.getHeaders(name);
+    }
+
+    @Override
+    public long getDateHeader(String name) {
+      if (isHidden(name)) {
+        return -1;
+      }
+      return super.getDateHeader(name);
+    }
+  }
+
+  /**
+   * Buffers all output of the rendered page in memory.  The response is never committed, so the page may always
+   * reset its buffer.
+   */
+  private static class ExportResponse extends HttpServletResponseWrapper {
+
+    private final StringWriter buffer = new StringWriter();
+    private final PrintWriter writer = new PrintWriter(buffer);
+
+    private ExportResponse(HttpServletResponse response) {
+      super(response);
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+      throw new IllegalStateException("Only character output is supported during export");
+    }
+
+    @Override
+    public PrintWriter getWriter() {
+      return writer;
+    }
+
+    @Override
+    public void flushBuffer() {
+      writer.flush();
+    }
+
+    @Override
+    public boolean isCommitted() {
+      return false;
+    }
+
+    @Override
+    public void resetBuffer() {
+      writer.flush();
+      buffer.getBuffer().setLength(0);
+    }
+
+    @Override
+    public void reset() {
+      super.reset();
+      resetBuffer();
+    }
+
+    private String getOutput() {
+      writer.flush();
+      return buffer.toString();
+    }
+  }
+
+  /**
+   * Gets the file a page is written to for the given view.
+   *
+   * @throws  ServletException  when the servlet path would be written outside the view directory
+   */
+  private static Path getOutputFile(Path outputDirectory, String viewName, String servletPath) throws ServletException {
+    Path viewDirectory = outputDirectory.resolve(viewName).normalize();
+    String relativePath = servletPath.substring(1);
+    if (relativePath.isEmpty() || relativePath.endsWith("/")) {
+      relativePath += DIRECTORY_INDEX;
+    }
+    Path outputFile = viewDirectory.resolve(relativePath).normalize();
+    if (!outputFile.startsWith(viewDirectory) || outputFile.equals(viewDirectory)) {
+      throw new ServletException("Servlet path is outside the view directory: " + servletPath);
+    }
+    return outputFile;
+  }
+
+  /**
+   * Renders one page in one view.
+   *
+   * @return  the rendered output or {@code null} when the page did not render successfully, such as a redirect or
+   *          an error status
+   */
+  private static String render(
+      ServletContext servletContext,
+      HttpServletRequest threadSafeReq,
+      HttpServletResponse threadSafeResp,
+      TempFileContext tempFileContext,
+      Cache cache,
+      View view,
+      PageRef pageRef
+  ) throws ServletException, IOException {
+    StringBuilder path = new StringBuilder(pageRef.getServletPath());
+    if (!view.isDefault()) {
+      path.append('?').append(SemanticCMS.VIEW_PARAM).append('=');
+      URIEncoder.encodeURIComponent(view.getName(), path);
+    }
+    String includePath = path.toString();
+    HttpServletRequest exportRequest = new ExportRequest(new HttpServletSubRequest(threadSafeReq));
+    CacheFilter.setCache(exportRequest, cache);
+    HttpServletSubResponse subResponse = new HttpServletSubResponse(threadSafeResp, tempFileContext);
+    ExportResponse exportResponse = new ExportResponse(subResponse);
+    try {
+      // Clear PageContext on include
+      PageContext.newPageContextSkip(
+          null,
+          null,
+          null,
+          () -> Dispatcher.include(servletContext, includePath, exportRequest, exportResponse)
+      );
+    } catch (SkipPageException e) {
+      // An individual page may throw SkipPageException which only terminates
+      // the page, not the export overall
+    }
+    int status = subResponse.getStatus();
+    return status == HttpServletResponse.SC_OK ? exportResponse.getOutput() : null;
+  }
+
+  /**
+   * Exports every page of every book, in every applicable view, to the given directory.
+   * Existing files are overwritten.
+   *
+   * @return  the number of files written
+   *
+   * @see  #export(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, java.nio.file.Path, boolean)
+   */
+  public static int export(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      Path outputDirectory
+  ) throws ServletException, IOException {
+    return export(servletContext, request, response, outputDirectory, false);
+  }
+
+  /**
+   * Exports every page of every book, in every applicable view, to the given directory.
+   *
+   * <p>This may take a long time, and is intended to be called by an administrative page or task.  The current
+   * request is used as the template for every rendered page.</p>
+   *
+   * <p>Each export records, for each page in each view, the last modified times of the page and of every page
+   * captured while rendering it.  An incremental export only renders the pages where any of these have been modified,
+   * or that were not previously exported, and leaves the files of all other pages in place.  All pages are rendered
+   * when the books have been reloaded since the previous export.</p>
+   *
+   * <p>The pages captured while rendering, including {@linkplain CaptureLevel#BODY body captures}, and the resources
+   * included by elements are recorded.  Resources included by pages directly, such as through JSP includes of
+   * {@code *.inc.jspx} files, are not recorded, so pages should be exported in full after changing only these.</p>
+   *
+   * <p>The files of pages that were in the previous export, but are no longer exported, are deleted.</p>
+   *
+   * @param  incremental  when {@code true}, only renders pages that may have changed since the previous export
+   *
+   * @return  the number of files written
+   */
+  public static int export(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      Path outputDirectory,
+      boolean incremental
+  ) throws ServletException, IOException {
+    SemanticCMS semanticCms = SemanticCMS.getInstance(servletContext);
+    long booksLastModified = semanticCms.getBooksLastModified();
+    ExportManifest read = ExportManifest.read(outputDirectory);
+    // Only skip pages when the books are unchanged
+    final ExportManifest previous =
+        incremental && booksLastModified != 0 && read != null && read.getBooksLastModified() == booksLastModified
+            ? read
+            : null;
+    ExportManifest manifest = new ExportManifest(booksLastModified);
+    ConcurrentMap<String, Long> lastModifieds = new ConcurrentHashMap<>();
+    // Share a single cache between all pages and views of the export
+    Cache exportCache = new ConcurrentCache();
+    Cache oldCache = CacheFilter.setCache(request, exportCache);
+    try {
+      // Find all pages
+      Map<PageRef, Page> pages = new LinkedHashMap<>();
+      for (Book book : semanticCms.getBooks().values()) {
+        CapturePage.traversePagesAnyOrder(
+            servletContext,
+            request,
+            response,
+            book.getContentRoot(),
+            CaptureLevel.META,
+            page -> {
+              pages.put(page.getPageRef(), page);
+              return null;
+            },
+            Page::getChildRefs,
+            // Child not in missing book
+            childPage -> childPage.getBook() != null
+        );
+      }
+      // Find all applicable views for each page
+      final TempFileContext tempFileContext = TempFileContextEE.get(request);
+      final HttpServletRequest threadSafeReq = new UnmodifiableCopyHttpServletRequest(request);
+      final HttpServletResponse threadSafeResp = new UnmodifiableCopyHttpServletResponse(response);
+      List<Callable<Boolean>> tasks = new ArrayList<>();
+      for (Page page : pages.values()) {
+        PageRef pageRef = page.getPageRef();
+        for (View view : semanticCms.getViews()) {
+          if (view.isApplicable(servletContext, request, response, page)) {
+            tasks.add(() -> {
+              Path outputFile = getOutputFile(outputDirectory, view.getName(), pageRef.getServletPath());
+              // Skip when unchanged
+              if (previous != null) {
+                Map<String, Long> dependencies = previous.get(view, pageRef);
+                if (
+                    dependencies != null
+                        && ExportManifest.isCurrent(servletContext, dependencies, lastModifieds)
+                        && Files.exists(outputFile)
+                ) {
+                  manifest.put(view, pageRef, dependencies);
+                  return false;
+                }
+              }
+              // Record the pages captured while rendering
+              RecordingCache recordingCache = new RecordingCache(exportCache);
+              String output = render(servletContext, threadSafeReq, threadSafeResp, tempFileContext, recordingCache, view, pageRef);
+              if (output == null) {
+                return false;
+              }
+              Files.createDirectories(outputFile.getParent());
+              Files.write(outputFile, output.getBytes(StandardCharsets.UTF_8));
+              Set<PageRef> pageRefs = recordingCache.getPageRefs();
+              Set<String> resources = recordingCache.getResources();
+              Map<String, Long> dependencies = new LinkedHashMap<>((pageRefs.size() + resources.size()) * 4 / 3 + 2);
+              String servletPath = pageRef.getServletPath();
+              dependencies.put(servletPath, ConditionalGet.getResourceLastModified(servletContext, servletPath));
+              for (PageRef dependency : pageRefs) {
+                String dependencyPath = dependency.getServletPath();
+                if (!dependencies.containsKey(dependencyPath)) {
+                  dependencies.put(dependencyPath, ConditionalGet.getResourceLastModified(servletContext, dependencyPath));
+                }
+              }
+              for (String dependencyPath : resources) {
+                if (!dependencies.containsKey(dependencyPath)) {
+                  dependencies.put(dependencyPath, ConditionalGet.getResourceLastModified(servletContext, dependencyPath));
+                }
+              }
+              manifest.put(view, pageRef, Collections.unmodifiableMap(dependencies));
+              return true;
+            });
+          }
+        }
+      }
+      // Render all concurrently
+      List<Boolean> written;
+      try {
+        written = semanticCms.getExecutors().getPerProcessor().callAll(tasks);
+      } catch (InterruptedException e) {
+        // Restore the interrupted status
+        Thread.currentThread().interrupt();
+        throw new ServletException(e);
+      } catch (ExecutionException e) {
+        // Maintain expected exception types while not losing stack trace
+        ExecutionExceptions.wrapAndThrow(e, IOException.class, IOException::new);
+        throw new ServletException(e);
+      }
+      int count = 0;
+      for (Boolean w : written) {
+        if (w) {
+          count++;
+        }
+      }
+      // Delete the files of pages no longer exported
+      if (read != null) {
+        for (Map.Entry<String, String> removed : read.getRemoved(manifest)) {
+          Files.deleteIfExists(getOutputFile(outputDirectory, removed.getKey(), removed.getValue()));
+        }
+      }
+      manifest.write(outputDirectory);
+      return count;
+    } finally {
+      CacheFilter.setCache(request, oldCache);
+    }
+  }
+}
@@ -0,0 +1,295 @@
+/*
+ * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-servlet.
+ *
+ * semanticcms-core-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.semanticcms.core.servlet;
+
+import com.semanticcms.core.model.Book;
+import com.semanticcms.core.model.PageRef;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletContext;
+
+/**
+ * Watches the web application directory for changes, invalidating the affected pages in the
+ * {@linkplain CacheFilter export cache}, the {@linkplain OutputCache output cache}, and the
+ * {@linkplain SemanticCMS#getWatchedCache() watched cache}.  Changes to
+ * {@code /WEB-INF/books.xml} {@linkplain SemanticCMS#reloadBooksIfModified() reload the books}.
+ *
+ * <p>Bursts of changes, such as a checkout or a build, are collected until no change has been seen for
+ * {@link #DEBOUNCE_MILLIS} milliseconds, then handled together.  When events have been lost, all books are removed
+ * from the caches.</p>
+ *
+ * <p>Only directories outside of {@code /WEB-INF/} are watched for pages, since pages are not served from there.</p>
+ */
+final class FileWatcher implements Closeable, Runnable {
+
+  private static final Logger logger = Logger.getLogger(FileWatcher.class.getName());
+
+  /**
+   * The number of milliseconds without a change before a burst of changes is handled.
+   */
+  private static final long DEBOUNCE_MILLIS = 500;
+
+  private static final String WEB_INF = "WEB-INF";
+
+  private static final String BOOKS_XML_SERVLET_PATH = "/WEB-INF/books.xml";
+
+  /**
+   * The welcome files that are captured in place of a directory.
+   *
+   * @see  com.semanticcms.core.servlet.impl.PageImpl
+   */
+  private static final String[] INDEX_FILES = {"index.jspx", "index.jsp"};
+
+  private final ServletContext servletContext;
+  private final SemanticCMS semanticCms;
+  private final Path root;
+  private final WatchService watchService;
+
+  /**
+   * The servlet path of each watched directory, always ending in a slash.
+   */
+  private final Map<WatchKey, String> directories = new HashMap<>();
+
+  private final Thread thread;
+
+  FileWatcher(ServletContext servletContext, SemanticCMS semanticCms, Path root) throws IOException {
+    this.servletContext = servletContext;
+    this.semanticCms = semanticCms;
+    this.root = root;
+    this.watchService = FileSystems.getDefault().newWatchService();
+    try {
+      registerAll(root);
+    } catch (IOException | RuntimeException e) {
+      watchService.close();
+      throw e;
+    }
+    thread = new Thread(this, FileWatcher.class.getName());
+    thread.setDaemon(true);
+  }
+
+  /**
+   * Starts watching in a background thread.  Changes since construction are handled once started.
+   * Called once, after the {@link SemanticCMS} instance is fully constructed.
+   */
+  void start() {
+    thread.start();
+  }
+
+  /**
+   * Gets the servlet path of the given file or directory, which is the empty string for the root.
+   */
+  private String getServletPath(Path path) {
+    Path relative = root.relativize(path);
+    // The empty path has a single, empty name
+    if (relative.toString().isEmpty()) {
+      return "";
+    }
+    StringBuilder servletPath = new StringBuilder();
+    for (Path name : relative) {
+      servletPath.append('/').append(name);
+    }
+    return servletPath.toString();
+  }
+
+  /**
+   * Watches the given directory and all directories below it, except within {@code /WEB-INF/}.
+   */
+  private void registerAll(Path start) throws IOException {
+    Files.walkFileTree(start, new SimpleFileVisitor<>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+        WatchKey key = dir.register(
+            watchService,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_DELETE,
+            StandardWatchEventKinds.ENTRY_MODIFY
+        );
+        String servletPath = getServletPath(dir);
+        directories.put(key, servletPath + '/');
+        // Only /WEB-INF/books.xml is of interest within /WEB-INF/
+        return (!dir.equals(root) && dir.getParent().equals(root) && WEB_INF.equals(dir.getFileName().toString()))
+            ? FileVisitResult.SKIP_SUBTREE
+            : FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  /**
+   * Collects the servlet paths of the changed files from the given key.
+   *
+   * @return  {@code false} when events have been lost
+   */
+  private boolean collect(WatchKey key, Set<String> servletPaths) {
+    String directory = directories.get(key);
+    boolean complete = true;
+    if (directory != null) {
+      for (WatchEvent<?> event : key.pollEvents()) {
+        WatchEvent.Kind<?> kind = event.kind();
+        if (kind == StandardWatchEventKinds.OVERFLOW) {
+          complete = false;
+        } else {
+          Path name = (Path) event.context();
+          String servletPath = directory + name;
+          servletPaths.add(servletPath);
+          if (kind == StandardWatchEventKinds.ENTRY_CREATE && !directory.startsWith("/" + WEB_INF + '/')) {
+            Path created = ((Path) key.watchable()).resolve(name);
+            if (Files.isDirectory(created)) {
+              try {
+                registerAll(created);
+              } catch (IOException e) {
+                logger.log(Level.WARNING, "Unable to watch directory: " + created, e);
+                complete = false;
+              }
+            }
+          }
+        }
+      }
+    }
+    if (!key.reset()) {
+      directories.remove(key);
+    }
+    return complete;
+  }
+
+  /**
+   * Finds the pages for the given servlet paths, including the directory of any welcome file.
+   */
+  private Set<PageRef> getPageRefs(Set<String> servletPaths) {
+    Set<PageRef> pageRefs = new HashSet<>();
+    for (String servletPath : servletPaths) {
+      Book book = semanticCms.getBook(servletPath);
+      if (book != null) {
+        String pathPrefix = book.getPathPrefix();
+        if (servletPath.startsWith(pathPrefix + '/')) {
+          String path = servletPath.substring(pathPrefix.length());
+          pageRefs.add(new PageRef(book, path));
+          for (String indexFile : INDEX_FILES) {
+            if (path.endsWith('/' + indexFile)) {
+              pageRefs.add(new PageRef(book, path.substring(0, path.length() - indexFile.length())));
+              break;
+            }
+          }
+        }
+      }
+    }
+    return pageRefs;
+  }
+
+  private void handle(Set<String> servletPaths, boolean complete) throws Exception {
+    if (complete && servletPaths.remove(BOOKS_XML_SERVLET_PATH)) {
+      semanticCms.reloadBooksIfModified();
+    }
+    OutputCache outputCache = semanticCms.getOutputCache();
+    Cache watchedCache = semanticCms.getWatchedCache();
+    if (!complete) {
+      if (logger.isLoggable(Level.INFO)) {
+        logger.info("File changes lost, removing all books from the caches");
+      }
+      semanticCms.reloadBooksIfModified();
+      Set<String> bookNames = semanticCms.getBooks().keySet();
+      CacheFilter.removeBooks(servletContext, bookNames);
+      if (outputCache != null) {
+        outputCache.clear();
+      }
+      if (watchedCache != null) {
+        watchedCache.removeBooks(bookNames);
+      }
+    } else if (!servletPaths.isEmpty()) {
+      if (logger.isLoggable(Level.FINE)) {
+        logger.fine("Files changed: " + servletPaths);
+      }
+      Set<PageRef> pageRefs = getPageRefs(servletPaths);
+      if (!pageRefs.isEmpty()) {
+        CacheFilter.invalidate(servletContext, pageRefs);
+        if (watchedCache != null) {
+          watchedCache.invalidate(pageRefs);
+        }
+      }
+      if (outputCache != null) {
+        // Also the directories of welcome files, which are the servlet paths of their pages
+        Set<String> dependencies = new HashSet<>(servletPaths);
+        for (PageRef pageRef : pageRefs) {
+          dependencies.add(pageRef.getServletPath());
+        }
+        outputCache.invalidate(dependencies);
+      }
+    }
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (true) {
+        Set<String> servletPaths = new HashSet<>();
+        // Wait for the first change
+        boolean complete = collect(watchService.take(), servletPaths);
+        // Collect the rest of the burst
+        WatchKey key;
+        while ((key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+          if (!collect(key, servletPaths)) {
+            complete = false;
+          }
+        }
+        try {
+          handle(servletPaths, complete);
+        } catch (Exception e) {
+          logger.log(Level.SEVERE, "Unable to handle file changes: " + servletPaths, e);
+        }
+      }
+    } catch (ClosedWatchServiceException e) {
+      // Closed
+    } catch (InterruptedException e) {
+      // Restore the interrupted status
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Stops watching.  Any changes currently being handled are completed in the background.
+   */
+  @Override
+  public void close() throws IOException {
+    watchService.close();
+    thread.interrupt();
+  }
+}
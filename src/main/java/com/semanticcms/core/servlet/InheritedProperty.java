@@ -0,0 +1,262 @@
+/*
+ * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-servlet.
+ *
+ * semanticcms-core-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.servlet;
+
+import com.semanticcms.core.model.Book;
+import com.semanticcms.core.model.ChildRef;
+import com.semanticcms.core.model.PageRef;
+import com.semanticcms.core.model.ParentRef;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * A page property that, when not set directly on a page, is inherited from the
+ * page's parents within the same book.  When a page has no parents in its book,
+ * the property is taken from the book itself.
+ *
+ * <p>Resolved values are memoized in the {@linkplain CacheFilter#getCache(javax.servlet.ServletRequest) capture cache},
+ * so each page is resolved at most once per cache.  Since the memoized values are held alongside the captured
+ * pages they were derived from, they are discarded along with those captures.  When the cache tracks dependencies,
+ * the memoized values are also discarded when any page they were resolved for is invalidated.</p>
+ *
+ * <p>A whole book may be resolved in a single pass from its content root, walking down the pages one level at a
+ * time.  The parents of each page are then already resolved, and the children of each level are captured in a single
+ * batch.</p>
+ *
+ * @param  <V>  the type of the resolved value, which may be {@code null}
+ *
+ * @see  AuthorUtils#findAuthors(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page)
+ * @see  CopyrightUtils#findCopyright(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page)
+ * @see  PageUtils#findAllowRobots(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page)
+ */
+abstract class InheritedProperty<V> {
+
+  /**
+   * Captures the pages that have not yet been resolved, which are the parents of a page or, when resolving all
+   * pages below a page, the children of a level.
+   */
+  @FunctionalInterface
+  static interface PageCapturer {
+    /**
+     * Captures the given pages at {@link CaptureLevel#PAGE} or higher.
+     *
+     * @return  the captured pages by {@link PageRef}, in the iteration order of the given pages
+     */
+    Map<PageRef, com.semanticcms.core.model.Page> capturePages(Set<PageRef> pageRefs) throws ServletException, IOException;
+  }
+
+  /**
+   * Memoizes a {@code null} value, since concurrent maps do not allow {@code null} values.
+   */
+  private static final Object NULL = new Object();
+
+  private final String cacheAttribute;
+
+  /**
+   * @param  name  the name of this property, must be unique per property
+   */
+  InheritedProperty(String name) {
+    this.cacheAttribute = InheritedProperty.class.getName() + '.' + name;
+  }
+
+  /**
+   * Checks if the given page inherits any part of this property from its parents.
+   * When {@code false}, the parents are not captured.
+   */
+  abstract boolean isInherited(com.semanticcms.core.model.Page page);
+
+  /**
+   * Resolves the effective value for the given page.
+   *
+   * @param  parentValues  The effective values of all parents in the same book, in the order declared by the page.
+   *                       This is always empty when the page does not {@linkplain #isInherited(com.semanticcms.core.model.Page) inherit}.
+   *                       When empty on an inheriting page, the page has no parents in its book and should use the value
+   *                       from the book.
+   *
+   * @throws  ServletException  when the parent values may not be combined, such as a mismatch between parents
+   */
+  abstract V resolve(com.semanticcms.core.model.Page page, List<V> parentValues) throws ServletException;
+
+  @SuppressWarnings("unchecked")
+  private Map<PageRef, Object> getResolved(Cache cache) {
+    return cache.getAttribute(cacheAttribute, Map.class, () -> cache.newMap());
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <V> V unmask(Object memo) {
+    return memo == NULL ? null : (V) memo;
+  }
+
+  /**
+   * Finds the effective value for the given page.
+   */
+  V get(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      com.semanticcms.core.model.Page page
+  ) throws ServletException, IOException {
+    return get(CacheFilter.getCache(request), getCapturer(servletContext, request, response), page);
+  }
+
+  private static PageCapturer getCapturer(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response
+  ) {
+    return pageRefs -> CapturePage.capturePages(servletContext, request, response, pageRefs, CaptureLevel.PAGE);
+  }
+
+  /**
+   * Finds the effective value for the given page, memoized in the given cache.
+   *
+   * @param  capturer  captures any parents not yet resolved in the cache
+   */
+  V get(
+      Cache cache,
+      PageCapturer capturer,
+      com.semanticcms.core.model.Page page
+  ) throws ServletException, IOException {
+    return get(cache, capturer, getResolved(cache), page);
+  }
+
+  private V get(
+      Cache cache,
+      PageCapturer capturer,
+      Map<PageRef, Object> resolved,
+      com.semanticcms.core.model.Page page
+  ) throws ServletException, IOException {
+    PageRef pageRef = page.getPageRef();
+    Object memo = resolved.get(pageRef);
+    if (memo != null) {
+      return unmask(memo);
+    }
+    List<V> parentValues;
+    if (isInherited(page)) {
+      // Find the parents in the same book, noting those not yet resolved
+      Book book = pageRef.getBook();
+      Set<ParentRef> parentRefs = page.getParentRefs();
+      List<PageRef> sameBookParents = new ArrayList<>(parentRefs.size());
+      Set<PageRef> notResolved = null;
+      for (ParentRef parentRef : parentRefs) {
+        PageRef parentPageRef = parentRef.getPageRef();
+        if (book.equals(parentPageRef.getBook())) {
+          sameBookParents.add(parentPageRef);
+          if (!resolved.containsKey(parentPageRef)) {
+            if (notResolved == null) {
+              notResolved = new LinkedHashSet<>();
+            }
+            notResolved.add(parentPageRef);
+          }
+        }
+      }
+      // Capture all unresolved parents in one batch, which may be performed concurrently
+      Map<PageRef, com.semanticcms.core.model.Page> captured =
+          notResolved == null
+              ? Collections.emptyMap()
+              : capturer.capturePages(notResolved);
+      parentValues = new ArrayList<>(sameBookParents.size());
+      for (PageRef parentPageRef : sameBookParents) {
+        // Check resolved again, since may have been resolved through an earlier parent
+        Object parentMemo = resolved.get(parentPageRef);
+        parentValues.add(
+            parentMemo != null
+                ? unmask(parentMemo)
+                : get(cache, capturer, resolved, captured.get(parentPageRef))
+        );
+      }
+    } else {
+      parentValues = Collections.emptyList();
+    }
+    V value = resolve(page, parentValues);
+    // The parents are resolved into the same attribute, so only the page itself is a dependency
+    cache.addDependency(cacheAttribute, pageRef);
+    resolved.put(pageRef, value == null ? NULL : value);
+    return value;
+  }
+
+  /**
+   * Finds the effective values for the given page and every page below it within the same book,
+   * resolving the whole book in a single pass when given the book's content root.
+   *
+   * @return  the effective values by page, in breadth-first order from the given page
+   */
+  Map<PageRef, V> getAll(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      com.semanticcms.core.model.Page root
+  ) throws ServletException, IOException {
+    return getAll(CacheFilter.getCache(request), getCapturer(servletContext, request, response), root);
+  }
+
+  /**
+   * Finds the effective values for the given page and every page below it within the same book, memoized in the
+   * given cache.  The pages are walked breadth-first, so the parents of each page within the walk are resolved before
+   * the page itself.
+   *
+   * @param  capturer  captures the children of each level, along with any parents not yet resolved in the cache
+   */
+  Map<PageRef, V> getAll(
+      Cache cache,
+      PageCapturer capturer,
+      com.semanticcms.core.model.Page root
+  ) throws ServletException, IOException {
+    Map<PageRef, Object> resolved = getResolved(cache);
+    PageRef rootPageRef = root.getPageRef();
+    Book book = rootPageRef.getBook();
+    Map<PageRef, V> results = new LinkedHashMap<>();
+    Set<PageRef> walked = new HashSet<>();
+    walked.add(rootPageRef);
+    Collection<com.semanticcms.core.model.Page> pages = Collections.singletonList(root);
+    while (!pages.isEmpty()) {
+      Set<PageRef> childPageRefs = new LinkedHashSet<>();
+      for (com.semanticcms.core.model.Page page : pages) {
+        results.put(page.getPageRef(), get(cache, capturer, resolved, page));
+        for (ChildRef childRef : page.getChildRefs()) {
+          PageRef childPageRef = childRef.getPageRef();
+          // Child in same book, walked only once
+          if (book.equals(childPageRef.getBook()) && walked.add(childPageRef)) {
+            childPageRefs.add(childPageRef);
+          }
+        }
+      }
+      // Capture the next level in one batch, which may be performed concurrently
+      pages = childPageRefs.isEmpty() ? Collections.emptyList() : capturer.capturePages(childPageRefs).values();
+    }
+    return Collections.unmodifiableMap(results);
+  }
+}
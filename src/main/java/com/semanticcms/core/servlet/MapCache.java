@@ -1,6 +1,6 @@
 /*
  * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
- * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -26,10 +26,12 @@ package com.semanticcms.core.servlet;
 import com.semanticcms.core.model.ChildRef;
 import com.semanticcms.core.model.Page;
 import com.semanticcms.core.model.PageRef;
+import com.semanticcms.core.model.PageReferrer;
 import com.semanticcms.core.model.ParentRef;
 import com.semanticcms.core.servlet.impl.PageImpl;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import javax.servlet.ServletException;
@@ -39,7 +41,11 @@ import javax.servlet.ServletException;
  */
 abstract class MapCache extends Cache {
 
-  private final Map<CaptureKey, Page> pageCache;
+  /**
+   * The captured pages, with a separate map per capture level so lookups are by {@link PageRef} alone.
+   */
+  private final Map<PageRef, Page> pageCache;
+  private final Map<PageRef, Page> metaCache;
 
   /**
    * Tracks which parent pages are still not verified.
@@ -64,26 +70,38 @@ abstract class MapCache extends Cache {
    */
   protected final Map<String, Object> attributes;
 
+  /**
+   * The dependencies or {@code null} when not tracked.
+   */
+  private final DependencyGraph dependencyGraph;
+
   MapCache(
-      Map<CaptureKey, Page> pageCache,
+      Map<PageRef, Page> pageCache,
+      Map<PageRef, Page> metaCache,
       Map<PageRef, Set<PageRef>> unverifiedParentsByPageRef,
       Map<PageRef, Set<PageRef>> unverifiedChildrenByPageRef,
-      Map<String, Object> attributes
+      Map<String, Object> attributes,
+      boolean trackDependencies
   ) {
     this.pageCache = pageCache;
+    this.metaCache = metaCache;
     this.unverifiedParentsByPageRef = unverifiedParentsByPageRef;
     this.unverifiedChildrenByPageRef = unverifiedChildrenByPageRef;
     this.attributes = attributes;
+    this.dependencyGraph = trackDependencies ? new DependencyGraph() : null;
   }
 
   @Override
-  Page get(CaptureKey key) {
-    Page page = pageCache.get(key);
-    if (page == null && key.level == CaptureLevel.PAGE) {
-      // Look for meta in place of page
-      page = pageCache.get(new CaptureKey(key.pageRef, CaptureLevel.META));
+  Page get(PageRef pageRef, CaptureLevel level) {
+    assert level != CaptureLevel.BODY : "Body captures are not cached";
+    if (level == CaptureLevel.PAGE) {
+      Page page = pageCache.get(pageRef);
+      if (page != null) {
+        return page;
+      }
     }
-    return page;
+    // Look for meta in place of page
+    return metaCache.get(pageRef);
   }
 
   private static void addToSet(Map<PageRef, Set<PageRef>> map, PageRef key, PageRef pageRef) {
@@ -100,13 +118,20 @@ abstract class MapCache extends Cache {
   }
 
   @Override
-  void put(CaptureKey key, Page page) throws ServletException {
+  void put(PageRef pageRef, CaptureLevel level, Page page) throws ServletException {
+    assert level != CaptureLevel.BODY : "Body captures are not cached";
     // Check if found in other level, this is used to avoid verifying twice
-    Page otherLevelPage = pageCache.get(
-        new CaptureKey(key.pageRef, key.level == CaptureLevel.PAGE ? CaptureLevel.META : CaptureLevel.PAGE)
-    );
+    Page otherLevelPage;
+    Map<PageRef, Page> levelCache;
+    if (level == CaptureLevel.PAGE) {
+      otherLevelPage = metaCache.get(pageRef);
+      levelCache = pageCache;
+    } else {
+      otherLevelPage = pageCache.get(pageRef);
+      levelCache = metaCache;
+    }
     // Add to cache, verify if this page not yet put into cache
-    if (pageCache.put(key, page) == null) {
+    if (levelCache.put(pageRef, page) == null) {
       // Was added, now avoid verifying twice typically.
       // In the race condition where both levels check null then are added concurrently, this will verify twice
       // rather than verify none.
@@ -118,6 +143,34 @@ abstract class MapCache extends Cache {
     }
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The page is added first, then removed again when the generation has changed.  An invalidation that has not yet
+   * changed the generation will remove the page itself.</p>
+   */
+  @Override
+  void put(PageRef pageRef, CaptureLevel level, Page page, long generation) throws ServletException {
+    put(pageRef, level, page);
+    if (dependencyGraph != null && dependencyGraph.getGeneration() != generation) {
+      removeStale(pageRef, level, page);
+    }
+  }
+
+  /**
+   * Removes a page that was added after it may have become stale, unless it has already been replaced.
+   */
+  void removeStale(PageRef pageRef, CaptureLevel level, Page page) {
+    if (
+        (level == CaptureLevel.PAGE ? pageCache : metaCache).remove(pageRef, page)
+            && VERIFY_CACHE_PARENT_CHILD_RELATIONSHIPS
+    ) {
+      Set<PageRef> removed = Collections.singleton(pageRef);
+      removePages(unverifiedParentsByPageRef, removed);
+      removePages(unverifiedChildrenByPageRef, removed);
+    }
+  }
+
   protected void verifyAdded(Page page) throws ServletException {
     assert VERIFY_CACHE_PARENT_CHILD_RELATIONSHIPS;
     final PageRef pageRef = page.getPageRef();
@@ -179,6 +232,135 @@ abstract class MapCache extends Cache {
     }
   }
 
+  @Override
+  Set<PageRef> getPageRefs() {
+    Set<PageRef> pageRefs = new HashSet<>(pageCache.keySet());
+    pageRefs.addAll(metaCache.keySet());
+    return pageRefs;
+  }
+
+  private static boolean refersTo(Set<? extends PageReferrer> pageReferrers, Set<String> bookNames) {
+    for (PageReferrer pageReferrer : pageReferrers) {
+      if (bookNames.contains(pageReferrer.getPageRef().getBookName())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static void removeBooks(Map<PageRef, Set<PageRef>> map, Set<String> bookNames) {
+    Iterator<Map.Entry<PageRef, Set<PageRef>>> iter = map.entrySet().iterator();
+    while (iter.hasNext()) {
+      Map.Entry<PageRef, Set<PageRef>> entry = iter.next();
+      if (bookNames.contains(entry.getKey().getBookName())) {
+        iter.remove();
+      } else {
+        Set<PageRef> pageRefs = entry.getValue();
+        Set<PageRef> remaining = new HashSet<>(pageRefs.size() * 4 / 3 + 1);
+        for (PageRef pageRef : pageRefs) {
+          if (!bookNames.contains(pageRef.getBookName())) {
+            remaining.add(pageRef);
+          }
+        }
+        if (remaining.isEmpty()) {
+          iter.remove();
+        } else if (remaining.size() != pageRefs.size()) {
+          entry.setValue(remaining.size() == 1 ? Collections.singleton(remaining.iterator().next()) : remaining);
+        }
+      }
+    }
+  }
+
+  private static void removeBooksFromLevel(Map<PageRef, Page> levelCache, Set<String> bookNames, Set<PageRef> removed) {
+    Iterator<Map.Entry<PageRef, Page>> iter = levelCache.entrySet().iterator();
+    while (iter.hasNext()) {
+      Map.Entry<PageRef, Page> entry = iter.next();
+      PageRef pageRef = entry.getKey();
+      Page page = entry.getValue();
+      if (
+          bookNames.contains(pageRef.getBookName())
+              || refersTo(page.getParentRefs(), bookNames)
+              || refersTo(page.getChildRefs(), bookNames)
+      ) {
+        iter.remove();
+        removed.add(pageRef);
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>When dependencies are tracked, only the attributes derived from the removed pages, or from any other page in
+   * the given books, are removed.</p>
+   */
+  @Override
+  void removeBooks(Set<String> bookNames) {
+    Set<PageRef> removed = new HashSet<>();
+    removeBooksFromLevel(pageCache, bookNames, removed);
+    removeBooksFromLevel(metaCache, bookNames, removed);
+    if (VERIFY_CACHE_PARENT_CHILD_RELATIONSHIPS) {
+      removeBooks(unverifiedParentsByPageRef, bookNames);
+      removeBooks(unverifiedChildrenByPageRef, bookNames);
+    }
+    if (dependencyGraph != null) {
+      removed.addAll(dependencyGraph.getPageRefs(bookNames));
+    }
+    invalidate(removed);
+  }
+
+  @Override
+  DependencyGraph getDependencyGraph() {
+    return dependencyGraph;
+  }
+
+  private static void removePages(Map<PageRef, Set<PageRef>> map, Set<PageRef> removed) {
+    Iterator<Map.Entry<PageRef, Set<PageRef>>> iter = map.entrySet().iterator();
+    while (iter.hasNext()) {
+      Map.Entry<PageRef, Set<PageRef>> entry = iter.next();
+      Set<PageRef> pageRefs = entry.getValue();
+      Set<PageRef> remaining = new HashSet<>(pageRefs.size() * 4 / 3 + 1);
+      for (PageRef pageRef : pageRefs) {
+        if (!removed.contains(pageRef)) {
+          remaining.add(pageRef);
+        }
+      }
+      if (remaining.isEmpty()) {
+        iter.remove();
+      } else if (remaining.size() != pageRefs.size()) {
+        entry.setValue(remaining.size() == 1 ? Collections.singleton(remaining.iterator().next()) : remaining);
+      }
+    }
+  }
+
+  @Override
+  Set<PageRef> invalidate(Set<PageRef> pageRefs) {
+    Set<PageRef> removed;
+    if (dependencyGraph == null) {
+      removed = pageRefs;
+      attributes.clear();
+    } else {
+      removed = new HashSet<>();
+      for (Object entry : dependencyGraph.invalidate(pageRefs)) {
+        if (entry instanceof PageRef) {
+          removed.add((PageRef) entry);
+        } else {
+          attributes.remove((String) entry);
+        }
+      }
+    }
+    for (PageRef pageRef : removed) {
+      pageCache.remove(pageRef);
+      metaCache.remove(pageRef);
+    }
+    if (VERIFY_CACHE_PARENT_CHILD_RELATIONSHIPS) {
+      // Forget the claims made by the removed pages, which will be verified again when recaptured
+      removePages(unverifiedParentsByPageRef, removed);
+      removePages(unverifiedChildrenByPageRef, removed);
+    }
+    return removed;
+  }
+
   @Override
   public void setAttribute(String key, Object value) {
     if (value == null) {
@@ -1,6 +1,6 @@
 /*
  * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
- * Copyright (C) 2013, 2014, 2015, 2016, 2017, 2018, 2020, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2013, 2014, 2015, 2016, 2017, 2018, 2020, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -48,6 +48,7 @@ public class NavigationTree {
   private String linksToBook;
   private String linksToPage;
   private int maxDepth;
+  private int lazyDepth;
 
   public NavigationTree(
       ServletContext servletContext,
@@ -120,6 +121,14 @@ public class NavigationTree {
     return this;
   }
 
+  /**
+   * @see  NavigationTreeImpl#writeNavigationTreeImpl(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.aoapps.html.any.AnyPalpableContent, com.semanticcms.core.model.Page, boolean, boolean, boolean, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, int, int)
+   */
+  public NavigationTree lazyDepth(int lazyDepth) {
+    this.lazyDepth = lazyDepth;
+    return this;
+  }
+
   public void invoke() throws ServletException, IOException {
     NavigationTreeImpl.writeNavigationTreeImpl(
         servletContext,
@@ -135,7 +144,8 @@ public class NavigationTree {
         thisPage,
         linksToBook,
         linksToPage,
-        maxDepth
+        maxDepth,
+        lazyDepth
     );
   }
 }
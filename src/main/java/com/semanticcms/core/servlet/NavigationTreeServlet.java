@@ -0,0 +1,90 @@
+/*
+ * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-servlet.
+ *
+ * semanticcms-core-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.semanticcms.core.servlet;
+
+import com.semanticcms.core.servlet.impl.NavigationTreeImpl;
+import java.io.IOException;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Loads the collapsed subtrees of lazily written navigation trees on demand, one level at a time.
+ *
+ * <p>Parameters:</p>
+ * <ul>
+ *   <li>{@code tree} - the {@code tree} from the {@code yuiConfig} of the node to expand (required).  Only trees
+ *       that have been lazily written by a page are accepted, and the tree's elements and maximum depth are those
+ *       it was written with.</li>
+ *   <li>{@code data} - the {@code data} from the {@code yuiConfig} of the node to expand (required)</li>
+ *   <li>{@code level} - the level of the node to expand, where the top-most nodes are level {@code 1} (default {@code 1})</li>
+ * </ul>
+ *
+ * <p>The {@link #SCRIPT_SRC script} loads the subtrees into a YUI TreeView.</p>
+ *
+ * @see  NavigationTree#lazyDepth(int)
+ * @see  NavigationTreeImpl#writeChildNodesJson(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, java.lang.String, java.lang.String, int)
+ */
+public class NavigationTreeServlet extends HttpServlet {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The path this servlet is mapped to in <code>web-fragment.xml</code>.
+   */
+  public static final String SERVLET_PATH = "/semanticcms-core-servlet/navigation-tree";
+
+  /**
+   * The path, within the application, of the script that loads collapsed subtrees into a YUI TreeView.
+   * Call {@code semanticcms_core_servlet.lazyNavigationTree(tree, contextPath)} before rendering the tree.
+   */
+  public static final String SCRIPT_SRC = "/semanticcms-core-servlet/navigation-tree.js";
+
+  @Override
+  protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+    String tree = req.getParameter("tree");
+    String data = req.getParameter("data");
+    if (tree == null || tree.isEmpty() || data == null || data.isEmpty()) {
+      resp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    }
+    int level;
+    String levelParam = req.getParameter("level");
+    try {
+      level = levelParam == null || levelParam.isEmpty() ? 1 : Integer.parseInt(levelParam);
+    } catch (NumberFormatException e) {
+      resp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    }
+    if (level < 1) {
+      resp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    }
+    if (!NavigationTreeImpl.writeChildNodesJson(getServletContext(), req, resp, tree, data, level)) {
+      resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+    }
+  }
+}
@@ -0,0 +1,795 @@
+/*
+ * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-servlet.
+ *
+ * semanticcms-core-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.servlet;
+
+import com.aoapps.encoding.servlet.DoctypeEE;
+import com.aoapps.encoding.servlet.SerializationEE;
+import com.aoapps.html.servlet.DocumentEE;
+import com.aoapps.io.buffer.BufferResult;
+import com.aoapps.io.buffer.BufferWriter;
+import com.aoapps.io.buffer.SegmentedWriter;
+import com.semanticcms.core.model.Page;
+import com.semanticcms.core.model.PageRef;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import javax.servlet.http.HttpSession;
+import javax.servlet.jsp.SkipPageException;
+import org.apache.commons.lang3.NotImplementedException;
+
+/**
+ * Caches the finished output of themes, so pages that have not changed are written without capturing their bodies or
+ * rendering the theme.
+ *
+ * <p>Entries are keyed on the requested path, view, theme, serialization, doctype, document settings, and the request
+ * parameters.  Each entry depends on the resource being served, every page captured while rendering it, such as for
+ * navigation, links, or authors, including pages whose bodies are included, and every resource included by elements.
+ * Resources included by pages directly, such as through JSP includes, are not recorded.  An entry is evicted when any
+ * of these resources has changed, or when the books they depend on are reloaded.  When the
+ * {@linkplain FileWatcher file watcher} is active, changes are found by the watcher.  Otherwise, the last modified times of the resources are checked at most once every
+ * {@link #VALIDATE_INTERVAL_MILLIS} milliseconds per entry.</p>
+ *
+ * <p>The output cache is enabled by setting the context parameter
+ * <code>com.semanticcms.core.servlet.SemanticCMS.outputCacheSize</code> to the maximum number of entries.  It is
+ * not used while exporting, nor when URLs may be rewritten to include the session.  Views must opt in with
+ * {@link View#isOutputCacheable(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page)},
+ * since the output is shared by every user.  The output, content type, locale, and response headers set while
+ * rendering are cached and written again along with the output.  Output is not cached when a cookie is added while
+ * rendering.  Output that is cached is buffered, so is not {@linkplain SemanticCMS#getStreaming() streamed}.</p>
+ *
+ * <p>When the context parameter <code>com.semanticcms.core.servlet.SemanticCMS.outputCacheCompression</code> is
+ * "true", cached output is also kept in gzip and deflate variants, compressed once on first use, and written
+ * directly to clients that accept them.  This must only be enabled when no other compression is applied to the
+ * responses, and pages do not write to the response after the page, since the compressed variants are written to
+ * the response output stream.</p>
+ */
+public final class OutputCache {
+
+  /**
+   * Output longer than this number of characters is not cached.
+   */
+  private static final int MAX_OUTPUT_LENGTH = 1 << 20;
+
+  /**
+   * The number of milliseconds between checks of the last modified times of the resources of an entry, when not
+   * watching for changes.
+   */
+  static final long VALIDATE_INTERVAL_MILLIS = 1000;
+
+  private static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+  private static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+  private static final String VARY_HEADER = "Vary";
+
+  private static final String GZIP_ENCODING = "gzip";
+  private static final String DEFLATE_ENCODING = "deflate";
+
+  /**
+   * A response header set while rendering, written again along with the cached output.
+   */
+  static final class Header {
+
+    private final String name;
+
+    /**
+     * The value, which is a {@link String}, a {@link Long} date, or an {@link Integer}.
+     */
+    private final Object value;
+
+    /**
+     * {@code true} when added, or {@code false} when set, replacing any previous values.
+     */
+    private final boolean add;
+
+    private Header(String name, Object value, boolean add) {
+      this.name = name;
+      this.value = value;
+      this.add = add;
+    }
+
+    private void writeTo(HttpServletResponse response) {
+      if (value instanceof Long) {
+        if (add) {
+          response.addDateHeader(name, (Long) value);
+        } else {
+          response.setDateHeader(name, (Long) value);
+        }
+      } else if (value instanceof Integer) {
+        if (add) {
+          response.addIntHeader(name, (Integer) value);
+        } else {
+          response.setIntHeader(name, (Integer) value);
+        }
+      } else if (add) {
+        response.addHeader(name, (String) value);
+      } else {
+        response.setHeader(name, (String) value);
+      }
+    }
+  }
+
+  /**
+   * Buffers the output of the theme, while recording the response headers it sets.
+   */
+  private static final class BufferedResponse extends HttpServletResponseWrapper {
+
+    private final PrintWriter writer;
+    private final List<Header> headers = new ArrayList<>();
+    private Locale locale;
+    private boolean cookieAdded;
+
+    private BufferedResponse(HttpServletResponse response, PrintWriter writer) {
+      super(response);
+      this.writer = writer;
+    }
+
+    @Override
+    public PrintWriter getWriter() {
+      return writer;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+      throw new NotImplementedException("getOutputStream not expected");
+    }
+
+    /**
+     * Does not commit the response, since the output is buffered and headers may still be set, such as by
+     * {@link Theme#flushHead(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)}.
+     */
+    @Override
+    public void flushBuffer() {
+      // Do nothing
+    }
+
+    @Override
+    public void setLocale(Locale loc) {
+      locale = loc;
+      super.setLocale(loc);
+    }
+
+    @Override
+    public void addCookie(Cookie cookie) {
+      cookieAdded = true;
+      super.addCookie(cookie);
+    }
+
+    private void record(String name, Object value, boolean add) {
+      headers.add(new Header(name, value, add));
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+      record(name, value, false);
+      super.setHeader(name, value);
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+      record(name, value, true);
+      super.addHeader(name, value);
+    }
+
+    @Override
+    public void setDateHeader(String name, long date) {
+      record(name, date, false);
+      super.setDateHeader(name, date);
+    }
+
+    @Override
+    public void addDateHeader(String name, long date) {
+      record(name, date, true);
+      super.addDateHeader(name, date);
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+      record(name, value, false);
+      super.setIntHeader(name, value);
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+      record(name, value, true);
+      super.addIntHeader(name, value);
+    }
+  }
+
+  static final class Entry {
+
+    private final BufferResult output;
+
+    private final String contentType;
+
+    /**
+     * The locale set while rendering or {@code null} when not set.
+     */
+    private final Locale locale;
+
+    /**
+     * The response headers set while rendering, in the order set.
+     */
+    private final List<Header> headers;
+
+    /**
+     * The validators or {@code null} when the view does not know the last modified time of the page.
+     */
+    private final ConditionalGet.Validators validators;
+
+    /**
+     * The last modified time of each resource the output depends on, by servlet path.
+     */
+    private final Map<String, Long> dependencies;
+
+    /**
+     * The time the dependencies were last checked.
+     */
+    private volatile long validated;
+
+    /**
+     * The compressed variants of the output, in UTF-8, compressed on first use.
+     */
+    private volatile byte[] gzip;
+    private volatile byte[] deflate;
+
+    Entry(
+        BufferResult output,
+        String contentType,
+        Locale locale,
+        List<Header> headers,
+        ConditionalGet.Validators validators,
+        Map<String, Long> dependencies,
+        long validated
+    ) {
+      this.output = output;
+      this.contentType = contentType;
+      this.locale = locale;
+      this.headers = headers;
+      this.validators = validators;
+      this.dependencies = dependencies;
+      this.validated = validated;
+    }
+
+    private byte[] compress(String encoding) throws IOException {
+      ByteArrayOutputStream bout = new ByteArrayOutputStream();
+      try (
+          Writer compressed = new OutputStreamWriter(
+              GZIP_ENCODING.equals(encoding)
+                  ? new GZIPOutputStream(bout)
+                  : new DeflaterOutputStream(bout),
+              StandardCharsets.UTF_8
+          )
+      ) {
+        output.writeTo(compressed);
+      }
+      return bout.toByteArray();
+    }
+
+    /**
+     * Gets the compressed variant of the output.
+     * In the rare race, the output may be compressed more than once and only one is kept.
+     */
+    private byte[] getCompressed(String encoding) throws IOException {
+      if (GZIP_ENCODING.equals(encoding)) {
+        byte[] g = gzip;
+        if (g == null) {
+          g = compress(encoding);
+          gzip = g;
+        }
+        return g;
+      } else {
+        assert DEFLATE_ENCODING.equals(encoding);
+        byte[] d = deflate;
+        if (d == null) {
+          d = compress(encoding);
+          deflate = d;
+        }
+        return d;
+      }
+    }
+
+    /**
+     * Checks if all the resources this output depends on are unchanged, checking their last modified times at most
+     * once every {@link #VALIDATE_INTERVAL_MILLIS} milliseconds.
+     */
+    boolean isValid(ServletContext servletContext, long currentTime) throws IOException {
+      long v = validated;
+      if (
+          currentTime < (v + VALIDATE_INTERVAL_MILLIS)
+              // Handle system time changes
+              && currentTime > (v - VALIDATE_INTERVAL_MILLIS)
+      ) {
+        return true;
+      }
+      for (Map.Entry<String, Long> dependency : dependencies.entrySet()) {
+        if (ConditionalGet.getResourceLastModified(servletContext, dependency.getKey()) != dependency.getValue()) {
+          return false;
+        }
+      }
+      validated = currentTime;
+      return true;
+    }
+  }
+
+  private static class EntriesLock {
+    // Empty lock class to help heap profile
+  }
+
+  private final EntriesLock entriesLock = new EntriesLock();
+
+  /**
+   * The entries, in least-recently used order.
+   */
+  private final Map<String, Entry> entries;
+
+  /**
+   * Incremented whenever entries are removed due to changes, so output rendered before a change is not added after
+   * the change.
+   */
+  private long generation;
+
+  private final boolean compression;
+
+  /**
+   * When {@code true}, changes are found by the {@linkplain FileWatcher file watcher} and the last modified times
+   * of the resources are not checked.
+   */
+  private volatile boolean watched;
+
+  OutputCache(int maxSize, boolean compression) {
+    this.compression = compression;
+    entries = new LinkedHashMap<>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * Sets whether changes are found by the file watcher.
+   *
+   * @see  FileWatcher
+   */
+  void setWatched(boolean watched) {
+    this.watched = watched;
+  }
+
+  Entry get(String key) {
+    synchronized (entriesLock) {
+      return entries.get(key);
+    }
+  }
+
+  /**
+   * Gets the current generation, to be provided to {@link #put(java.lang.String, com.semanticcms.core.servlet.OutputCache.Entry, long)}.
+   */
+  long getGeneration() {
+    synchronized (entriesLock) {
+      return generation;
+    }
+  }
+
+  /**
+   * Adds an entry, unless any entries have been removed due to changes since the given generation.
+   *
+   * @param  generation  the generation from before the output was rendered
+   *
+   * @return  {@code true} when added
+   */
+  boolean put(String key, Entry entry, long generation) {
+    synchronized (entriesLock) {
+      if (generation != this.generation) {
+        return false;
+      }
+      entries.put(key, entry);
+      return true;
+    }
+  }
+
+  private void remove(String key, Entry entry) {
+    synchronized (entriesLock) {
+      entries.remove(key, entry);
+    }
+  }
+
+  /**
+   * Gets a valid entry, removing the entry when no longer valid.
+   *
+   * @return  The entry or {@code null} when not cached or no longer valid
+   */
+  Entry getValid(ServletContext servletContext, String key, long currentTime) throws IOException {
+    Entry entry = get(key);
+    if (entry != null && !watched && !entry.isValid(servletContext, currentTime)) {
+      remove(key, entry);
+      entry = null;
+    }
+    return entry;
+  }
+  /**
+   * Removes all entries.
+   *
+   * @see  FileWatcher
+   */
+  void clear() {
+    synchronized (entriesLock) {
+      generation++;
+      entries.clear();
+    }
+  }
+
+  /**
+   * Removes all entries that depend on a resource that is now in a different or changed book.  Books that are
+   * unchanged are kept as the same instance on reload, so this is a comparison of the book of each resource.
+   * When the missing books have changed, all entries are removed, since links to missing books are not recorded as
+   * dependencies.
+   *
+   * @see  SemanticCMS#reloadBooks()
+   */
+  void removeBooks(BookIndex oldBookIndex, BookIndex newBookIndex) {
+    if (!oldBookIndex.getMissingBooks().equals(newBookIndex.getMissingBooks())) {
+      clear();
+      return;
+    }
+    synchronized (entriesLock) {
+      generation++;
+      Iterator<Entry> iter = entries.values().iterator();
+      while (iter.hasNext()) {
+        for (String dependency : iter.next().dependencies.keySet()) {
+          if (oldBookIndex.getBook(dependency) != newBookIndex.getBook(dependency)) {
+            iter.remove();
+            break;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes all entries that depend on any of the given servlet paths.
+   *
+   * @see  FileWatcher
+   */
+  void invalidate(Set<String> servletPaths) {
+    synchronized (entriesLock) {
+      generation++;
+      Iterator<Entry> iter = entries.values().iterator();
+      while (iter.hasNext()) {
+        for (String dependency : iter.next().dependencies.keySet()) {
+          if (servletPaths.contains(dependency)) {
+            iter.remove();
+            break;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the key from the request only, since the page is looked-up before its body is captured, which may still
+   * change its {@link PageRef}.
+   */
+  private static String getKey(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      View view,
+      Theme theme
+  ) {
+    StringBuilder key = new StringBuilder();
+    key.append(request.getServletPath()).append('\0');
+    String pathInfo = request.getPathInfo();
+    if (pathInfo != null) {
+      key.append(pathInfo);
+    }
+    key
+        .append('\0').append(view.getName())
+        .append('\0').append(theme.getName())
+        .append('\0').append(SerializationEE.get(servletContext, request).name())
+        .append('\0').append(DoctypeEE.get(servletContext, request).name())
+        .append('\0').append(DocumentEE.getIndent(servletContext, request))
+        .append('\0').append(DocumentEE.getAutonli(servletContext, request))
+        .append('\0');
+    String queryString = request.getQueryString();
+    if (queryString != null) {
+      key.append(queryString);
+    }
+    return key.toString();
+  }
+
+  /**
+   * Selects the compressed encoding acceptable to the client, preferring gzip.
+   *
+   * @return  The encoding or {@code null} when only identity is acceptable
+   */
+  private static String selectEncoding(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return null;
+    }
+    boolean acceptsGzip = false;
+    boolean acceptsDeflate = false;
+    for (String coding : acceptEncoding.split(",")) {
+      String name;
+      boolean acceptable = true;
+      int semicolon = coding.indexOf(';');
+      if (semicolon == -1) {
+        name = coding.trim();
+      } else {
+        name = coding.substring(0, semicolon).trim();
+        String params = coding.substring(semicolon + 1).replace(" ", "");
+        if (params.startsWith("q=")) {
+          try {
+            acceptable = Float.parseFloat(params.substring(2)) > 0;
+          } catch (NumberFormatException e) {
+            acceptable = false;
+          }
+        }
+      }
+      if (GZIP_ENCODING.equalsIgnoreCase(name) || "x-gzip".equalsIgnoreCase(name)) {
+        acceptsGzip = acceptable;
+      } else if (DEFLATE_ENCODING.equalsIgnoreCase(name)) {
+        acceptsDeflate = acceptable;
+      }
+    }
+    if (acceptsGzip) {
+      return GZIP_ENCODING;
+    }
+    if (acceptsDeflate) {
+      return DEFLATE_ENCODING;
+    }
+    return null;
+  }
+
+  /**
+   * Writes the cached output, compressed when enabled and acceptable to the client.
+   */
+  private void write(HttpServletRequest request, HttpServletResponse response, Entry entry) throws IOException {
+    if (compression) {
+      if (
+          !response.isCommitted()
+              && !response.containsHeader(CONTENT_ENCODING_HEADER)
+              && StandardCharsets.UTF_8.name().equalsIgnoreCase(response.getCharacterEncoding())
+      ) {
+        String encoding = selectEncoding(request.getHeader(ACCEPT_ENCODING_HEADER));
+        if (encoding != null) {
+          ServletOutputStream out;
+          try {
+            out = response.getOutputStream();
+          } catch (IllegalStateException e) {
+            // Writer already used, write identity below
+            out = null;
+          }
+          if (out != null) {
+            byte[] compressed = entry.getCompressed(encoding);
+            response.setHeader(CONTENT_ENCODING_HEADER, encoding);
+            response.setContentLength(compressed.length);
+            out.write(compressed, 0, compressed.length);
+            return;
+          }
+        }
+      }
+    }
+    entry.output.writeTo(response.getWriter());
+  }
+
+  /**
+   * Adds {@code Vary: Accept}, since output is cached per negotiated serialization, and {@code Vary: Accept-Encoding}
+   * when compression is enabled, since any response that may be cached could also be written compressed.  This is
+   * added to every response that uses the output cache, including when not yet cached and when
+   * {@code 304 (Not Modified)}, so shared caches never serve a variant to a client that does not accept it.
+   */
+  private void addVary(HttpServletResponse response) {
+    ConditionalGet.addVaryAccept(response);
+    if (compression) {
+      response.addHeader(VARY_HEADER, ACCEPT_ENCODING_HEADER);
+    }
+  }
+
+  /**
+   * Checks that URLs written in the output will not be rewritten to include the session.
+   */
+  private static boolean isUrlRewritingInactive(HttpServletRequest request) {
+    if (request.isRequestedSessionIdFromURL()) {
+      return false;
+    }
+    HttpSession session = request.getSession(false);
+    return session == null || request.isRequestedSessionIdFromCookie();
+  }
+
+  /**
+   * Gets the output cache when it may be used for the given request.
+   *
+   * @return  The output cache or {@code null} when not enabled or not usable
+   */
+  private static OutputCache getOutputCache(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      View view,
+      Page page
+  ) throws ServletException, IOException {
+    OutputCache outputCache = SemanticCMS.getInstance(servletContext).getOutputCache();
+    if (
+        outputCache == null
+            || Headers.isExporting(request)
+            || !isUrlRewritingInactive(request)
+            || !view.isOutputCacheable(servletContext, request, response, page)
+    ) {
+      return null;
+    }
+    return outputCache;
+  }
+
+  /**
+   * Writes the cached output of the page being served, when cached and unchanged.  This is called before the body of
+   * the page is captured, so only the page attributes are available to
+   * {@link View#isOutputCacheable(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page)}.
+   * Conditional requests are answered from the validators of the cached output.
+   *
+   * @return  {@code true} when the cached output, or {@code 304 (Not Modified)}, has been written, in which case
+   *          nothing more should be written
+   */
+  public static boolean writeCached(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      View view,
+      Theme theme,
+      Page page
+  ) throws ServletException, IOException {
+    OutputCache outputCache = getOutputCache(servletContext, request, response, view, page);
+    if (outputCache == null) {
+      return false;
+    }
+    Entry entry = outputCache.getValid(
+        servletContext,
+        getKey(servletContext, request, view, theme),
+        System.currentTimeMillis()
+    );
+    if (entry == null) {
+      // Record every page and resource the output depends on, starting before the body is captured
+      Cache cache = CacheFilter.findCache(request);
+      if (cache != null && !(cache instanceof RecordingCache)) {
+        CacheFilter.setCache(request, new RecordingCache(cache));
+      }
+      return false;
+    }
+    outputCache.addVary(response);
+    for (Header header : entry.headers) {
+      header.writeTo(response);
+    }
+    if (entry.validators != null && ConditionalGet.checkNotModified(request, response, entry.validators)) {
+      return true;
+    }
+    response.resetBuffer();
+    if (entry.locale != null) {
+      response.setLocale(entry.locale);
+    }
+    if (entry.contentType != null) {
+      response.setContentType(entry.contentType);
+    }
+    outputCache.write(request, response, entry);
+    return true;
+  }
+
+  /**
+   * Renders the theme, keeping the output in the cache when cacheable.
+   * The cached output is written by {@link #writeCached(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.servlet.View, com.semanticcms.core.servlet.Theme, com.semanticcms.core.model.Page)}.
+   *
+   * @see  Theme#doTheme(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.servlet.View, com.semanticcms.core.model.Page)
+   */
+  public static void doTheme(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      View view,
+      Theme theme,
+      Page page
+  ) throws ServletException, IOException, SkipPageException {
+    OutputCache outputCache = getOutputCache(servletContext, request, response, view, page);
+    if (outputCache == null) {
+      theme.doTheme(servletContext, request, response, view, page);
+      return;
+    }
+    outputCache.addVary(response);
+    long generation = outputCache.getGeneration();
+    long currentTime = System.currentTimeMillis();
+    // Render, buffering the output
+    BufferWriter buffer = new SegmentedWriter();
+    BufferedResponse bufferedResponse;
+    // Closes the buffer
+    try (PrintWriter bufferPW = new PrintWriter(buffer)) {
+      bufferedResponse = new BufferedResponse(response, bufferPW);
+      theme.doTheme(servletContext, request, bufferedResponse, view, page);
+      if (bufferPW.checkError()) {
+        throw new IOException("Error on output cache PrintWriter");
+      }
+    }
+    BufferResult output = buffer.getResult();
+    // Recording since before the body was captured
+    Cache cache = CacheFilter.findCache(request);
+    if (
+        cache instanceof RecordingCache
+            && response.getStatus() == HttpServletResponse.SC_OK
+            && output.getLength() <= MAX_OUTPUT_LENGTH
+            && !bufferedResponse.cookieAdded
+            // A session may have been created while rendering
+            && isUrlRewritingInactive(request)
+    ) {
+      RecordingCache recordingCache = (RecordingCache) cache;
+      // Depends on the resource being served, every page captured while rendering, and every resource included
+      Set<PageRef> pageRefs = recordingCache.getPageRefs();
+      Set<String> resources = recordingCache.getResources();
+      Map<String, Long> dependencies = new HashMap<>((pageRefs.size() + resources.size()) * 4 / 3 + 2);
+      String servletPath = request.getServletPath();
+      dependencies.put(servletPath, ConditionalGet.getResourceLastModified(servletContext, servletPath));
+      for (PageRef pageRef : pageRefs) {
+        String dependency = pageRef.getServletPath();
+        if (!dependencies.containsKey(dependency)) {
+          dependencies.put(dependency, ConditionalGet.getResourceLastModified(servletContext, dependency));
+        }
+      }
+      for (String dependency : resources) {
+        if (!dependencies.containsKey(dependency)) {
+          dependencies.put(dependency, ConditionalGet.getResourceLastModified(servletContext, dependency));
+        }
+      }
+      List<Header> headers = bufferedResponse.headers;
+      Entry entry = new Entry(
+          output,
+          response.getContentType(),
+          bufferedResponse.locale,
+          headers.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(headers)),
+          ConditionalGet.getValidators(servletContext, request, response, view, theme, page),
+          Collections.unmodifiableMap(dependencies),
+          currentTime
+      );
+      outputCache.put(getKey(servletContext, request, view, theme), entry, generation);
+      outputCache.write(request, response, entry);
+    } else {
+      output.writeTo(response.getWriter());
+    }
+  }
+}
@@ -1,6 +1,6 @@
 /*
  * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
- * Copyright (C) 2013, 2014, 2015, 2016, 2017, 2018, 2019, 2020, 2021, 2022, 2024  AO Industries, Inc.
+ * Copyright (C) 2013, 2014, 2015, 2016, 2017, 2018, 2019, 2020, 2021, 2022, 2024, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -27,25 +27,19 @@ import static com.semanticcms.core.servlet.Resources.PACKAGE_RESOURCES;
 
 import com.aoapps.encoding.Doctype;
 import com.aoapps.encoding.Serialization;
-import com.aoapps.encoding.taglib.EncodingBufferedTag;
-import com.aoapps.io.buffer.BufferWriter;
 import com.aoapps.io.buffer.EmptyResult;
 import com.aoapps.lang.LocalizedIllegalStateException;
 import com.aoapps.servlet.http.NullHttpServletResponseWrapper;
 import com.semanticcms.core.model.PageRef;
 import com.semanticcms.core.servlet.impl.PageImpl;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
-import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.servlet.http.HttpServletResponseWrapper;
 import javax.servlet.jsp.SkipPageException;
-import org.apache.commons.lang3.NotImplementedException;
 import org.joda.time.ReadableDateTime;
 
 public class Page {
@@ -274,35 +268,12 @@ public class Page {
             );
             return EmptyResult.getInstance();
           } else {
-            BufferWriter capturedOut = EncodingBufferedTag.newBufferWriter(request);
-            try {
-              try (PrintWriter capturedPW = new PrintWriter(capturedOut)) {
-                final HttpServletResponse newResponse = new HttpServletResponseWrapper(response) {
-                  @Override
-                  public PrintWriter getWriter() throws IOException {
-                    return capturedPW;
-                  }
-
-                  @Override
-                  public ServletOutputStream getOutputStream() {
-                    throw new NotImplementedException("getOutputStream not expected");
-                  }
-                };
-                // Set PageContext
-                PageContext.newPageContextSkip(
-                    servletContext,
-                    request,
-                    newResponse,
-                    () -> body.doBody(request, newResponse, page)
-                );
-                if (capturedPW.checkError()) {
-                  throw new IOException("Error on capturing PrintWriter");
-                }
-              }
-            } finally {
-              capturedOut.close();
-            }
-            return capturedOut.getResult();
+            return BodyCapture.capture(
+                servletContext,
+                request,
+                response,
+                newResponse -> body.doBody(request, newResponse, page)
+            );
           }
         }
     );
@@ -1,6 +1,6 @@
 /*
  * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
- * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021, 2022, 2024  AO Industries, Inc.
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021, 2022, 2024, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -51,13 +51,74 @@ public final class PageContext {
     throw new AssertionError();
   }
 
-  static final ThreadLocal<ServletContext> servletContext = new ThreadLocal<>();
+  /**
+   * The objects of a single page context, held together so the context is established and restored with a single
+   * thread local update.  The context is immutable other than the response writer, which is only obtained on first
+   * use.
+   */
+  static final class Context {
+
+    private final ServletContext servletContext;
+    private final HttpServletRequest request;
+    private final HttpServletResponse response;
+
+    /**
+     * The response writer, obtained on first use.  Shared with any other context for the same response.
+     */
+    private volatile PrintWriter out;
+
+    private Context(ServletContext servletContext, HttpServletRequest request, HttpServletResponse response, PrintWriter out) {
+      this.servletContext = servletContext;
+      this.request = request;
+      this.response = response;
+      this.out = out;
+    }
 
-  static final ThreadLocal<HttpServletRequest> request = new ThreadLocal<>();
+    /**
+     * Gets the context for the given objects, reusing the old context when unchanged.
+     * The response writer is kept when the response is unchanged.
+     */
+    private static Context of(
+        Context oldContext,
+        ServletContext newServletContext,
+        HttpServletRequest newRequest,
+        HttpServletResponse newResponse
+    ) {
+      if (oldContext == null) {
+        return new Context(newServletContext, newRequest, newResponse, null);
+      }
+      if (newResponse != oldContext.response) {
+        return new Context(newServletContext, newRequest, newResponse, null);
+      }
+      if (newServletContext == oldContext.servletContext && newRequest == oldContext.request) {
+        return oldContext;
+      }
+      return new Context(newServletContext, newRequest, newResponse, oldContext.out);
+    }
+  }
 
-  static final ThreadLocal<HttpServletResponse> response = new ThreadLocal<>();
+  static final ThreadLocal<Context> context = new ThreadLocal<>();
 
-  static final ThreadLocal<PrintWriter> out = new ThreadLocal<>();
+  private static void restore(Context oldContext) {
+    if (oldContext == null) {
+      context.remove();
+    } else {
+      context.set(oldContext);
+    }
+  }
+
+  /**
+   * Gets the current context.
+   *
+   * @throws  IllegalStateException if no context set
+   */
+  private static Context getContext() throws IllegalStateException {
+    Context c = context.get();
+    if (c == null) {
+      throw new IllegalStateException("No page context");
+    }
+    return c;
+  }
 
   @FunctionalInterface
   public static interface PageContextRunnable {
@@ -76,53 +137,16 @@ public final class PageContext {
       HttpServletResponse newResponse,
       PageContextRunnable target
   ) throws ServletException, IOException {
-    final ServletContext oldServletContext = servletContext.get();
-    final HttpServletRequest oldRequest = request.get();
-    final HttpServletResponse oldResponse = response.get();
-    final PrintWriter oldOut = out.get();
-    PrintWriter newOut = null;
+    final Context oldContext = context.get();
+    final Context newContext = Context.of(oldContext, newServletContext, newRequest, newResponse);
+    if (newContext != oldContext) {
+      context.set(newContext);
+    }
     try {
-      if (newServletContext != oldServletContext) {
-        servletContext.set(newServletContext);
-      }
-      if (newRequest != oldRequest) {
-        request.set(newRequest);
-      }
-      if (newResponse != oldResponse) {
-        response.set(newResponse);
-        out.remove();
-      } else {
-        newOut = oldOut;
-      }
       target.run();
     } finally {
-      if (newServletContext != oldServletContext) {
-        if (oldServletContext == null) {
-          servletContext.remove();
-        } else {
-          servletContext.set(oldServletContext);
-        }
-      }
-      if (newRequest != oldRequest) {
-        if (oldRequest == null) {
-          request.remove();
-        } else {
-          request.set(oldRequest);
-        }
-      }
-      if (newResponse != oldResponse) {
-        if (oldResponse == null) {
-          response.remove();
-        } else {
-          response.set(oldResponse);
-        }
-      }
-      if (newOut != oldOut) {
-        if (oldOut == null) {
-          out.remove();
-        } else {
-          out.set(oldOut);
-        }
+      if (newContext != oldContext) {
+        restore(oldContext);
       }
     }
   }
@@ -133,53 +157,16 @@ public final class PageContext {
       HttpServletResponse newResponse,
       PageContextCallable<V> target
   ) throws ServletException, IOException {
-    final ServletContext oldServletContext = servletContext.get();
-    final HttpServletRequest oldRequest = request.get();
-    final HttpServletResponse oldResponse = response.get();
-    final PrintWriter oldOut = out.get();
-    PrintWriter newOut = null;
+    final Context oldContext = context.get();
+    final Context newContext = Context.of(oldContext, newServletContext, newRequest, newResponse);
+    if (newContext != oldContext) {
+      context.set(newContext);
+    }
     try {
-      if (newServletContext != oldServletContext) {
-        servletContext.set(newServletContext);
-      }
-      if (newRequest != oldRequest) {
-        request.set(newRequest);
-      }
-      if (newResponse != oldResponse) {
-        response.set(newResponse);
-        out.remove();
-      } else {
-        newOut = oldOut;
-      }
       return target.call();
     } finally {
-      if (newServletContext != oldServletContext) {
-        if (oldServletContext == null) {
-          servletContext.remove();
-        } else {
-          servletContext.set(oldServletContext);
-        }
-      }
-      if (newRequest != oldRequest) {
-        if (oldRequest == null) {
-          request.remove();
-        } else {
-          request.set(oldRequest);
-        }
-      }
-      if (newResponse != oldResponse) {
-        if (oldResponse == null) {
-          response.remove();
-        } else {
-          response.set(oldResponse);
-        }
-      }
-      if (newOut != oldOut) {
-        if (oldOut == null) {
-          out.remove();
-        } else {
-          out.set(oldOut);
-        }
+      if (newContext != oldContext) {
+        restore(oldContext);
       }
     }
   }
@@ -206,53 +193,16 @@ public final class PageContext {
       HttpServletResponse newResponse,
       PageContextRunnableSkip target
   ) throws ServletException, IOException, SkipPageException {
-    final ServletContext oldServletContext = servletContext.get();
-    final HttpServletRequest oldRequest = request.get();
-    final HttpServletResponse oldResponse = response.get();
-    final PrintWriter oldOut = out.get();
-    PrintWriter newOut = null;
+    final Context oldContext = context.get();
+    final Context newContext = Context.of(oldContext, newServletContext, newRequest, newResponse);
+    if (newContext != oldContext) {
+      context.set(newContext);
+    }
     try {
-      if (newServletContext != oldServletContext) {
-        servletContext.set(newServletContext);
-      }
-      if (newRequest != oldRequest) {
-        request.set(newRequest);
-      }
-      if (newResponse != oldResponse) {
-        response.set(newResponse);
-        out.remove();
-      } else {
-        newOut = oldOut;
-      }
       target.run();
     } finally {
-      if (newServletContext != oldServletContext) {
-        if (oldServletContext == null) {
-          servletContext.remove();
-        } else {
-          servletContext.set(oldServletContext);
-        }
-      }
-      if (newRequest != oldRequest) {
-        if (oldRequest == null) {
-          request.remove();
-        } else {
-          request.set(oldRequest);
-        }
-      }
-      if (newResponse != oldResponse) {
-        if (oldResponse == null) {
-          response.remove();
-        } else {
-          response.set(oldResponse);
-        }
-      }
-      if (newOut != oldOut) {
-        if (oldOut == null) {
-          out.remove();
-        } else {
-          out.set(oldOut);
-        }
+      if (newContext != oldContext) {
+        restore(oldContext);
       }
     }
   }
@@ -268,53 +218,16 @@ public final class PageContext {
       HttpServletResponse newResponse,
       PageContextCallableSkip<V> target
   ) throws ServletException, IOException, SkipPageException {
-    final ServletContext oldServletContext = servletContext.get();
-    final HttpServletRequest oldRequest = request.get();
-    final HttpServletResponse oldResponse = response.get();
-    final PrintWriter oldOut = out.get();
-    PrintWriter newOut = null;
+    final Context oldContext = context.get();
+    final Context newContext = Context.of(oldContext, newServletContext, newRequest, newResponse);
+    if (newContext != oldContext) {
+      context.set(newContext);
+    }
     try {
-      if (newServletContext != oldServletContext) {
-        servletContext.set(newServletContext);
-      }
-      if (newRequest != oldRequest) {
-        request.set(newRequest);
-      }
-      if (newResponse != oldResponse) {
-        response.set(newResponse);
-        out.remove();
-      } else {
-        newOut = oldOut;
-      }
       return target.call();
     } finally {
-      if (newServletContext != oldServletContext) {
-        if (oldServletContext == null) {
-          servletContext.remove();
-        } else {
-          servletContext.set(oldServletContext);
-        }
-      }
-      if (newRequest != oldRequest) {
-        if (oldRequest == null) {
-          request.remove();
-        } else {
-          request.set(oldRequest);
-        }
-      }
-      if (newResponse != oldResponse) {
-        if (oldResponse == null) {
-          response.remove();
-        } else {
-          response.set(oldResponse);
-        }
-      }
-      if (newOut != oldOut) {
-        if (oldOut == null) {
-          out.remove();
-        } else {
-          out.set(oldOut);
-        }
+      if (newContext != oldContext) {
+        restore(oldContext);
       }
     }
   }
@@ -346,53 +259,16 @@ public final class PageContext {
       HttpServletResponse newResponse,
       PageContextRunnableSkipE<Ex> target
   ) throws Ex, ServletException, IOException, SkipPageException {
-    final ServletContext oldServletContext = servletContext.get();
-    final HttpServletRequest oldRequest = request.get();
-    final HttpServletResponse oldResponse = response.get();
-    final PrintWriter oldOut = out.get();
-    PrintWriter newOut = null;
+    final Context oldContext = context.get();
+    final Context newContext = Context.of(oldContext, newServletContext, newRequest, newResponse);
+    if (newContext != oldContext) {
+      context.set(newContext);
+    }
     try {
-      if (newServletContext != oldServletContext) {
-        servletContext.set(newServletContext);
-      }
-      if (newRequest != oldRequest) {
-        request.set(newRequest);
-      }
-      if (newResponse != oldResponse) {
-        response.set(newResponse);
-        out.remove();
-      } else {
-        newOut = oldOut;
-      }
       target.run();
     } finally {
-      if (newServletContext != oldServletContext) {
-        if (oldServletContext == null) {
-          servletContext.remove();
-        } else {
-          servletContext.set(oldServletContext);
-        }
-      }
-      if (newRequest != oldRequest) {
-        if (oldRequest == null) {
-          request.remove();
-        } else {
-          request.set(oldRequest);
-        }
-      }
-      if (newResponse != oldResponse) {
-        if (oldResponse == null) {
-          response.remove();
-        } else {
-          response.set(oldResponse);
-        }
-      }
-      if (newOut != oldOut) {
-        if (oldOut == null) {
-          out.remove();
-        } else {
-          out.set(oldOut);
-        }
+      if (newContext != oldContext) {
+        restore(oldContext);
       }
     }
   }
@@ -407,53 +283,16 @@ public final class PageContext {
       HttpServletResponse newResponse,
       PageContextCallableSkipE<V, Ex> target
   ) throws Ex, ServletException, IOException, SkipPageException {
-    final ServletContext oldServletContext = servletContext.get();
-    final HttpServletRequest oldRequest = request.get();
-    final HttpServletResponse oldResponse = response.get();
-    final PrintWriter oldOut = out.get();
-    PrintWriter newOut = null;
+    final Context oldContext = context.get();
+    final Context newContext = Context.of(oldContext, newServletContext, newRequest, newResponse);
+    if (newContext != oldContext) {
+      context.set(newContext);
+    }
     try {
-      if (newServletContext != oldServletContext) {
-        servletContext.set(newServletContext);
-      }
-      if (newRequest != oldRequest) {
-        request.set(newRequest);
-      }
-      if (newResponse != oldResponse) {
-        response.set(newResponse);
-        out.remove();
-      } else {
-        newOut = oldOut;
-      }
       return target.call();
     } finally {
-      if (newServletContext != oldServletContext) {
-        if (oldServletContext == null) {
-          servletContext.remove();
-        } else {
-          servletContext.set(oldServletContext);
-        }
-      }
-      if (newRequest != oldRequest) {
-        if (oldRequest == null) {
-          request.remove();
-        } else {
-          request.set(oldRequest);
-        }
-      }
-      if (newResponse != oldResponse) {
-        if (oldResponse == null) {
-          response.remove();
-        } else {
-          response.set(oldResponse);
-        }
-      }
-      if (newOut != oldOut) {
-        if (oldOut == null) {
-          out.remove();
-        } else {
-          out.set(oldOut);
-        }
+      if (newContext != oldContext) {
+        restore(oldContext);
       }
     }
   }
@@ -475,53 +314,16 @@ public final class PageContext {
       HttpServletResponse newResponse,
       PageContextRunnableSkipEE<Ex1, Ex2> target
   ) throws Ex1, Ex2, ServletException, IOException, SkipPageException {
-    final ServletContext oldServletContext = servletContext.get();
-    final HttpServletRequest oldRequest = request.get();
-    final HttpServletResponse oldResponse = response.get();
-    final PrintWriter oldOut = out.get();
-    PrintWriter newOut = null;
+    final Context oldContext = context.get();
+    final Context newContext = Context.of(oldContext, newServletContext, newRequest, newResponse);
+    if (newContext != oldContext) {
+      context.set(newContext);
+    }
     try {
-      if (newServletContext != oldServletContext) {
-        servletContext.set(newServletContext);
-      }
-      if (newRequest != oldRequest) {
-        request.set(newRequest);
-      }
-      if (newResponse != oldResponse) {
-        response.set(newResponse);
-        out.remove();
-      } else {
-        newOut = oldOut;
-      }
       target.run();
     } finally {
-      if (newServletContext != oldServletContext) {
-        if (oldServletContext == null) {
-          servletContext.remove();
-        } else {
-          servletContext.set(oldServletContext);
-        }
-      }
-      if (newRequest != oldRequest) {
-        if (oldRequest == null) {
-          request.remove();
-        } else {
-          request.set(oldRequest);
-        }
-      }
-      if (newResponse != oldResponse) {
-        if (oldResponse == null) {
-          response.remove();
-        } else {
-          response.set(oldResponse);
-        }
-      }
-      if (newOut != oldOut) {
-        if (oldOut == null) {
-          out.remove();
-        } else {
-          out.set(oldOut);
-        }
+      if (newContext != oldContext) {
+        restore(oldContext);
       }
     }
   }
@@ -532,53 +334,16 @@ public final class PageContext {
       HttpServletResponse newResponse,
       PageContextCallableSkipEE<V, Ex1, Ex2> target
   ) throws Ex1, Ex2, ServletException, IOException, SkipPageException {
-    final ServletContext oldServletContext = servletContext.get();
-    final HttpServletRequest oldRequest = request.get();
-    final HttpServletResponse oldResponse = response.get();
-    final PrintWriter oldOut = out.get();
-    PrintWriter newOut = null;
+    final Context oldContext = context.get();
+    final Context newContext = Context.of(oldContext, newServletContext, newRequest, newResponse);
+    if (newContext != oldContext) {
+      context.set(newContext);
+    }
     try {
-      if (newServletContext != oldServletContext) {
-        servletContext.set(newServletContext);
-      }
-      if (newRequest != oldRequest) {
-        request.set(newRequest);
-      }
-      if (newResponse != oldResponse) {
-        response.set(newResponse);
-        out.remove();
-      } else {
-        newOut = oldOut;
-      }
       return target.call();
     } finally {
-      if (newServletContext != oldServletContext) {
-        if (oldServletContext == null) {
-          servletContext.remove();
-        } else {
-          servletContext.set(oldServletContext);
-        }
-      }
-      if (newRequest != oldRequest) {
-        if (oldRequest == null) {
-          request.remove();
-        } else {
-          request.set(oldRequest);
-        }
-      }
-      if (newResponse != oldResponse) {
-        if (oldResponse == null) {
-          response.remove();
-        } else {
-          response.set(oldResponse);
-        }
-      }
-      if (newOut != oldOut) {
-        if (oldOut == null) {
-          out.remove();
-        } else {
-          out.set(oldOut);
-        }
+      if (newContext != oldContext) {
+        restore(oldContext);
       }
     }
   }
@@ -589,7 +354,7 @@ public final class PageContext {
    * @throws  IllegalStateException if no context set
    */
   public static ServletContext getServletContext() throws IllegalStateException {
-    ServletContext s = servletContext.get();
+    ServletContext s = getContext().servletContext;
     if (s == null) {
       throw new IllegalStateException("No page context");
     }
@@ -602,7 +367,7 @@ public final class PageContext {
    * @throws  IllegalStateException if no context set
    */
   public static HttpServletRequest getRequest() throws IllegalStateException {
-    HttpServletRequest r = request.get();
+    HttpServletRequest r = getContext().request;
     if (r == null) {
       throw new IllegalStateException("No page context");
     }
@@ -615,7 +380,7 @@ public final class PageContext {
    * @throws  IllegalStateException if no context set
    */
   public static HttpServletResponse getResponse() throws IllegalStateException {
-    HttpServletResponse r = response.get();
+    HttpServletResponse r = getContext().response;
     if (r == null) {
       throw new IllegalStateException("No page context");
     }
@@ -628,10 +393,15 @@ public final class PageContext {
    * @throws  IllegalStateException if no context set
    */
   public static PrintWriter getOut() throws IllegalStateException, IOException {
-    PrintWriter o = out.get();
+    Context c = getContext();
+    PrintWriter o = c.out;
     if (o == null) {
-      o = getResponse().getWriter();
-      out.set(o);
+      HttpServletResponse r = c.response;
+      if (r == null) {
+        throw new IllegalStateException("No page context");
+      }
+      o = r.getWriter();
+      c.out = o;
     }
     return o;
   }
@@ -1,6 +1,6 @@
 /*
  * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
- * Copyright (C) 2015, 2016, 2017, 2018, 2019, 2020, 2021, 2022, 2024  AO Industries, Inc.
+ * Copyright (C) 2015, 2016, 2017, 2018, 2019, 2020, 2021, 2022, 2024, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -26,10 +26,10 @@ package com.semanticcms.core.servlet;
 import static com.aoapps.lang.Strings.nullIfEmpty;
 
 import com.aoapps.lang.NullArgumentException;
-import com.aoapps.net.URIResolver;
 import com.aoapps.servlet.http.Dispatcher;
 import com.semanticcms.core.model.Book;
 import com.semanticcms.core.model.PageRef;
+import com.semanticcms.core.model.ParentRef;
 import java.net.MalformedURLException;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -67,7 +67,8 @@ public final class PageRefResolver {
    */
   public static PageRef getCurrentPageRef(ServletContext servletContext, HttpServletRequest request, boolean requireBook) throws ServletException {
     String pagePath = Dispatcher.getCurrentPagePath(request);
-    Book book = SemanticCMS.getInstance(servletContext).getBook(pagePath);
+    SemanticCMS semanticCms = SemanticCMS.getInstance(servletContext);
+    Book book = semanticCms.getBook(pagePath);
     if (book == null) {
       if (requireBook) {
         throw new ServletException("Book not found for pagePath: " + pagePath);
@@ -79,7 +80,7 @@ public final class PageRefResolver {
     if (!pagePath.startsWith(bookPrefix)) {
       throw new AssertionError();
     }
-    return new PageRef(book, pagePath.substring(bookPrefix.length()));
+    return semanticCms.internPageRef(new PageRef(book, pagePath.substring(bookPrefix.length())));
   }
 
   /**
@@ -105,36 +106,61 @@ public final class PageRefResolver {
     SemanticCMS semanticCms = SemanticCMS.getInstance(servletContext);
     if (book == null) {
       // When book not provided, path is relative to current page
-      String currentPagePath = Dispatcher.getCurrentPagePath(request);
-      Book currentBook = semanticCms.getBook(currentPagePath);
-      if (currentBook == null) {
+      PageRef pageRef = semanticCms.getRelativePageRef(Dispatcher.getCurrentPagePath(request), path);
+      if (pageRef == null) {
         throw new ServletException("book attribute required when not in a book's content");
       }
-      return new PageRef(
-          currentBook,
-          URIResolver.getAbsolutePath(
-              currentPagePath.substring(currentBook.getPathPrefix().length()),
-              path
-          )
-      );
+      return pageRef;
     } else {
       if (!path.startsWith("/")) {
         throw new ServletException("When book provided, path must begin with a slash (/): " + path);
       }
       Book foundBook = semanticCms.getBooks().get(book);
       if (foundBook != null) {
-        return new PageRef(foundBook, path);
+        return semanticCms.internPageRef(new PageRef(foundBook, path));
       } else {
-        // Missing book
-        // TODO: missingBooks intered, too?  Then can take it's interned copy for "book"
-        if (!semanticCms.getMissingBooks().contains(book)) {
+        // Missing book, using the shared copy of its name
+        String missingBook = semanticCms.internMissingBook(book);
+        if (missingBook == null) {
           throw new ServletException("Reference to missing book not allowed: " + book);
         }
-        return new PageRef(book, path);
+        return semanticCms.internPageRef(new PageRef(missingBook, path));
       }
     }
   }
 
+  /**
+   * Resolves a PageRef within the given book, using the shared instance of the page reference.
+   *
+   * @param  path  required, beginning with a slash (/)
+   */
+  public static PageRef getPageRef(ServletContext servletContext, Book book, String path) throws ServletException {
+    NullArgumentException.checkNotNull(book, "book");
+    NullArgumentException.checkNotNull(path, "path");
+    if (!path.startsWith("/")) {
+      throw new ServletException("When book provided, path must begin with a slash (/): " + path);
+    }
+    return SemanticCMS.getInstance(servletContext).internPageRef(new PageRef(book, path));
+  }
+
+  /**
+   * Gets the shared instance of an already resolved PageRef, without allocating another.
+   *
+   * @return  the shared instance, which is the given page reference when it is the first of its value
+   */
+  public static PageRef getPageRef(ServletContext servletContext, PageRef pageRef) {
+    NullArgumentException.checkNotNull(pageRef, "pageRef");
+    return SemanticCMS.getInstance(servletContext).internPageRef(pageRef);
+  }
+
+  /**
+   * Gets the shared ParentRef, without a short title, to an already resolved PageRef, such as for auto parents.
+   */
+  public static ParentRef getParentRef(ServletContext servletContext, PageRef pageRef) {
+    NullArgumentException.checkNotNull(pageRef, "pageRef");
+    return SemanticCMS.getInstance(servletContext).internParentRef(pageRef);
+  }
+
   /**
    * Gets a PageRef in the current page context.
    *
@@ -1,6 +1,6 @@
 /*
  * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
- * Copyright (C) 2013, 2014, 2015, 2016, 2017, 2019, 2020, 2021, 2022, 2023, 2024  AO Industries, Inc.
+ * Copyright (C) 2013, 2014, 2015, 2016, 2017, 2019, 2020, 2021, 2022, 2023, 2024, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -26,7 +26,6 @@ package com.semanticcms.core.servlet;
 import com.aoapps.collections.AoCollections;
 import com.aoapps.lang.Coercion;
 import com.aoapps.lang.io.function.IOPredicateE;
-import com.semanticcms.core.model.Book;
 import com.semanticcms.core.model.ChildRef;
 import com.semanticcms.core.model.Element;
 import com.semanticcms.core.model.Page;
@@ -36,7 +35,7 @@ import com.semanticcms.core.model.ParentRef;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import javax.servlet.ServletContext;
@@ -115,6 +114,37 @@ public final class PageUtils {
     return hasElement(servletContext, request, response, page, elementType, recursive, element -> true);
   }
 
+  static final InheritedProperty<Boolean> ALLOW_ROBOTS = new InheritedProperty<>("allowRobots") {
+    @Override
+    boolean isInherited(Page page) {
+      return page.getAllowRobots() == null;
+    }
+
+    @Override
+    Boolean resolve(Page page, List<Boolean> parentAllowRobots) throws ServletException {
+      // Use directly set allowRobots first
+      Boolean pageAllowRobots = page.getAllowRobots();
+      if (pageAllowRobots == null) {
+        // Use the allowRobots of all parents in the same book
+        for (Boolean parentAllowRobot : parentAllowRobots) {
+          if (pageAllowRobots == null) {
+            pageAllowRobots = parentAllowRobot;
+          } else {
+            // Must precisely match when have multiple parents
+            if (!pageAllowRobots.equals(parentAllowRobot)) {
+              throw new ServletException("Mismatched allowRobots inherited from different parents: " + pageAllowRobots + " does not match " + parentAllowRobot);
+            }
+          }
+        }
+        // No parents in the same book, use book allowRobots
+        if (pageAllowRobots == null) {
+          pageAllowRobots = page.getPageRef().getBook().getAllowRobots();
+        }
+      }
+      return pageAllowRobots;
+    }
+  };
+
   /**
    * Finds the allowRobots setting for the given page.
    *
@@ -133,63 +163,20 @@ public final class PageUtils {
       HttpServletResponse response,
       com.semanticcms.core.model.Page page
   ) throws ServletException, IOException {
-    // TODO: Traversal
-    return findAllowRobotsRecursive(
-        servletContext,
-        request,
-        response,
-        page,
-        new HashMap<>()
-    );
+    return ALLOW_ROBOTS.get(servletContext, request, response, page);
   }
 
-  private static boolean findAllowRobotsRecursive(
+  /**
+   * Finds the allowRobots setting for the given page and every page below it within the same book,
+   * resolving the whole book in a single pass when given the book's content root.
+   */
+  public static Map<PageRef, Boolean> findAllAllowRobots(
       ServletContext servletContext,
       HttpServletRequest request,
       HttpServletResponse response,
-      com.semanticcms.core.model.Page page,
-      Map<PageRef, Boolean> finished
+      Page root
   ) throws ServletException, IOException {
-    PageRef pageRef = page.getPageRef();
-    assert !finished.containsKey(pageRef);
-    // Use directly set allowRobots first
-    Boolean pageAllowRobots = page.getAllowRobots();
-    if (pageAllowRobots == null) {
-      // Use the allowRobots of all parents in the same book
-      Book book = pageRef.getBook();
-      for (ParentRef parentRef : page.getParentRefs()) {
-        PageRef parentPageRef = parentRef.getPageRef();
-        if (book.equals(parentPageRef.getBook())) {
-          // Check finished already
-          Boolean parentAllowRobots = finished.get(parentPageRef);
-          if (parentAllowRobots == null) {
-            // Capture parent and find its allowRobots
-            parentAllowRobots = findAllowRobotsRecursive(
-                servletContext,
-                request,
-                response,
-                CapturePage.capturePage(servletContext, request, response, parentPageRef, CaptureLevel.PAGE),
-                finished
-            );
-          }
-          if (pageAllowRobots == null) {
-            pageAllowRobots = parentAllowRobots;
-          } else {
-            // Must precisely match when have multiple parents
-            if (!pageAllowRobots.equals(parentAllowRobots)) {
-              throw new ServletException("Mismatched allowRobots inherited from different parents: " + pageAllowRobots + " does not match " + parentAllowRobots);
-            }
-          }
-        }
-      }
-      // No parents in the same book, use book allowRobots
-      if (pageAllowRobots == null) {
-        pageAllowRobots = book.getAllowRobots();
-      }
-    }
-    // Store in finished
-    finished.put(pageRef, pageAllowRobots);
-    return pageAllowRobots;
+    return ALLOW_ROBOTS.getAll(servletContext, request, response, root);
   }
 
   /**
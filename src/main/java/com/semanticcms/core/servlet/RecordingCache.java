@@ -0,0 +1,182 @@
+/*
+ * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-servlet.
+ *
+ * semanticcms-core-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.semanticcms.core.servlet;
+
+import com.semanticcms.core.model.Page;
+import com.semanticcms.core.model.PageRef;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+
+/**
+ * A cache that shares its captured pages with another cache, while recording every page that is looked-up in or
+ * added through this cache.  The recorded pages are the {@linkplain #getPageRefs() pages in this cache}.
+ * Pages captured at {@link CaptureLevel#BODY}, which are not cached, and resources included by elements are also
+ * recorded.  Resources included by pages directly, such as through JSP includes, are not recorded.
+ *
+ * <p>Attributes are not shared, since values derived from other pages, such as
+ * {@linkplain InheritedProperty inherited properties}, would otherwise be found without looking-up the pages they
+ * were derived from.</p>
+ *
+ * <p>One recording cache is used per exported page, and per request that renders output for the
+ * {@linkplain OutputCache output cache}.  Captures on behalf of a request record their dependencies directly in the
+ * {@linkplain DependencyGraph dependency graph} of the shared cache instead.</p>
+ *
+ * <p>This cache is thread safe when the shared cache is thread safe.</p>
+ *
+ * @see  Exporter
+ * @see  OutputCache
+ */
+class RecordingCache extends Cache {
+
+  private final Cache pages;
+  private final Cache attributes = new ConcurrentCache();
+  private final Set<PageRef> pageRefs = ConcurrentHashMap.newKeySet();
+  private final Set<String> resources = ConcurrentHashMap.newKeySet();
+
+  RecordingCache(Cache pages) {
+    this.pages = pages;
+  }
+
+  @Override
+  Page get(PageRef pageRef, CaptureLevel level) {
+    pageRefs.add(pageRef);
+    return pages.get(pageRef, level);
+  }
+
+  @Override
+  void put(PageRef pageRef, CaptureLevel level, Page page) throws ServletException {
+    pageRefs.add(pageRef);
+    pages.put(pageRef, level, page);
+  }
+
+  @Override
+  void put(PageRef pageRef, CaptureLevel level, Page page, long generation) throws ServletException {
+    pageRefs.add(pageRef);
+    pages.put(pageRef, level, page, generation);
+  }
+
+  /**
+   * Also records the page, since anything derived from the attribute was derived from the page.
+   */
+  @Override
+  public void addDependency(String key, PageRef pageRef) {
+    pageRefs.add(pageRef);
+    super.addDependency(key, pageRef);
+  }
+
+  /**
+   * Gets the pages that have been looked-up in or added through this cache, at any capture level.
+   */
+  @Override
+  Set<PageRef> getPageRefs() {
+    return Collections.unmodifiableSet(pageRefs);
+  }
+
+  /**
+   * Gets the servlet paths of the resources included by elements while this cache was in use.
+   *
+   * @see  ServletElementContext#include(java.lang.String, java.io.Writer, java.util.Map)
+   */
+  Set<String> getResources() {
+    return Collections.unmodifiableSet(resources);
+  }
+
+  /**
+   * Records a page captured at {@link CaptureLevel#BODY}, which is not looked-up in the cache, when the cache of the
+   * given request is recording.
+   */
+  static void recordBodyCapture(ServletRequest request, PageRef pageRef) {
+    Cache cache = CacheFilter.findCache(request);
+    if (cache instanceof RecordingCache) {
+      ((RecordingCache) cache).pageRefs.add(pageRef);
+    }
+  }
+
+  /**
+   * Records a resource included by an element, when the cache of the given request is recording.
+   */
+  static void recordResource(ServletRequest request, String servletPath) {
+    Cache cache = CacheFilter.findCache(request);
+    if (cache instanceof RecordingCache) {
+      ((RecordingCache) cache).resources.add(servletPath);
+    }
+  }
+
+  @Override
+  void removeBooks(Set<String> bookNames) {
+    pages.removeBooks(bookNames);
+    attributes.removeBooks(bookNames);
+  }
+
+  @Override
+  DependencyGraph getDependencyGraph() {
+    return pages.getDependencyGraph();
+  }
+
+  @Override
+  Set<PageRef> invalidate(Set<PageRef> pageRefs) {
+    attributes.invalidate(pageRefs);
+    return pages.invalidate(pageRefs);
+  }
+
+  @Override
+  public <K, V> Map<K, V> newMap() {
+    return attributes.newMap();
+  }
+
+  @Override
+  public <K, V> Map<K, V> newMap(int size) {
+    return attributes.newMap(size);
+  }
+
+  @Override
+  public void setAttribute(String key, Object value) {
+    attributes.setAttribute(key, value);
+  }
+
+  @Override
+  public Object getAttribute(String key) {
+    return attributes.getAttribute(key);
+  }
+
+  @Override
+  // TODO: Ex extends Throwable
+  public <V, Ex extends Exception> V getAttribute(
+      String key,
+      Class<V> clazz,
+      Callable<? extends V, Ex> callable
+  ) throws Ex {
+    return attributes.getAttribute(key, clazz, callable);
+  }
+
+  @Override
+  public void removeAttribute(String key) {
+    attributes.removeAttribute(key);
+  }
+}
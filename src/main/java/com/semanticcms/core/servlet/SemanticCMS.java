@@ -1,6 +1,6 @@
 /*
  * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
- * Copyright (C) 2014, 2015, 2016, 2017, 2018, 2019, 2020, 2021, 2022, 2023, 2024, 2025  AO Industries, Inc.
+ * Copyright (C) 2014, 2015, 2016, 2017, 2018, 2019, 2020, 2021, 2022, 2023, 2024, 2025, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -23,6 +23,8 @@
 
 package com.semanticcms.core.servlet;
 
+import com.aoapps.collections.AoCollections;
+import com.aoapps.lang.concurrent.ExecutionExceptions;
 import com.aoapps.lang.exception.WrappedException;
 import com.aoapps.lang.xml.XmlUtils;
 import com.aoapps.servlet.PropertiesUtils;
@@ -35,18 +37,35 @@ import com.aoapps.web.resources.servlet.RegistryEE;
 import com.semanticcms.core.model.Book;
 import com.semanticcms.core.model.PageRef;
 import com.semanticcms.core.model.ParentRef;
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
@@ -56,6 +75,9 @@ import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
 import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
 
@@ -67,6 +89,8 @@ import org.xml.sax.SAXException;
  */
 public class SemanticCMS {
 
+  private static final Logger logger = Logger.getLogger(SemanticCMS.class.getName());
+
   // <editor-fold defaultstate="collapsed" desc="Singleton Instance (per application)">
 
   /**
@@ -81,6 +105,7 @@ public class SemanticCMS {
     @Override
     public void contextInitialized(ServletContextEvent event) {
       instance = getInstance(event.getServletContext());
+      instance.startFileWatcher();
     }
 
     @Override
@@ -130,19 +155,36 @@ public class SemanticCMS {
   protected SemanticCMS(ServletContext servletContext) throws IOException, SAXException, ParserConfigurationException {
     this.servletContext = servletContext;
     this.demoMode = Boolean.parseBoolean(servletContext.getInitParameter(DEMO_MODE_INIT_PARAM));
+    this.streaming = Boolean.parseBoolean(servletContext.getInitParameter(STREAMING_INIT_PARAM));
+    String outputCacheSizeParam = servletContext.getInitParameter(OUTPUT_CACHE_SIZE_INIT_PARAM);
+    int outputCacheSize = (outputCacheSizeParam == null || outputCacheSizeParam.isEmpty()) ? 0 : Integer.parseInt(outputCacheSizeParam);
+    this.outputCache =
+        (outputCacheSize > 0)
+            ? new OutputCache(
+                outputCacheSize,
+                Boolean.parseBoolean(servletContext.getInitParameter(OUTPUT_CACHE_COMPRESSION_INIT_PARAM))
+            )
+            : null;
     int numProcessors = Runtime.getRuntime().availableProcessors();
     this.concurrentSubrequests =
         numProcessors > 1
             && Boolean.parseBoolean(servletContext.getInitParameter(CONCURRENT_SUBREQUESTS_INIT_PARAM));
-    this.rootBook = initBooks();
     this.executors = new Executors();
+    this.bookIndex = initBooks(null);
+    this.fileWatcher = initFileWatcher();
   }
 
   /**
    * Called when the context is shutting down.
    */
   protected void destroy() {
-    // Do nothing
+    if (fileWatcher != null) {
+      try {
+        fileWatcher.close();
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Unable to stop the file watcher", e);
+      }
+    }
   }
   // </editor-fold>
 
@@ -159,6 +201,109 @@ public class SemanticCMS {
   }
   // </editor-fold>
 
+  // <editor-fold defaultstate="collapsed" desc="Streaming">
+  /**
+   * Initialization parameter, that when set to "true" will flush the response once the theme has written the
+   * document head.  This is off by default, since a committed response can no longer have its status changed
+   * should an error occur while writing the page body.
+   */
+  private static final String STREAMING_INIT_PARAM = SemanticCMS.class.getName() + ".streaming";
+
+  private final boolean streaming;
+
+  /**
+   * When true, the response is flushed once the theme has written the document head.
+   *
+   * @see  Theme#flushHead(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+   */
+  public boolean getStreaming() {
+    return streaming;
+  }
+  // </editor-fold>
+
+  // <editor-fold defaultstate="collapsed" desc="Output Cache">
+  /**
+   * Initialization parameter, that when set to a positive number, will enable the output cache with up to the given
+   * number of entries.  This is off by default.
+   */
+  private static final String OUTPUT_CACHE_SIZE_INIT_PARAM = SemanticCMS.class.getName() + ".outputCacheSize";
+
+  /**
+   * Initialization parameter, that when set to "true" will keep gzip and deflate variants of the cached output.
+   * This is off by default.
+   *
+   * @see  OutputCache
+   */
+  private static final String OUTPUT_CACHE_COMPRESSION_INIT_PARAM = SemanticCMS.class.getName() + ".outputCacheCompression";
+
+  private final OutputCache outputCache;
+
+  /**
+   * Gets the output cache or {@code null} when not enabled.
+   */
+  OutputCache getOutputCache() {
+    return outputCache;
+  }
+  // </editor-fold>
+
+  // <editor-fold defaultstate="collapsed" desc="File Watcher">
+  /**
+   * Initialization parameter, that when set to "true" will watch the web application directory for changes,
+   * invalidating the affected pages in the caches.  This is off by default, and has no effect when the web
+   * application is not deployed to a directory.
+   *
+   * @see  FileWatcher
+   */
+  private static final String FILE_WATCHER_INIT_PARAM = SemanticCMS.class.getName() + ".fileWatcher";
+
+  private final FileWatcher fileWatcher;
+
+  private FileWatcher initFileWatcher() throws IOException {
+    if (!Boolean.parseBoolean(servletContext.getInitParameter(FILE_WATCHER_INIT_PARAM))) {
+      return null;
+    }
+    String realPath = servletContext.getRealPath("/");
+    if (realPath == null) {
+      logger.warning("Web application is not deployed to a directory, not watching for file changes");
+      return null;
+    }
+    return new FileWatcher(servletContext, this, Paths.get(realPath));
+  }
+
+  /**
+   * Starts the file watcher, if any.  Called once this instance is fully constructed, since the watcher calls back
+   * into this instance from its own thread.
+   */
+  private void startFileWatcher() {
+    if (fileWatcher != null) {
+      fileWatcher.start();
+      if (outputCache != null) {
+        // Changes are found by the watcher instead of checking last modified times
+        outputCache.setWatched(true);
+      }
+      watchedCache = new ConcurrentCache(true);
+    }
+  }
+
+  /**
+   * The attributes kept across requests or {@code null} when the file watcher is not active.
+   */
+  private volatile Cache watchedCache;
+
+  /**
+   * Gets the cache of attributes kept across requests, such as navigation trees.  Each attribute records the pages it
+   * was derived from with {@link Cache#addDependency(java.lang.String, com.semanticcms.core.model.PageRef)}, and is
+   * removed when the file watcher finds any of those pages changed, or when their books are reloaded.
+   * Only attributes are used; pages continue to be captured in the
+   * {@linkplain CacheFilter#getCache(javax.servlet.ServletRequest) cache of the request}.
+   *
+   * @return  the cache or {@code null} when the file watcher is not active, since changes would go unnoticed
+   */
+  public Cache getWatchedCache() {
+    return watchedCache;
+  }
+  // </editor-fold>
+
   // <editor-fold defaultstate="collapsed" desc="Books">
   // See https://docs.oracle.com/javase/tutorial/jaxp/dom/validating.html
   private static final String BOOKS_XML_RESOURCE = "/WEB-INF/books.xml";
@@ -169,46 +314,37 @@ public class SemanticCMS {
   private static final String PARENT_TAG = "parent";
   private static final String ROOT_BOOK_ATTRIBUTE = "rootBook";
 
-  private final Map<String, Book> books = new LinkedHashMap<>();
-  private final Set<String> missingBooks = new LinkedHashSet<>();
-  private final Book rootBook;
+  private static class BooksLock {
+    // Empty lock class to help heap profile
+  }
 
-  private Book initBooks() throws IOException, SAXException, ParserConfigurationException {
-    Document booksXml;
-    {
-      InputStream schemaIn = SemanticCMS.class.getResourceAsStream(BOOKS_XML_SCHEMA_RESOURCE);
-      if (schemaIn == null) {
-        throw new IOException("Schema not found: " + BOOKS_XML_SCHEMA_RESOURCE);
-      }
-      try {
-        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-        try {
-          dbf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-        } catch (ParserConfigurationException e) {
-          throw new AssertionError("All implementations are required to support the javax.xml.XMLConstants.FEATURE_SECURE_PROCESSING feature.", e);
-        }
-        // See https://github.com/OWASP/CheatSheetSeries/blob/master/cheatsheets/XML_External_Entity_Prevention_Cheat_Sheet.md#java
-        // See https://rules.sonarsource.com/java/RSPEC-2755
-        dbf.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
-        dbf.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "https"); // TODO: How can avoid this while schema included in JAR?
-        dbf.setNamespaceAware(true);
-        dbf.setValidating(true);
-        dbf.setAttribute("http://java.sun.com/xml/jaxp/properties/schemaLanguage", XMLConstants.W3C_XML_SCHEMA_NS_URI);
-        dbf.setAttribute("http://java.sun.com/xml/jaxp/properties/schemaSource", schemaIn);
-        DocumentBuilder db = dbf.newDocumentBuilder();
-        InputStream booksXmlIn = servletContext.getResource(BOOKS_XML_RESOURCE).openStream();
-        if (booksXmlIn == null) {
-          throw new IOException(BOOKS_XML_RESOURCE + " not found");
-        }
-        try {
-          booksXml = db.parse(booksXmlIn);
-        } finally {
-          booksXmlIn.close();
-        }
-      } finally {
-        schemaIn.close();
-      }
-    }
+  /**
+   * Serializes reloading of the books.
+   */
+  private final BooksLock booksLock = new BooksLock();
+
+  /**
+   * The books, replaced as a whole on each reload.
+   */
+  private volatile BookIndex bookIndex;
+
+  /**
+   * Loads the books from {@link #BOOKS_XML_RESOURCE}.
+   *
+   * @param  previous  When reloading, the books currently in use.  Any book with the same configuration, and
+   *                   with all its parent books also unchanged, is kept as the same instance.
+   */
+  private BookIndex initBooks(BookIndex previous) throws IOException, SAXException, ParserConfigurationException {
+    long lastModified = getBooksXmlLastModified();
+    Map<String, Book> books = new LinkedHashMap<>();
+    Set<String> missingBooks = new LinkedHashSet<>();
+    Map<String, List<Object>> bookConfigs = new LinkedHashMap<>();
+    byte[] booksXmlBytes = readBooksXml();
+    byte[] booksXmlDigest = digestBooksXml(booksXmlBytes);
+    // Skip validation when unchanged since last validated, including before a restart
+    byte[] validatedDigest = (previous == null) ? readBooksXmlDigest() : previous.getBooksXmlDigest();
+    boolean validate = validatedDigest == null || !MessageDigest.isEqual(booksXmlDigest, validatedDigest);
+    Document booksXml = parseBooksXml(booksXmlBytes, validate);
     org.w3c.dom.Element booksElem = booksXml.getDocumentElement();
     // Load missingBooks
     for (org.w3c.dom.Element missingBookElem : XmlUtils.iterableChildElementsByTagName(booksElem, MISSING_BOOK_TAG)) {
@@ -222,12 +358,16 @@ public class SemanticCMS {
     if (rootBookName == null || rootBookName.isEmpty()) {
       throw new IllegalStateException(BOOKS_XML_RESOURCE + ": \"" + ROOT_BOOK_ATTRIBUTE + "\" not found");
     }
+    Map<String, Properties> bookPropsByName = loadBookProperties(booksElem);
     for (org.w3c.dom.Element bookElem : XmlUtils.iterableChildElementsByTagName(booksElem, BOOK_TAG)) {
       String name = bookElem.getAttribute("name");
       if (missingBooks.contains(name)) {
         throw new IllegalStateException(BOOKS_XML_RESOURCE + ": Book also listed in \"" + MISSING_BOOK_TAG + "\": " + name);
       }
+      Book previousBook = (previous == null) ? null : previous.getBooks().get(name);
+      boolean parentsUnchanged = true;
       Set<ParentRef> parentRefs = new LinkedHashSet<>();
+      List<String> parentConfigs = new ArrayList<>();
       for (org.w3c.dom.Element parentElem : XmlUtils.iterableChildElementsByTagName(bookElem, PARENT_TAG)) {
         String parentBookName = parentElem.getAttribute("book");
         String parentPage = parentElem.getAttribute("page");
@@ -236,7 +376,13 @@ public class SemanticCMS {
         if (parentBook == null) {
           throw new IllegalStateException(BOOKS_XML_RESOURCE + ": parent book not found (loading order currently matters): " + parentBookName);
         }
+        if (previousBook != null && parentBook != previous.getBooks().get(parentBookName)) {
+          parentsUnchanged = false;
+        }
         parentRefs.add(new ParentRef(new PageRef(parentBook, parentPage), parentShortTitle));
+        parentConfigs.add(parentBookName);
+        parentConfigs.add(parentPage);
+        parentConfigs.add(parentShortTitle);
       }
       if (name.equals(rootBookName)) {
         if (!parentRefs.isEmpty()) {
@@ -247,16 +393,26 @@ public class SemanticCMS {
           throw new IllegalStateException(BOOKS_XML_RESOURCE + ": Non-root books must have at least one parent: " + name);
         }
       }
-      books.put(
-          name,
-          new Book(
-              name,
-              bookElem.getAttribute("cvsworkDirectory"),
-              Boolean.valueOf(bookElem.getAttribute("allowRobots")),
-              parentRefs,
-              PropertiesUtils.loadFromResource(servletContext, ("/".equals(name) ? "" : name) + "/book.properties")
-          )
+      Properties bookProps = bookPropsByName.get(name);
+      List<Object> bookConfig = Arrays.asList(
+          bookElem.getAttribute("cvsworkDirectory"),
+          getAllowRobots(bookElem),
+          parentConfigs,
+          bookProps
       );
+      bookConfigs.put(name, bookConfig);
+      Book book;
+      if (
+          previousBook != null
+              && parentsUnchanged
+              && bookConfig.equals(previous.getBookConfig(name))
+      ) {
+        // Keep the same instance, so pages and caches of this book remain valid
+        book = previousBook;
+      } else {
+        book = newBook(bookElem, parentRefs, bookProps);
+      }
+      books.put(name, book);
     }
 
     // Load rootBook
@@ -266,22 +422,325 @@ public class SemanticCMS {
     }
 
     // Successful book load
-    return newRootBook;
+    if (validate) {
+      writeBooksXmlDigest(booksXmlDigest);
+    }
+    return new BookIndex(books, missingBooks, newRootBook, bookConfigs, lastModified, booksXmlDigest);
+  }
+
+  /**
+   * The value of the "allowRobots" attribute of a book when not specified, matching the default in the schema.
+   */
+  private static final String ALLOW_ROBOTS_DEFAULT = "true";
+
+  /**
+   * Gets the "allowRobots" attribute of a book.  The schema only applies its default when validating, which is
+   * skipped when unchanged, so the default is applied here.
+   */
+  static String getAllowRobots(org.w3c.dom.Element bookElem) {
+    return bookElem.hasAttribute("allowRobots") ? bookElem.getAttribute("allowRobots") : ALLOW_ROBOTS_DEFAULT;
+  }
+
+  /**
+   * Creates a book from its element in {@link #BOOKS_XML_RESOURCE}, the same whether or not the element was
+   * validated.
+   */
+  static Book newBook(org.w3c.dom.Element bookElem, Set<ParentRef> parentRefs, Properties bookProps) {
+    return new Book(
+        bookElem.getAttribute("name"),
+        bookElem.getAttribute("cvsworkDirectory"),
+        Boolean.valueOf(getAllowRobots(bookElem)),
+        parentRefs,
+        bookProps
+    );
+  }
+
+  /**
+   * The compiled schema for {@link #BOOKS_XML_RESOURCE}, shared since it is loaded from this JAR.
+   */
+  private static volatile Schema booksXmlSchema;
+
+  /**
+   * Gets the compiled schema, compiling it on first use.
+   * In the rare race, the schema may be compiled more than once and only one is kept.
+   */
+  private static Schema getBooksXmlSchema() throws IOException, SAXException {
+    Schema schema = booksXmlSchema;
+    if (schema == null) {
+      InputStream schemaIn = SemanticCMS.class.getResourceAsStream(BOOKS_XML_SCHEMA_RESOURCE);
+      if (schemaIn == null) {
+        throw new IOException("Schema not found: " + BOOKS_XML_SCHEMA_RESOURCE);
+      }
+      try {
+        SchemaFactory sf = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+        sf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        // See https://github.com/OWASP/CheatSheetSeries/blob/master/cheatsheets/XML_External_Entity_Prevention_Cheat_Sheet.md#java
+        // See https://rules.sonarsource.com/java/RSPEC-2755
+        sf.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        sf.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "https"); // TODO: How can avoid this while schema included in JAR?
+        schema = sf.newSchema(new StreamSource(schemaIn));
+      } finally {
+        schemaIn.close();
+      }
+      booksXmlSchema = schema;
+    }
+    return schema;
+  }
+
+  /**
+   * Reads the raw bytes of {@link #BOOKS_XML_RESOURCE}.
+   */
+  private byte[] readBooksXml() throws IOException {
+    URL booksXmlUrl = servletContext.getResource(BOOKS_XML_RESOURCE);
+    if (booksXmlUrl == null) {
+      throw new IOException(BOOKS_XML_RESOURCE + " not found");
+    }
+    try (InputStream booksXmlIn = booksXmlUrl.openStream()) {
+      return booksXmlIn.readAllBytes();
+    }
+  }
+
+  /**
+   * Digests {@link #BOOKS_XML_RESOURCE} along with the schema, so a persisted digest no longer matches once a
+   * different schema is in use.
+   */
+  private static byte[] digestBooksXml(byte[] booksXmlBytes) throws IOException {
+    MessageDigest md;
+    try {
+      md = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError("All implementations are required to support the SHA-256 algorithm.", e);
+    }
+    try (InputStream schemaIn = SemanticCMS.class.getResourceAsStream(BOOKS_XML_SCHEMA_RESOURCE)) {
+      if (schemaIn == null) {
+        throw new IOException("Schema not found: " + BOOKS_XML_SCHEMA_RESOURCE);
+      }
+      md.update(schemaIn.readAllBytes());
+    }
+    return md.digest(booksXmlBytes);
+  }
+
+  /**
+   * The file, within the temporary directory of the servlet context, that holds the digest of the last validated
+   * {@link #BOOKS_XML_RESOURCE}.
+   */
+  private static final String BOOKS_XML_DIGEST_FILE = SemanticCMS.class.getName() + ".booksXmlDigest";
+
+  /**
+   * Gets the file holding the digest of the last validated {@link #BOOKS_XML_RESOURCE}.
+   *
+   * @return  The file or {@code null} when the servlet context has no temporary directory
+   */
+  private Path getBooksXmlDigestFile() {
+    Object tempDir = servletContext.getAttribute(ServletContext.TEMPDIR);
+    return (tempDir instanceof File) ? ((File) tempDir).toPath().resolve(BOOKS_XML_DIGEST_FILE) : null;
+  }
+
+  /**
+   * Reads the digest of the last validated {@link #BOOKS_XML_RESOURCE}, persisted before a restart.
+   *
+   * @return  The digest or {@code null} when none available
+   */
+  private byte[] readBooksXmlDigest() {
+    Path digestFile = getBooksXmlDigestFile();
+    if (digestFile != null && Files.isRegularFile(digestFile)) {
+      try {
+        return Files.readAllBytes(digestFile);
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Unable to read the digest of " + BOOKS_XML_RESOURCE + ", validating", e);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Persists the digest of the validated {@link #BOOKS_XML_RESOURCE}, so validation may also be skipped after a
+   * restart.  A partially written digest does not match, so is only validated again.
+   */
+  private void writeBooksXmlDigest(byte[] booksXmlDigest) {
+    Path digestFile = getBooksXmlDigestFile();
+    if (digestFile != null) {
+      try {
+        Files.write(digestFile, booksXmlDigest);
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Unable to write the digest of " + BOOKS_XML_RESOURCE, e);
+      }
+    }
+  }
+
+  /**
+   * Parses {@link #BOOKS_XML_RESOURCE}.
+   *
+   * @param  validate  Validate against the schema, which may be skipped when the same content has already been
+   *                   validated
+   */
+  static Document parseBooksXml(byte[] booksXmlBytes, boolean validate) throws IOException, SAXException, ParserConfigurationException {
+    DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+    try {
+      dbf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+    } catch (ParserConfigurationException e) {
+      throw new AssertionError("All implementations are required to support the javax.xml.XMLConstants.FEATURE_SECURE_PROCESSING feature.", e);
+    }
+    // See https://github.com/OWASP/CheatSheetSeries/blob/master/cheatsheets/XML_External_Entity_Prevention_Cheat_Sheet.md#java
+    // See https://rules.sonarsource.com/java/RSPEC-2755
+    dbf.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+    dbf.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+    dbf.setNamespaceAware(true);
+    if (validate) {
+      dbf.setSchema(getBooksXmlSchema());
+    }
+    DocumentBuilder db = dbf.newDocumentBuilder();
+    return db.parse(new ByteArrayInputStream(booksXmlBytes));
+  }
+
+  /**
+   * Loads the book.properties of all books, concurrently when there is more than one book.
+   *
+   * @return  The properties by book name
+   */
+  private Map<String, Properties> loadBookProperties(org.w3c.dom.Element booksElem) throws IOException {
+    List<String> names = new ArrayList<>();
+    for (org.w3c.dom.Element bookElem : XmlUtils.iterableChildElementsByTagName(booksElem, BOOK_TAG)) {
+      names.add(bookElem.getAttribute("name"));
+    }
+    int size = names.size();
+    Map<String, Properties> bookPropsByName = AoCollections.newHashMap(size);
+    if (size > 1) {
+      List<Callable<Properties>> tasks = new ArrayList<>(size);
+      for (String name : names) {
+        tasks.add(() -> PropertiesUtils.loadFromResource(servletContext, ("/".equals(name) ? "" : name) + "/book.properties"));
+      }
+      List<Properties> results;
+      try {
+        results = executors.getPerProcessor().callAll(tasks);
+      } catch (InterruptedException e) {
+        // Restore the interrupted status
+        Thread.currentThread().interrupt();
+        InterruptedIOException ioErr = new InterruptedIOException();
+        ioErr.initCause(e);
+        throw ioErr;
+      } catch (ExecutionException e) {
+        // Maintain expected exception types while not losing stack trace
+        ExecutionExceptions.wrapAndThrow(e, IOException.class, IOException::new);
+        throw new IOException(e);
+      }
+      for (int i = 0; i < size; i++) {
+        bookPropsByName.put(names.get(i), results.get(i));
+      }
+    } else {
+      for (String name : names) {
+        bookPropsByName.put(name, PropertiesUtils.loadFromResource(servletContext, ("/".equals(name) ? "" : name) + "/book.properties"));
+      }
+    }
+    return bookPropsByName;
+  }
+
+  /**
+   * Gets the last modified time of {@link #BOOKS_XML_RESOURCE}.
+   *
+   * @return  The last modified time or {@code 0} when unknown
+   */
+  private long getBooksXmlLastModified() throws IOException {
+    URL booksXmlUrl = servletContext.getResource(BOOKS_XML_RESOURCE);
+    return (booksXmlUrl == null) ? 0 : booksXmlUrl.openConnection().getLastModified();
+  }
+
+  /**
+   * Reloads the books from /WEB-INF/books.xml, without restarting the application.  The new books are published all
+   * at once, so requests see either all the old books or all the new books.  When the new configuration is invalid,
+   * an exception is thrown and the current books remain in use.
+   *
+   * <p>Books with unchanged configuration, and with all their parent books also unchanged, are kept as the same
+   * {@link Book} instances.  Only the books that were added, removed, or changed are removed from the export
+   * cache, along with any cached pages and attributes derived from them.  Likewise, only the cached output that
+   * depends on a page now in a different or changed book is removed from the output cache.</p>
+   *
+   * @return  The names of the books that were added, removed, or changed, which is empty when nothing changed
+   */
+  public Set<String> reloadBooks() throws IOException, SAXException, ParserConfigurationException {
+    synchronized (booksLock) {
+      BookIndex oldBookIndex = bookIndex;
+      BookIndex newBookIndex = initBooks(oldBookIndex);
+      Set<String> affectedBooks = new LinkedHashSet<>();
+      Map<String, Book> oldBooks = oldBookIndex.getBooks();
+      Map<String, Book> newBooks = newBookIndex.getBooks();
+      for (Map.Entry<String, Book> entry : oldBooks.entrySet()) {
+        String name = entry.getKey();
+        if (newBooks.get(name) != entry.getValue()) {
+          affectedBooks.add(name);
+        }
+      }
+      for (String name : newBooks.keySet()) {
+        if (!oldBooks.containsKey(name)) {
+          affectedBooks.add(name);
+        }
+      }
+      // Books that became missing or are no longer missing
+      Set<String> oldMissingBooks = oldBookIndex.getMissingBooks();
+      Set<String> newMissingBooks = newBookIndex.getMissingBooks();
+      for (String name : oldMissingBooks) {
+        if (!newMissingBooks.contains(name)) {
+          affectedBooks.add(name);
+        }
+      }
+      for (String name : newMissingBooks) {
+        if (!oldMissingBooks.contains(name)) {
+          affectedBooks.add(name);
+        }
+      }
+      bookIndex = newBookIndex;
+      if (!affectedBooks.isEmpty()) {
+        CacheFilter.removeBooks(servletContext, affectedBooks);
+        if (outputCache != null) {
+          outputCache.removeBooks(oldBookIndex, newBookIndex);
+        }
+        Cache watched = watchedCache;
+        if (watched != null) {
+          watched.removeBooks(affectedBooks);
+        }
+      }
+      return Collections.unmodifiableSet(affectedBooks);
+    }
+  }
+
+  /**
+   * Reloads the books only when /WEB-INF/books.xml has been modified since last loaded.
+   * This is cheap enough to be called frequently, such as from a file watcher or a periodic task.
+   *
+   * @return  The names of the books that were added, removed, or changed, which is empty when nothing changed
+   *
+   * @see  #reloadBooks()
+   */
+  public Set<String> reloadBooksIfModified() throws IOException, SAXException, ParserConfigurationException {
+    long lastModified = getBooksXmlLastModified();
+    if (lastModified != 0 && lastModified == bookIndex.getLastModified()) {
+      return Collections.emptySet();
+    }
+    return reloadBooks();
+  }
+
+  /**
+   * Gets the last modified time of /WEB-INF/books.xml when the books were last loaded.
+   *
+   * @return  The last modified time or {@code 0} when unknown
+   */
+  long getBooksLastModified() {
+    return bookIndex.getLastModified();
   }
 
   public Map<String, Book> getBooks() {
-    return Collections.unmodifiableMap(books);
+    return bookIndex.getBooks();
   }
 
   public Set<String> getMissingBooks() {
-    return Collections.unmodifiableSet(missingBooks);
+    return bookIndex.getMissingBooks();
   }
 
   /**
    * Gets the root book as configured in /WEB-INF/books.properties
    */
   public Book getRootBook() {
-    return rootBook;
+    return bookIndex.getRootBook();
   }
 
   /**
@@ -296,28 +755,7 @@ public class SemanticCMS {
    * starting with "/api/" (unless a more specific book matches).</p>
    */
   public Book getBook(String servletPath) {
-    // TODO: Was the old iterative search through all books actually faster?  Worth benchmarking?
-    final int originalLen = servletPath.length();
-    int len = originalLen;
-    // Quick path for initial trailing slash: avoid map lookup that will never match
-    if (servletPath.charAt(len - 1) == '/') {
-      len -= 1;
-    }
-    while (len > 0) {
-      servletPath = servletPath.substring(0, len);
-      assert servletPath.charAt(len - 1) != '/' : "Should not end in slash: " + servletPath;
-      // Do not match the full servletPath as a book
-      if (len < originalLen) {
-        Book book = books.get(servletPath);
-        if (book != null) {
-          return book;
-        }
-      }
-      int lastSlash = servletPath.lastIndexOf('/');
-      assert lastSlash != -1 : "Starts with slash, so should always find one when len > 0";
-      len = lastSlash;
-    }
-    return books.get("/"); // TODO: Book.ROOT constant
+    return bookIndex.getBook(servletPath);
   }
 
   /**
@@ -326,6 +764,58 @@ public class SemanticCMS {
   public Book getBook(HttpServletRequest request) {
     return getBook(Dispatcher.getCurrentPagePath(request));
   }
+
+  /**
+   * Gets the book that has the given page as its content root or {@code null} when the page is not the content
+   * root of any book.
+   *
+   * @see  Book#getContentRoot()
+   */
+  public Book getBookByContentRoot(PageRef pageRef) {
+    return bookIndex.getBookByContentRoot(pageRef);
+  }
+
+  /**
+   * Gets the shared instance of the name of a missing book or {@code null} when not a missing book.
+   *
+   * @see  #getMissingBooks()
+   */
+  String internMissingBook(String name) {
+    return bookIndex.internMissingBook(name);
+  }
+
+  /**
+   * Gets the shared instance of the given page reference, so equal page references resolved by different pages and
+   * requests are the same object.  The shared instances are weakly held and are discarded when the books are
+   * reloaded.
+   *
+   * @return  the shared instance, which is the given page reference when it is the first of its value
+   *
+   * @see  PageRefResolver#getPageRef(javax.servlet.ServletContext, com.semanticcms.core.model.Book, java.lang.String)
+   * @see  PageRefResolver#getPageRef(javax.servlet.ServletContext, com.semanticcms.core.model.PageRef)
+   */
+  PageRef internPageRef(PageRef pageRef) {
+    return bookIndex.internPageRef(pageRef);
+  }
+
+  /**
+   * Gets the shared parent reference, without a short title, to the given page.  Like page references, the shared
+   * instances are weakly held and are discarded when the books are reloaded.
+   *
+   * @see  PageRefResolver#getParentRef(javax.servlet.ServletContext, com.semanticcms.core.model.PageRef)
+   */
+  ParentRef internParentRef(PageRef pageRef) {
+    return bookIndex.internParentRef(pageRef);
+  }
+
+  /**
+   * Resolves a path relative to the given page, memoized until the books are reloaded.
+   *
+   * @return  the shared instance of the page reference or {@code null} when the current page is not in a book
+   */
+  PageRef getRelativePageRef(String currentPagePath, String path) throws MalformedURLException {
+    return bookIndex.getRelativePageRef(currentPagePath, path);
+  }
   // </editor-fold>
 
   // <editor-fold defaultstate="collapsed" desc="Views">
@@ -346,9 +836,35 @@ public class SemanticCMS {
   private final ViewsLock viewsLock = new ViewsLock();
 
   /**
-   * The views by name in order added.
+   * An immutable snapshot of the registered views, along with the data derived from them.
+   */
+  private static final class ViewsSnapshot {
+
+    private final Map<String, View> viewsByName;
+    private final SortedSet<View> views;
+    private final Map<View.Group, SortedSet<View>> viewsByGroup;
+    private final View defaultView;
+
+    private ViewsSnapshot(Map<String, View> viewsByName) {
+      this.viewsByName = Collections.unmodifiableMap(viewsByName);
+      SortedSet<View> newViews = new TreeSet<>(viewsByName.values());
+      this.views = Collections.unmodifiableSortedSet(newViews);
+      Map<View.Group, SortedSet<View>> newViewsByGroup = new EnumMap<>(View.Group.class);
+      for (View view : newViews) {
+        newViewsByGroup.computeIfAbsent(view.getGroup(), group -> new TreeSet<>()).add(view);
+      }
+      for (Map.Entry<View.Group, SortedSet<View>> entry : newViewsByGroup.entrySet()) {
+        entry.setValue(Collections.unmodifiableSortedSet(entry.getValue()));
+      }
+      this.viewsByGroup = Collections.unmodifiableMap(newViewsByGroup);
+      this.defaultView = viewsByName.get(DEFAULT_VIEW_NAME);
+    }
+  }
+
+  /**
+   * The views, replaced on each registration.
    */
-  private final Map<String, View> viewsByName = new LinkedHashMap<>();
+  private volatile ViewsSnapshot viewsSnapshot = new ViewsSnapshot(Collections.emptyMap());
 
   private static final Set<View.Group> viewGroups = Collections.unmodifiableSet(EnumSet.allOf(View.Group.class));
 
@@ -363,21 +879,35 @@ public class SemanticCMS {
    * Gets the views in order added.
    */
   public Map<String, View> getViewsByName() {
-    return Collections.unmodifiableMap(viewsByName);
+    return viewsSnapshot.viewsByName;
   }
 
   /**
-   * The views in order.
+   * Gets the views, ordered by view group then display.
+   *
+   * @see  View#compareTo(com.semanticcms.core.servlet.View)
    */
-  private final SortedSet<View> views = new TreeSet<>();
+  public SortedSet<View> getViews() {
+    return viewsSnapshot.views;
+  }
 
   /**
-   * Gets the views, ordered by view group then display.
+   * Gets the views in the given group, ordered by display.
    *
    * @see  View#compareTo(com.semanticcms.core.servlet.View)
    */
-  public SortedSet<View> getViews() {
-    return Collections.unmodifiableSortedSet(views);
+  public SortedSet<View> getViews(View.Group group) {
+    SortedSet<View> groupViews = viewsSnapshot.viewsByGroup.get(group);
+    return groupViews == null ? Collections.emptySortedSet() : groupViews;
+  }
+
+  /**
+   * Gets the default view.
+   *
+   * @return  The view named {@link #DEFAULT_VIEW_NAME} or {@code null} when not registered.
+   */
+  public View getDefaultView() {
+    return viewsSnapshot.defaultView;
   }
 
   /**
@@ -388,24 +918,33 @@ public class SemanticCMS {
   public void addView(View view) throws IllegalStateException {
     String name = view.getName();
     synchronized (viewsLock) {
-      if (viewsByName.containsKey(name)) {
+      Map<String, View> newViewsByName = new LinkedHashMap<>(viewsSnapshot.viewsByName);
+      if (newViewsByName.containsKey(name)) {
         throw new IllegalStateException("View already registered: " + name);
       }
-      if (viewsByName.put(name, view) != null) {
+      if (newViewsByName.put(name, view) != null) {
         throw new AssertionError();
       }
-      if (!views.add(view)) {
+      ViewsSnapshot newViewsSnapshot = new ViewsSnapshot(newViewsByName);
+      if (newViewsSnapshot.views.size() != newViewsByName.size()) {
         throw new AssertionError();
       }
+      viewsSnapshot = newViewsSnapshot;
     }
   }
   // </editor-fold>
 
   // <editor-fold defaultstate="collapsed" desc="Components">
+  private static class ComponentsLock {
+    // Empty lock class to help heap profile
+  }
+
+  private final ComponentsLock componentsLock = new ComponentsLock();
+
   /**
-   * The components that are currently registered.
+   * The components that are currently registered, replaced on each registration.
    */
-  private final List<Component> components = new CopyOnWriteArrayList<>();
+  private volatile List<Component> components = Collections.emptyList();
 
   /**
    * Gets all components in an undefined, but consistent (within a single run) ordering.
@@ -418,13 +957,17 @@ public class SemanticCMS {
    * Registers a new component.
    */
   public void addComponent(Component component) {
-    components.add(component);
-    // Order the components by classname, just to have a consistent output
-    // independent of the order components happened to be registered.
-    Collections.sort(
-        components,
-        (o1, o2) -> o1.getClass().getName().compareTo(o2.getClass().getName())
-    );
+    synchronized (componentsLock) {
+      List<Component> newComponents = new ArrayList<>(components);
+      newComponents.add(component);
+      // Order the components by classname, just to have a consistent output
+      // independent of the order components happened to be registered.
+      Collections.sort(
+          newComponents,
+          (o1, o2) -> o1.getClass().getName().compareTo(o2.getClass().getName())
+      );
+      components = Collections.unmodifiableList(newComponents);
+    }
   }
   // </editor-fold>
 
@@ -434,19 +977,59 @@ public class SemanticCMS {
    */
   public static final String DEFAULT_THEME_NAME = "base";
 
+  private static class ThemesLock {
+    // Empty lock class to help heap profile
+  }
+
+  private final ThemesLock themesLock = new ThemesLock();
+
   /**
-   * The themes in order added.
+   * An immutable snapshot of the registered themes, along with the selected theme.
    */
-  private final Map<String, Theme> themes = new LinkedHashMap<>();
+  private static final class ThemesSnapshot {
+
+    private final Map<String, Theme> themes;
+    private final Theme selectedTheme;
+
+    private ThemesSnapshot(Map<String, Theme> themes) {
+      this.themes = Collections.unmodifiableMap(themes);
+      // Currently just picks the first non-default theme registered, the uses default
+      Theme theme = null;
+      Theme defaultTheme = null;
+      for (Theme t : themes.values()) {
+        if (t.isDefault()) {
+          assert defaultTheme == null : "More than one default theme registered";
+          defaultTheme = t;
+        } else {
+          // Use first non-default
+          theme = t;
+          break;
+        }
+      }
+      this.selectedTheme = (theme == null) ? defaultTheme : theme;
+    }
+  }
+
+  /**
+   * The themes in order added, replaced on each registration.
+   */
+  private volatile ThemesSnapshot themesSnapshot = new ThemesSnapshot(Collections.emptyMap());
 
   /**
    * Gets the themes, in the order added.
    */
   public Map<String, Theme> getThemes() {
-    synchronized (themes) {
-      // Not returning a copy since themes are normally only registered on app start-up.
-      return Collections.unmodifiableMap(themes);
-    }
+    return themesSnapshot.themes;
+  }
+
+  /**
+   * Gets the theme used to display pages.  This is the first non-default theme registered, or the
+   * {@linkplain Theme#isDefault() default theme} when no other theme is registered.
+   *
+   * @return  The theme or {@code null} when no themes are registered.
+   */
+  public Theme getSelectedTheme() {
+    return themesSnapshot.selectedTheme;
   }
 
   /**
@@ -456,13 +1039,15 @@ public class SemanticCMS {
    */
   public void addTheme(Theme theme) throws IllegalStateException {
     String name = theme.getName();
-    synchronized (themes) {
-      if (themes.containsKey(name)) {
+    synchronized (themesLock) {
+      Map<String, Theme> newThemes = new LinkedHashMap<>(themesSnapshot.themes);
+      if (newThemes.containsKey(name)) {
         throw new IllegalStateException("Theme already registered: " + name);
       }
-      if (themes.put(name, theme) != null) {
+      if (newThemes.put(name, theme) != null) {
         throw new AssertionError();
       }
+      themesSnapshot = new ThemesSnapshot(newThemes);
     }
   }
   // </editor-fold>
@@ -609,21 +1194,24 @@ public class SemanticCMS {
   // </editor-fold>
 
   // <editor-fold defaultstate="collapsed" desc="Scripts">
+  private static class ScriptsLock {
+    // Empty lock class to help heap profile
+  }
+
+  private final ScriptsLock scriptsLock = new ScriptsLock();
+
   /**
-   * The scripts in the order added.
+   * The scripts in the order added, replaced on each registration.
    */
   // TODO: RegistryEE
-  private final Map<String, String> scripts = new LinkedHashMap<>();
+  private volatile Map<String, String> scripts = Collections.emptyMap();
 
   /**
    * Gets the scripts, in the order added.
    */
   // TODO: RegistryEE
   public Map<String, String> getScripts() {
-    synchronized (scripts) {
-      // Not returning a copy since scripts are normally only registered on app start-up.
-      return Collections.unmodifiableMap(scripts);
-    }
+    return scripts;
   }
 
   /**
@@ -638,7 +1226,7 @@ public class SemanticCMS {
    */
   // TODO: RegistryEE
   public void addScript(String name, String src) throws IllegalStateException {
-    synchronized (scripts) {
+    synchronized (scriptsLock) {
       String existingSrc = scripts.get(name);
       if (existingSrc != null) {
         if (!src.equals(existingSrc)) {
@@ -654,9 +1242,11 @@ public class SemanticCMS {
         if (scripts.values().contains(src)) {
           throw new IllegalArgumentException("Non-unique global script src: " + src);
         }
-        if (scripts.put(name, src) != null) {
+        Map<String, String> newScripts = new LinkedHashMap<>(scripts);
+        if (newScripts.put(name, src) != null) {
           throw new AssertionError();
         }
+        scripts = Collections.unmodifiableMap(newScripts);
       }
     }
   }
@@ -693,6 +1283,79 @@ public class SemanticCMS {
 
   // </editor-fold>
 
+  // <editor-fold defaultstate="collapsed" desc="CSS Class Resolvers">
+
+  /**
+   * An immutable snapshot of the resolvers registered by type.  The chain of resolvers for each concrete type,
+   * from the type itself up to and including the base type, is found on first use then memoized.
+   *
+   * @param  <T>  the base type
+   * @param  <R>  the resolver type
+   */
+  private static final class ResolversByType<T, R> {
+
+    private final Class<T> baseType;
+    private final Map<Class<? extends T>, R> resolvers;
+    private final ClassValue<List<R>> chains;
+
+    private ResolversByType(Class<T> baseType, Map<Class<? extends T>, R> resolvers) {
+      this.baseType = baseType;
+      this.resolvers = resolvers;
+      this.chains = new ClassValue<>() {
+        @Override
+        protected List<R> computeValue(Class<?> type) {
+          List<R> chain = new ArrayList<>();
+          Class<?> t = type;
+          while (true) {
+            R resolver = resolvers.get(t);
+            if (resolver != null) {
+              chain.add(resolver);
+            }
+            if (t == baseType) {
+              break;
+            }
+            t = t.getSuperclass();
+          }
+          switch (chain.size()) {
+            case 0:
+              return Collections.emptyList();
+            case 1:
+              return Collections.singletonList(chain.get(0));
+            default:
+              return Collections.unmodifiableList(chain);
+          }
+        }
+      };
+    }
+
+    private ResolversByType(Class<T> baseType) {
+      this(baseType, Collections.emptyMap());
+    }
+
+    /**
+     * Gets the resolvers for the given concrete type, most specific first.
+     */
+    private List<R> getChain(Class<? extends T> type) {
+      return chains.get(type);
+    }
+
+    private boolean containsType(Class<? extends T> type) {
+      return resolvers.containsKey(type);
+    }
+
+    /**
+     * Creates a new snapshot with the given resolver added.
+     */
+    private ResolversByType<T, R> with(Class<? extends T> type, R resolver) {
+      Map<Class<? extends T>, R> newResolvers = new LinkedHashMap<>(resolvers);
+      if (newResolvers.put(type, resolver) != null) {
+        throw new AssertionError();
+      }
+      return new ResolversByType<>(baseType, Collections.unmodifiableMap(newResolvers));
+    }
+  }
+  // </editor-fold>
+
   // <editor-fold defaultstate="collapsed" desc="Links to Elements">
 
   /**
@@ -709,10 +1372,20 @@ public class SemanticCMS {
     String getCssLinkClass(E element);
   }
 
+  private static class LinkCssClassResolverLock {
+    // Empty lock class to help heap profile
+  }
+
   /**
-   * The CSS classes used in links.
+   * Serializes registration of link CSS class resolvers.
    */
-  private final Map<Class<? extends com.semanticcms.core.model.Element>, LinkCssClassResolver<?>> linkCssClassResolverByElementType = new LinkedHashMap<>();
+  private final LinkCssClassResolverLock linkCssClassResolverLock = new LinkCssClassResolverLock();
+
+  /**
+   * The CSS classes used in links, replaced on each registration.
+   */
+  private volatile ResolversByType<com.semanticcms.core.model.Element, LinkCssClassResolver<?>> linkCssClassResolverByElementType =
+      new ResolversByType<>(com.semanticcms.core.model.Element.class);
 
   /**
    * Gets the CSS class to use in links to the given element.
@@ -726,23 +1399,15 @@ public class SemanticCMS {
     if (element == null) {
       return null;
     }
-    Class<? extends com.semanticcms.core.model.Element> elementType = element.getClass();
-    synchronized (linkCssClassResolverByElementType) {
-      while (true) {
-        @SuppressWarnings("unchecked")
-        LinkCssClassResolver<? super E> linkCssClassResolver = (LinkCssClassResolver<? super E>) linkCssClassResolverByElementType.get(elementType);
-        if (linkCssClassResolver != null) {
-          String linkCssClass = linkCssClassResolver.getCssLinkClass(element);
-          if (linkCssClass != null) {
-            return linkCssClass;
-          }
-        }
-        if (elementType == com.semanticcms.core.model.Element.class) {
-          return null;
-        }
-        elementType = elementType.getSuperclass().asSubclass(com.semanticcms.core.model.Element.class);
+    for (LinkCssClassResolver<?> resolver : linkCssClassResolverByElementType.getChain(element.getClass())) {
+      @SuppressWarnings("unchecked")
+      LinkCssClassResolver<? super E> linkCssClassResolver = (LinkCssClassResolver<? super E>) resolver;
+      String linkCssClass = linkCssClassResolver.getCssLinkClass(element);
+      if (linkCssClass != null) {
+        return linkCssClass;
       }
     }
+    return null;
   }
 
   /**
@@ -754,13 +1419,11 @@ public class SemanticCMS {
       Class<E> elementType,
       LinkCssClassResolver<? super E> cssLinkClassResolver
   ) throws IllegalStateException {
-    synchronized (linkCssClassResolverByElementType) {
-      if (linkCssClassResolverByElementType.containsKey(elementType)) {
+    synchronized (linkCssClassResolverLock) {
+      if (linkCssClassResolverByElementType.containsType(elementType)) {
         throw new IllegalStateException("Link CSS class already registered: " + elementType);
       }
-      if (linkCssClassResolverByElementType.put(elementType, cssLinkClassResolver) != null) {
-        throw new AssertionError();
-      }
+      linkCssClassResolverByElementType = linkCssClassResolverByElementType.with(elementType, cssLinkClassResolver);
     }
   }
 
@@ -795,10 +1458,20 @@ public class SemanticCMS {
     String getListItemCssClass(N node);
   }
 
+  private static class ListItemCssClassResolverLock {
+    // Empty lock class to help heap profile
+  }
+
+  /**
+   * Serializes registration of list item CSS class resolvers.
+   */
+  private final ListItemCssClassResolverLock listItemCssClassResolverLock = new ListItemCssClassResolverLock();
+
   /**
-   * The CSS classes used in list items.
+   * The CSS classes used in list items, replaced on each registration.
    */
-  private final Map<Class<? extends com.semanticcms.core.model.Node>, ListItemCssClassResolver<?>> listItemCssClassResolverByNodeType = new LinkedHashMap<>();
+  private volatile ResolversByType<com.semanticcms.core.model.Node, ListItemCssClassResolver<?>> listItemCssClassResolverByNodeType =
+      new ResolversByType<>(com.semanticcms.core.model.Node.class);
 
   /**
    * Gets the CSS class to use in list items to the given node.
@@ -812,23 +1485,15 @@ public class SemanticCMS {
     if (node == null) {
       return null;
     }
-    Class<? extends com.semanticcms.core.model.Node> nodeType = node.getClass();
-    synchronized (listItemCssClassResolverByNodeType) {
-      while (true) {
-        @SuppressWarnings("unchecked")
-        ListItemCssClassResolver<? super N> listItemCssClassResolver = (ListItemCssClassResolver<? super N>) listItemCssClassResolverByNodeType.get(nodeType);
-        if (listItemCssClassResolver != null) {
-          String listItemCssClass = listItemCssClassResolver.getListItemCssClass(node);
-          if (listItemCssClass != null) {
-            return listItemCssClass;
-          }
-        }
-        if (nodeType == com.semanticcms.core.model.Node.class) {
-          return null;
-        }
-        nodeType = nodeType.getSuperclass().asSubclass(com.semanticcms.core.model.Node.class);
+    for (ListItemCssClassResolver<?> resolver : listItemCssClassResolverByNodeType.getChain(node.getClass())) {
+      @SuppressWarnings("unchecked")
+      ListItemCssClassResolver<? super N> listItemCssClassResolver = (ListItemCssClassResolver<? super N>) resolver;
+      String listItemCssClass = listItemCssClassResolver.getListItemCssClass(node);
+      if (listItemCssClass != null) {
+        return listItemCssClass;
       }
     }
+    return null;
   }
 
   /**
@@ -840,13 +1505,11 @@ public class SemanticCMS {
       Class<N> nodeType,
       ListItemCssClassResolver<? super N> listItemCssClassResolver
   ) throws IllegalStateException {
-    synchronized (listItemCssClassResolverByNodeType) {
-      if (listItemCssClassResolverByNodeType.containsKey(nodeType)) {
+    synchronized (listItemCssClassResolverLock) {
+      if (listItemCssClassResolverByNodeType.containsType(nodeType)) {
         throw new IllegalStateException("List item CSS class already registered: " + nodeType);
       }
-      if (listItemCssClassResolverByNodeType.put(nodeType, listItemCssClassResolver) != null) {
-        throw new AssertionError();
-      }
+      listItemCssClassResolverByNodeType = listItemCssClassResolverByNodeType.with(nodeType, listItemCssClassResolver);
     }
   }
 
@@ -23,6 +23,7 @@
 
 package com.semanticcms.core.servlet;
 
+import com.aoapps.net.URIResolver;
 import com.aoapps.servlet.http.Dispatcher;
 import com.semanticcms.core.model.ElementContext;
 import java.io.IOException;
@@ -59,6 +60,15 @@ public class ServletElementContext implements ElementContext {
 
   @Override
   public void include(final String resource, Writer out, final Map<String, ?> args) throws IOException, ServletException, SkipPageException {
+    // Record the included resource as a dependency of the page being recorded
+    int question = resource.indexOf('?');
+    RecordingCache.recordResource(
+        request,
+        URIResolver.getAbsolutePath(
+            Dispatcher.getCurrentPagePath(request),
+            (question == -1) ? resource : resource.substring(0, question)
+        )
+    );
     final PrintWriter pw;
     if (out instanceof PrintWriter) {
       pw = (PrintWriter) out;
@@ -1,6 +1,6 @@
 /*
  * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
- * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -25,8 +25,10 @@ package com.semanticcms.core.servlet;
 
 import com.aoapps.collections.AoCollections;
 import com.semanticcms.core.model.Page;
+import com.semanticcms.core.model.PageRef;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import javax.servlet.ServletException;
 
 /**
@@ -40,10 +42,12 @@ class SingleThreadCache extends MapCache {
   @SuppressWarnings("AssertWithSideEffects")
   SingleThreadCache() {
     super(
+        new HashMap<>(),
         new HashMap<>(),
         VERIFY_CACHE_PARENT_CHILD_RELATIONSHIPS ? new HashMap<>() : null,
         VERIFY_CACHE_PARENT_CHILD_RELATIONSHIPS ? new HashMap<>() : null,
-        new HashMap<>()
+        new HashMap<>(),
+        false
     );
     Thread t = null;
     // Intentional side-effect from assert
@@ -52,15 +56,39 @@ class SingleThreadCache extends MapCache {
   }
 
   @Override
-  Page get(CaptureKey key) {
+  Page get(PageRef pageRef, CaptureLevel level) {
+    assert assertingThread == Thread.currentThread();
+    return super.get(pageRef, level);
+  }
+
+  @Override
+  void put(PageRef pageRef, CaptureLevel level, Page page) throws ServletException {
+    assert assertingThread == Thread.currentThread();
+    super.put(pageRef, level, page);
+  }
+
+  @Override
+  Set<PageRef> getPageRefs() {
+    assert assertingThread == Thread.currentThread();
+    return super.getPageRefs();
+  }
+
+  @Override
+  void removeBooks(Set<String> bookNames) {
+    assert assertingThread == Thread.currentThread();
+    super.removeBooks(bookNames);
+  }
+
+  @Override
+  Set<PageRef> invalidate(Set<PageRef> pageRefs) {
     assert assertingThread == Thread.currentThread();
-    return super.get(key);
+    return super.invalidate(pageRefs);
   }
 
   @Override
-  void put(CaptureKey key, Page page) throws ServletException {
+  void removeStale(PageRef pageRef, CaptureLevel level, Page page) {
     assert assertingThread == Thread.currentThread();
-    super.put(key, page);
+    super.removeStale(pageRef, level, page);
   }
 
   @Override
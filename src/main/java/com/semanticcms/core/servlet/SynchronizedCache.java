@@ -1,6 +1,6 @@
 /*
  * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
- * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2016, 2017, 2018, 2019, 2020, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -25,9 +25,11 @@ package com.semanticcms.core.servlet;
 
 import com.aoapps.collections.AoCollections;
 import com.semanticcms.core.model.Page;
+import com.semanticcms.core.model.PageRef;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import javax.servlet.ServletException;
 
 /**
@@ -35,23 +37,60 @@ import javax.servlet.ServletException;
  */
 class SynchronizedCache extends MapCache {
 
-  SynchronizedCache() {
+  /**
+   * @param  trackDependencies  when {@code true}, tracks dependencies for precise {@linkplain #invalidate(java.util.Set) invalidation}
+   */
+  SynchronizedCache(boolean trackDependencies) {
     super(
+        new HashMap<>(),
         new HashMap<>(),
         VERIFY_CACHE_PARENT_CHILD_RELATIONSHIPS ? new HashMap<>() : null,
         VERIFY_CACHE_PARENT_CHILD_RELATIONSHIPS ? new HashMap<>() : null,
-        new HashMap<>()
+        new HashMap<>(),
+        trackDependencies
     );
   }
 
+  SynchronizedCache() {
+    this(false);
+  }
+
+  @Override
+  synchronized Page get(PageRef pageRef, CaptureLevel level) {
+    return super.get(pageRef, level);
+  }
+
   @Override
-  synchronized Page get(CaptureKey key) {
-    return super.get(key);
+  synchronized void put(PageRef pageRef, CaptureLevel level, Page page) throws ServletException {
+    super.put(pageRef, level, page);
+  }
+
+  @Override
+  synchronized Set<PageRef> getPageRefs() {
+    return super.getPageRefs();
+  }
+
+  @Override
+  void removeBooks(Set<String> bookNames) {
+    synchronized (this) {
+      synchronized (attributes) {
+        super.removeBooks(bookNames);
+      }
+    }
+  }
+
+  @Override
+  Set<PageRef> invalidate(Set<PageRef> pageRefs) {
+    synchronized (this) {
+      synchronized (attributes) {
+        return super.invalidate(pageRefs);
+      }
+    }
   }
 
   @Override
-  synchronized void put(CaptureKey key, Page page) throws ServletException {
-    super.put(key, page);
+  synchronized void removeStale(PageRef pageRef, CaptureLevel level, Page page) {
+    super.removeStale(pageRef, level, page);
   }
 
   @Override
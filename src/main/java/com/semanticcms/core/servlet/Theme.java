@@ -1,6 +1,6 @@
 /*
  * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
- * Copyright (C) 2016, 2017, 2019, 2020, 2021, 2022, 2023, 2024  AO Industries, Inc.
+ * Copyright (C) 2016, 2017, 2019, 2020, 2021, 2022, 2023, 2024, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -121,12 +121,35 @@ public abstract class Theme {
     // Do nothing
   }
 
+  /**
+   * Called by themes once the document head, including all registered resources, has been written.
+   * When {@linkplain SemanticCMS#getStreaming() streaming} is enabled, flushes the response so the client may
+   * begin loading the resources while the page body is written.
+   *
+   * <p>The response is not flushed while exporting, since exports are not affected by time to first byte, nor while
+   * the output is buffered for the {@link OutputCache}, which would commit the response before the output and its
+   * headers are complete.</p>
+   *
+   * @see  SemanticCMS#getStreaming()
+   */
+  public static void flushHead(ServletContext servletContext, HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (
+        SemanticCMS.getInstance(servletContext).getStreaming()
+            && !Headers.isExporting(request)
+    ) {
+      response.flushBuffer();
+    }
+  }
+
   /**
    * Renders the theme.
    *
    * <p>Both the {@link Serialization} and {@link Doctype} may have been set
    * on the request, and these must be considered in the HTML generation.</p>
    *
+   * <p>Themes should call {@link #flushHead(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)}
+   * once the document head has been written.</p>
+   *
    * <p>When {@link ServletResponse#isCommitted() response is committed}, this theme method is never called and
    * {@link SkipPageException} is thrown instead.</p>
    *
@@ -1,6 +1,6 @@
 /*
  * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
- * Copyright (C) 2016, 2017, 2019, 2020, 2021, 2022, 2024, 2025  AO Industries, Inc.
+ * Copyright (C) 2016, 2017, 2019, 2020, 2021, 2022, 2024, 2025, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -178,6 +178,24 @@ public abstract class View implements Comparable<View> {
     return true;
   }
 
+  /**
+   * Checks if the rendered output of this view on the given page may be kept in the {@link OutputCache}, where it is
+   * shared by every request for the same page and parameters.  Views must opt in, and only when they do not depend on
+   * request-specific data, such as the user, session, or headers other than the request parameters.
+   * This is also called before the body of the page is captured, when only the page attributes are available.
+   *
+   * <p><b>Implementation Note:</b><br>
+   * returns {@code false} by default</p>
+   */
+  public boolean isOutputCacheable(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      Page page
+  ) throws ServletException, IOException {
+    return false;
+  }
+
   /**
    * Gets an id to use for the main navigation link to this view.
    *
@@ -1,6 +1,6 @@
 /*
  * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
- * Copyright (C) 2016, 2017, 2019, 2020, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2016, 2017, 2019, 2020, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -27,19 +27,18 @@ import com.aoapps.html.any.AnyLI_c;
 import com.aoapps.html.any.AnyPalpableContent;
 import com.aoapps.html.any.AnyUL_c;
 import com.aoapps.net.URIEncoder;
-import com.semanticcms.core.model.ChildRef;
 import com.semanticcms.core.model.Element;
 import com.semanticcms.core.model.Node;
 import com.semanticcms.core.model.Page;
 import com.semanticcms.core.model.PageRef;
 import com.semanticcms.core.servlet.CaptureLevel;
-import com.semanticcms.core.servlet.CapturePage;
 import com.semanticcms.core.servlet.CurrentNode;
 import com.semanticcms.core.servlet.PageIndex;
 import com.semanticcms.core.servlet.SemanticCMS;
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -87,14 +86,12 @@ public final class ElementFilterTreeImpl {
   }
 
   private static boolean findElements(
-      ServletContext servletContext,
-      HttpServletRequest request,
-      HttpServletResponse response,
       ElementFilter elementFilter,
       Set<Node> nodesWithMatches,
+      Map<PageRef, List<Page>> childPagesByPage,
       Node node,
       boolean includeElements
-  ) throws ServletException, IOException {
+  ) {
     List<Element> childElements = node.getChildElements();
     boolean hasMatch;
     // Add self if is the target type
@@ -111,7 +108,7 @@ public final class ElementFilterTreeImpl {
     }
     if (includeElements) {
       for (Element childElem : childElements) {
-        if (findElements(servletContext, request, response, elementFilter, nodesWithMatches, childElem, includeElements)) {
+        if (findElements(elementFilter, nodesWithMatches, childPagesByPage, childElem, includeElements)) {
           hasMatch = true;
         }
       }
@@ -129,14 +126,10 @@ public final class ElementFilterTreeImpl {
       }
     }
     if (node instanceof Page) {
-      for (ChildRef childRef : ((Page) node).getChildRefs()) {
-        PageRef childPageRef = childRef.getPageRef();
-        // Child not in missing book
-        if (childPageRef.getBook() != null) {
-          Page child = CapturePage.capturePage(servletContext, request, response, childPageRef, CaptureLevel.META);
-          if (findElements(servletContext, request, response, elementFilter, nodesWithMatches, child, includeElements)) {
-            hasMatch = true;
-          }
+      // Captured in advance, one level at a time
+      for (Page child : childPagesByPage.get(((Page) node).getPageRef())) {
+        if (findElements(elementFilter, nodesWithMatches, childPagesByPage, child, includeElements)) {
+          hasMatch = true;
         }
       }
     }
@@ -246,11 +239,9 @@ public final class ElementFilterTreeImpl {
       // Filter by has files
       final Set<Node> nodesWithMatches = new HashSet<>();
       findElements(
-          servletContext,
-          request,
-          response,
           elementFilter,
           nodesWithMatches,
+          NavigationTreeImpl.captureDescendantPages(servletContext, request, response, root, CaptureLevel.META),
           root,
           includeElements
       );
@@ -222,6 +222,7 @@ public final class LinkImpl {
           canonical,
           clazz,
           body,
+          nullIfEmpty(element) != null,
           captureLevel
       );
     }
@@ -295,6 +296,8 @@ public final class LinkImpl {
           canonical,
           clazzObj,
           body,
+          // The element is not evaluated before BODY, so assume an element link when provided
+          element != null,
           captureLevel
       );
     }
@@ -302,6 +305,7 @@ public final class LinkImpl {
 
   /**
    * @param  content  {@link AnyUnion_Palpable_Phrasing} provides both {@link AnyA} and {@link AnySPAN}.
+   * @param  elementLink  when the link may be to an element, which requires its page captured at {@link CaptureLevel#META}
    * @param  <Ex>  An arbitrary exception type that may be thrown
    */
   private static <Ex extends Throwable> void writeLinkImpl(
@@ -321,6 +325,7 @@ public final class LinkImpl {
       boolean canonical,
       Object clazz,
       LinkImplBody<Ex> body,
+      boolean elementLink,
       CaptureLevel captureLevel
   ) throws Ex, ServletException, IOException, SkipPageException {
     assert captureLevel.compareTo(CaptureLevel.META) >= 0;
@@ -348,6 +353,15 @@ public final class LinkImpl {
     if (currentNode != null) {
       currentNode.addPageLink(targetPageRef);
     }
+    // Record link targets for prefetch
+    if (captureLevel == CaptureLevel.META && currentPage != null) {
+      PageImpl.addLinkTarget(
+          request,
+          currentPage.getPageRef(),
+          targetPageRef,
+          elementLink ? CaptureLevel.META : CaptureLevel.PAGE
+      );
+    }
     if (captureLevel == CaptureLevel.BODY) {
       element = nullIfEmpty(element);
       anchor = nullIfEmpty(anchor);
@@ -1,6 +1,6 @@
 /*
  * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
- * Copyright (C) 2013, 2014, 2015, 2016, 2017, 2018, 2019, 2020, 2021, 2022, 2023  AO Industries, Inc.
+ * Copyright (C) 2013, 2014, 2015, 2016, 2017, 2018, 2019, 2020, 2021, 2022, 2023, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -23,6 +23,7 @@
 
 package com.semanticcms.core.servlet.impl;
 
+import static com.aoapps.encoding.TextInJavaScriptEncoder.encodeTextInJavaScript;
 import static com.aoapps.lang.Strings.nullIfEmpty;
 import static com.aoapps.servlet.el.ElUtils.resolveValue;
 
@@ -33,29 +34,45 @@ import com.aoapps.html.any.AnyPalpableContent;
 import com.aoapps.html.any.AnyUL_c;
 import com.aoapps.html.any.AnyUnion_Palpable_Phrasing;
 import com.aoapps.lang.Strings;
+import com.aoapps.lang.io.ContentType;
 import com.aoapps.net.URIDecoder;
 import com.aoapps.net.URIEncoder;
+import com.aoapps.servlet.attribute.ScopeEE;
+import com.semanticcms.core.model.Book;
 import com.semanticcms.core.model.ChildRef;
 import com.semanticcms.core.model.Element;
 import com.semanticcms.core.model.Node;
 import com.semanticcms.core.model.Page;
 import com.semanticcms.core.model.PageRef;
 import com.semanticcms.core.model.PageReferrer;
+import com.semanticcms.core.servlet.Cache;
+import com.semanticcms.core.servlet.CacheFilter;
 import com.semanticcms.core.servlet.CaptureLevel;
 import com.semanticcms.core.servlet.CapturePage;
 import com.semanticcms.core.servlet.CurrentNode;
+import com.semanticcms.core.servlet.CurrentPage;
+import com.semanticcms.core.servlet.Headers;
+import com.semanticcms.core.servlet.NavigationTreeServlet;
 import com.semanticcms.core.servlet.PageIndex;
 import com.semanticcms.core.servlet.PageRefResolver;
 import com.semanticcms.core.servlet.PageUtils;
 import com.semanticcms.core.servlet.SemanticCMS;
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.el.ELContext;
 import javax.el.ValueExpression;
 import javax.servlet.ServletContext;
@@ -98,6 +115,93 @@ public final class NavigationTreeImpl {
     return filtered;
   }
 
+  /**
+   * Captures the child pages of the given page, skipping any in missing books.
+   * The children are captured in a single batch, which may be performed concurrently.
+   *
+   * @return  the child pages, in the order declared by the page
+   */
+  public static List<Page> captureChildPages(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      Page page,
+      CaptureLevel level
+  ) throws ServletException, IOException {
+    // Child not in missing book
+    Set<ChildRef> childRefs = PageUtils.filterNotMissingBook(page.getChildRefs());
+    int size = childRefs.size();
+    if (size == 0) {
+      return Collections.emptyList();
+    }
+    Map<PageRef, Page> captured = CapturePage.capturePages(servletContext, request, response, childRefs, level);
+    List<Page> childPages = new ArrayList<>(size);
+    for (ChildRef childRef : childRefs) {
+      Page childPage = captured.get(childRef.getPageRef());
+      assert childPage != null;
+      childPages.add(childPage);
+    }
+    return childPages;
+  }
+
+  /**
+   * Captures every page below the given node, skipping any in missing books.  The pages are walked breadth-first, with
+   * the child pages of every page on the same level captured in a single batch, which may be performed concurrently.
+   * Each page is only walked once, even when it has multiple parents.
+   *
+   * @return  the child pages of the given node and of every page below it, in the order declared by each page, by
+   *          page.  Empty when the node is not a page.
+   */
+  public static Map<PageRef, List<Page>> captureDescendantPages(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      Node node,
+      CaptureLevel level
+  ) throws ServletException, IOException {
+    if (!(node instanceof Page)) {
+      return Collections.emptyMap();
+    }
+    Page root = (Page) node;
+    Map<PageRef, List<Page>> childPagesByPage = new HashMap<>();
+    Set<PageRef> walked = new HashSet<>();
+    walked.add(root.getPageRef());
+    List<Page> pages = Collections.singletonList(root);
+    while (!pages.isEmpty()) {
+      // Capture the children of the entire level at once
+      List<Set<ChildRef>> childRefsByPage = new ArrayList<>(pages.size());
+      Set<ChildRef> levelChildRefs = new LinkedHashSet<>();
+      for (Page page : pages) {
+        // Child not in missing book
+        Set<ChildRef> childRefs = PageUtils.filterNotMissingBook(page.getChildRefs());
+        childRefsByPage.add(childRefs);
+        levelChildRefs.addAll(childRefs);
+      }
+      Map<PageRef, Page> captured = CapturePage.capturePages(servletContext, request, response, levelChildRefs, level);
+      List<Page> nextPages = new ArrayList<>();
+      for (int i = 0, size = pages.size(); i < size; i++) {
+        Set<ChildRef> childRefs = childRefsByPage.get(i);
+        List<Page> childPages;
+        if (childRefs.isEmpty()) {
+          childPages = Collections.emptyList();
+        } else {
+          childPages = new ArrayList<>(childRefs.size());
+          for (ChildRef childRef : childRefs) {
+            Page childPage = captured.get(childRef.getPageRef());
+            assert childPage != null;
+            childPages.add(childPage);
+            if (walked.add(childPage.getPageRef())) {
+              nextPages.add(childPage);
+            }
+          }
+        }
+        childPagesByPage.put(pages.get(i).getPageRef(), childPages);
+      }
+      pages = nextPages;
+    }
+    return childPagesByPage;
+  }
+
   public static List<Node> getChildNodes(
       ServletContext servletContext,
       HttpServletRequest request,
@@ -108,10 +212,13 @@ public final class NavigationTreeImpl {
   ) throws ServletException, IOException {
     // Both elements and pages are child nodes
     List<Element> childElements = includeElements ? node.getChildElements() : null;
-    Set<ChildRef> childRefs = (node instanceof Page) ? ((Page) node).getChildRefs() : null;
+    List<Page> childPages =
+        (node instanceof Page)
+            ? captureChildPages(servletContext, request, response, (Page) node, includeElements || metaCapture ? CaptureLevel.META : CaptureLevel.PAGE)
+            : null;
     List<Node> childNodes = new ArrayList<>(
         (childElements == null ? 0 : childElements.size())
-            + (childRefs == null ? 0 : childRefs.size())
+            + (childPages == null ? 0 : childPages.size())
     );
     if (includeElements) {
       assert childElements != null;
@@ -121,29 +228,39 @@ public final class NavigationTreeImpl {
         }
       }
     }
-    if (childRefs != null) {
-      for (ChildRef childRef : childRefs) {
-        PageRef childPageRef = childRef.getPageRef();
-        // Child not in missing book
-        if (childPageRef.getBook() != null) {
-          Page childPage = CapturePage.capturePage(servletContext, request, response, childPageRef, includeElements || metaCapture ? CaptureLevel.META : CaptureLevel.PAGE);
-          childNodes.add(childPage);
-        }
-      }
+    if (childPages != null) {
+      childNodes.addAll(childPages);
     }
     return childNodes;
   }
 
+  /**
+   * Records that a cached tree was built from the given page.
+   *
+   * @param  cacheAttribute  the cache attribute of the tree or {@code null} when the tree is not cached
+   * @param  pageRefs  the pages the tree was built from or {@code null} when the tree is not cached
+   */
+  private static void addDependency(Cache cache, String cacheAttribute, Set<PageRef> pageRefs, PageRef pageRef) {
+    if (cacheAttribute != null) {
+      pageRefs.add(pageRef);
+      cache.addDependency(cacheAttribute, pageRef);
+    }
+  }
+
   private static boolean findLinks(
-      ServletContext servletContext,
-      HttpServletRequest request,
-      HttpServletResponse response,
+      Cache cache,
+      String cacheAttribute,
+      Set<PageRef> pageRefs,
       PageRef linksTo,
       Set<Node> nodesWithLinks,
       Set<Node> nodesWithChildLinks,
+      Map<PageRef, List<Page>> childPagesByPage,
       Node node,
       boolean includeElements
-  ) throws ServletException, IOException {
+  ) {
+    if (node instanceof Page) {
+      addDependency(cache, cacheAttribute, pageRefs, ((Page) node).getPageRef());
+    }
     boolean hasChildLink = false;
     if (node.getPageLinks().contains(linksTo)) {
       nodesWithLinks.add(node);
@@ -153,7 +270,7 @@ public final class NavigationTreeImpl {
       for (Element childElem : node.getChildElements()) {
         if (
             !childElem.isHidden()
-                && findLinks(servletContext, request, response, linksTo, nodesWithLinks, nodesWithChildLinks, childElem, includeElements)
+                && findLinks(cache, cacheAttribute, pageRefs, linksTo, nodesWithLinks, nodesWithChildLinks, childPagesByPage, childElem, includeElements)
         ) {
           hasChildLink = true;
         }
@@ -173,14 +290,10 @@ public final class NavigationTreeImpl {
       }
     }
     if (node instanceof Page) {
-      for (ChildRef childRef : ((Page) node).getChildRefs()) {
-        PageRef childPageRef = childRef.getPageRef();
-        // Child not in missing book
-        if (childPageRef.getBook() != null) {
-          Page child = CapturePage.capturePage(servletContext, request, response, childPageRef, CaptureLevel.META);
-          if (findLinks(servletContext, request, response, linksTo, nodesWithLinks, nodesWithChildLinks, child, includeElements)) {
-            hasChildLink = true;
-          }
+      // Captured in advance, one level at a time
+      for (Page child : childPagesByPage.get(((Page) node).getPageRef())) {
+        if (findLinks(cache, cacheAttribute, pageRefs, linksTo, nodesWithLinks, nodesWithChildLinks, childPagesByPage, child, includeElements)) {
+          hasChildLink = true;
         }
       }
     }
@@ -196,6 +309,28 @@ public final class NavigationTreeImpl {
     return Strings.convertToHex(data.getBytes(StandardCharsets.UTF_8));
   }
 
+  /**
+   * Decodes the data written by {@link #encodeHexData(java.lang.String)}.
+   *
+   * @throws  IllegalArgumentException  when not valid hex data
+   */
+  public static String decodeHexData(String hex) throws IllegalArgumentException {
+    int len = hex.length();
+    if ((len & 1) != 0) {
+      throw new IllegalArgumentException("Hex data must have an even number of digits: " + hex);
+    }
+    byte[] bytes = new byte[len >> 1];
+    for (int i = 0; i < len; i += 2) {
+      int high = Character.digit(hex.charAt(i), 16);
+      int low = Character.digit(hex.charAt(i + 1), 16);
+      if (high == -1 || low == -1) {
+        throw new IllegalArgumentException("Invalid hex data: " + hex);
+      }
+      bytes[i >> 1] = (byte) ((high << 4) | low);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
   public static void writeNavigationTreeImpl(
       ServletContext servletContext,
       HttpServletRequest request,
@@ -211,6 +346,49 @@ public final class NavigationTreeImpl {
       String linksToBook,
       String linksToPage,
       int maxDepth
+  ) throws ServletException, IOException {
+    writeNavigationTreeImpl(
+        servletContext,
+        request,
+        response,
+        content,
+        root,
+        skipRoot,
+        yuiConfig,
+        includeElements,
+        target,
+        thisBook,
+        thisPage,
+        linksToBook,
+        linksToPage,
+        maxDepth,
+        0
+    );
+  }
+
+  /**
+   * @param lazyDepth  When {@code yuiConfig} is enabled, only this many levels are written, plus the path to
+   *                   {@code thisPage}.  The remaining subtrees are marked with {@code "lazy":true} and the
+   *                   {@code "tree"} they belong to in their {@code yuiConfig}, and may be loaded on demand from
+   *                   {@link NavigationTreeServlet}.  {@code 0} writes all levels.  Trees filtered by
+   *                   {@code linksToPage} are always written in full.
+   */
+  public static void writeNavigationTreeImpl(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      AnyPalpableContent<?, ?> content,
+      Page root,
+      boolean skipRoot,
+      boolean yuiConfig,
+      boolean includeElements,
+      String target,
+      String thisBook,
+      String thisPage,
+      String linksToBook,
+      String linksToPage,
+      int maxDepth,
+      int lazyDepth
   ) throws ServletException, IOException {
     // Get the current capture state
     CaptureLevel captureLevel = CaptureLevel.getCaptureLevel(request);
@@ -230,6 +408,7 @@ public final class NavigationTreeImpl {
           linksToBook,
           linksToPage,
           maxDepth,
+          lazyDepth,
           captureLevel
       );
     }
@@ -258,6 +437,52 @@ public final class NavigationTreeImpl {
       ValueExpression linksToBook,
       ValueExpression linksToPage,
       int maxDepth
+  ) throws ServletException, IOException {
+    writeNavigationTreeImpl(
+        servletContext,
+        elContext,
+        request,
+        response,
+        content,
+        root,
+        skipRoot,
+        yuiConfig,
+        includeElements,
+        target,
+        thisBook,
+        thisPage,
+        linksToBook,
+        linksToPage,
+        maxDepth,
+        0
+    );
+  }
+
+  /**
+   * @param root  ValueExpression that returns Page
+   * @param thisBook  ValueExpression that returns String
+   * @param thisPage  ValueExpression that returns String
+   * @param linksToBook  ValueExpression that returns String
+   * @param linksToPage  ValueExpression that returns String
+   * @param lazyDepth  See {@link #writeNavigationTreeImpl(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.aoapps.html.any.AnyPalpableContent, com.semanticcms.core.model.Page, boolean, boolean, boolean, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, int, int)}
+   */
+  public static void writeNavigationTreeImpl(
+      ServletContext servletContext,
+      ELContext elContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      AnyPalpableContent<?, ?> content,
+      ValueExpression root,
+      boolean skipRoot,
+      boolean yuiConfig,
+      boolean includeElements,
+      String target,
+      ValueExpression thisBook,
+      ValueExpression thisPage,
+      ValueExpression linksToBook,
+      ValueExpression linksToPage,
+      int maxDepth,
+      int lazyDepth
   ) throws ServletException, IOException {
     // Get the current capture state
     CaptureLevel captureLevel = CaptureLevel.getCaptureLevel(request);
@@ -277,11 +502,458 @@ public final class NavigationTreeImpl {
           resolveValue(linksToBook, String.class, elContext),
           resolveValue(linksToPage, String.class, elContext),
           maxDepth,
+          lazyDepth,
           captureLevel
       );
     }
   }
 
+  /**
+   * The prefix for cache attributes holding {@link Tree navigation trees}.
+   */
+  private static final String TREE_CACHE_ATTRIBUTE_PREFIX = NavigationTreeImpl.class.getName() + ".tree:";
+
+  /**
+   * A navigation tree, with everything resolved that does not depend on the page being viewed.
+   * The page-specific parts, such as {@code thisPage} classes and page indexes, are applied while writing.
+   *
+   * <p>Trees are cached in the {@linkplain SemanticCMS#getWatchedCache() watched cache}, so a single tree is shared
+   * by every page view that displays it, until any page it was built from changes.  When the file watcher is not
+   * active, or while exporting, trees are instead cached in the
+   * {@linkplain CacheFilter#getCache(javax.servlet.ServletRequest) capture cache}, and only shared within a request
+   * or export.  The children of each node are built on first use, so lazily written trees only build the nodes that
+   * are written.</p>
+   */
+  private static final class Tree {
+
+    private final SemanticCMS semanticCms;
+    private final boolean yuiConfig;
+    private final boolean includeElements;
+    private final int maxDepth;
+    private final Set<Node> nodesWithLinks;
+    private final Set<Node> nodesWithChildLinks;
+    private final Cache cache;
+    private final String cacheAttribute;
+
+    /**
+     * The pages the tree was built from or {@code null} when the tree is not cached.
+     */
+    private final Set<PageRef> pageRefs;
+
+    /**
+     * The top-level nodes.  When {@code skipRoot}, this is the possibly empty list of the root's children,
+     * otherwise is a list of only the root itself.
+     */
+    private List<TreeNode> nodes;
+
+    private Tree(
+        SemanticCMS semanticCms,
+        boolean yuiConfig,
+        boolean includeElements,
+        int maxDepth,
+        Set<Node> nodesWithLinks,
+        Set<Node> nodesWithChildLinks,
+        Cache cache,
+        String cacheAttribute,
+        Set<PageRef> pageRefs
+    ) {
+      this.semanticCms = semanticCms;
+      this.yuiConfig = yuiConfig;
+      this.includeElements = includeElements;
+      this.maxDepth = maxDepth;
+      this.nodesWithLinks = nodesWithLinks;
+      this.nodesWithChildLinks = nodesWithChildLinks;
+      this.cache = cache;
+      this.cacheAttribute = cacheAttribute;
+      this.pageRefs = pageRefs;
+    }
+
+    private TreeNode newNode(PageRef parentPageRef, Node node, int level) {
+      final Page page;
+      final Element element;
+      if (node instanceof Page) {
+        page = (Page) node;
+        element = null;
+      } else if (node instanceof Element) {
+        assert includeElements;
+        element = (Element) node;
+        assert !element.isHidden();
+        page = element.getPage();
+      } else {
+        throw new AssertionError();
+      }
+      final PageRef pageRef = page.getPageRef();
+      // Nodes may be built lazily, after the tree has been cached
+      addDependency(cache, cacheAttribute, pageRefs, pageRef);
+      final String servletPath;
+      if (element == null) {
+        servletPath = pageRef.getServletPath();
+      } else {
+        // TODO: encodeIRIComponent to do this in one shot?
+        String elemIdIri = URIDecoder.decodeURI(URIEncoder.encodeURIComponent(element.getId()));
+        assert elemIdIri != null;
+        String bookPrefix = pageRef.getBookPrefix();
+        String pagePath = pageRef.getPath();
+        int sbLen =
+            bookPrefix.length()
+                + pagePath.length()
+                + 1 // '#'
+                + elemIdIri.length();
+        StringBuilder sb = new StringBuilder(sbLen);
+        sb
+            .append(bookPrefix)
+            .append(pagePath)
+            .append('#')
+            .append(elemIdIri);
+        assert sb.length() == sbLen;
+        servletPath = sb.toString();
+      }
+      return new TreeNode(
+          this,
+          node,
+          page,
+          element,
+          parentPageRef,
+          servletPath,
+          yuiConfig ? encodeHexData(servletPath) : null,
+          semanticCms.getListItemCssClass(node),
+          nodesWithLinks != null && nodesWithLinks.contains(node),
+          level
+      );
+    }
+
+    private List<TreeNode> newNodes(
+        ServletContext servletContext,
+        HttpServletRequest request,
+        HttpServletResponse response,
+        PageRef parentPageRef,
+        Node parent,
+        int level
+    ) throws ServletException, IOException {
+      List<Node> childNodes = NavigationTreeImpl.getChildNodes(servletContext, request, response, includeElements, false, parent);
+      if (nodesWithChildLinks != null) {
+        childNodes = NavigationTreeImpl.filterNodes(childNodes, nodesWithChildLinks);
+      }
+      int size = childNodes.size();
+      if (size == 0) {
+        return Collections.emptyList();
+      }
+      List<TreeNode> treeNodes = new ArrayList<>(size);
+      for (Node childNode : childNodes) {
+        treeNodes.add(newNode(parentPageRef, childNode, level));
+      }
+      return Collections.unmodifiableList(treeNodes);
+    }
+  }
+
+  private static final class TreeNode {
+
+    private final Tree tree;
+    private final Node node;
+    private final Page page;
+    private final Element element;
+    private final PageRef parentPageRef;
+    private final String servletPath;
+    private final String yuiData;
+    private final String listItemCssClass;
+    private final boolean linksToPage;
+    private final int level;
+
+    private volatile List<TreeNode> children;
+
+    private TreeNode(
+        Tree tree,
+        Node node,
+        Page page,
+        Element element,
+        PageRef parentPageRef,
+        String servletPath,
+        String yuiData,
+        String listItemCssClass,
+        boolean linksToPage,
+        int level
+    ) {
+      this.tree = tree;
+      this.node = node;
+      this.page = page;
+      this.element = element;
+      this.parentPageRef = parentPageRef;
+      this.servletPath = servletPath;
+      this.yuiData = yuiData;
+      this.listItemCssClass = listItemCssClass;
+      this.linksToPage = linksToPage;
+      this.level = level;
+    }
+
+    private boolean isWithinMaxDepth() {
+      return tree.maxDepth == 0 || level < tree.maxDepth;
+    }
+
+    /**
+     * Gets the children of this node, building them on first use.
+     */
+    private List<TreeNode> getChildren(
+        ServletContext servletContext,
+        HttpServletRequest request,
+        HttpServletResponse response
+    ) throws ServletException, IOException {
+      if (!isWithinMaxDepth()) {
+        return Collections.emptyList();
+      }
+      List<TreeNode> c = children;
+      if (c == null) {
+        // It is possible to build the same children concurrently, but the result is the same
+        c = tree.newNodes(
+            servletContext,
+            request,
+            response,
+            element == null ? page.getPageRef() : parentPageRef,
+            node,
+            level + 1
+        );
+        children = c;
+      }
+      return c;
+    }
+
+    /**
+     * Checks if this node may have children, without building them.  This may give a false positive when
+     * filtering by link-to and the children have not yet been built.
+     */
+    private boolean mayHaveChildren() {
+      if (!isWithinMaxDepth()) {
+        return false;
+      }
+      List<TreeNode> c = children;
+      if (c != null) {
+        return !c.isEmpty();
+      }
+      if (tree.includeElements) {
+        for (Element childElem : node.getChildElements()) {
+          if (!childElem.isHidden()) {
+            return true;
+          }
+        }
+      }
+      if (element == null) {
+        for (ChildRef childRef : page.getChildRefs()) {
+          // Child not in missing book
+          if (childRef.getPageRef().getBook() != null) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+  }
+
+  private static void appendPageRef(StringBuilder key, PageRef pageRef) {
+    if (pageRef == null) {
+      key.append('\0');
+    } else {
+      key.append(pageRef.getBookName()).append('\0').append(pageRef.getPath()).append('\0');
+    }
+  }
+
+  private static Tree newTree(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      Cache cache,
+      String cacheAttribute,
+      Node root,
+      boolean yuiConfig,
+      boolean includeElements,
+      PageRef linksTo,
+      int maxDepth
+  ) throws ServletException, IOException {
+    // Nodes may be built lazily, after the tree has been cached
+    Set<PageRef> pageRefs = (cacheAttribute == null) ? null : ConcurrentHashMap.newKeySet();
+    // Filter by link-to
+    final Set<Node> nodesWithLinks;
+    final Set<Node> nodesWithChildLinks;
+    if (linksTo == null) {
+      nodesWithLinks = null;
+      nodesWithChildLinks = null;
+    } else {
+      // Find all nodes in the navigation tree that link to the linksToPage
+      nodesWithLinks = new HashSet<>();
+      nodesWithChildLinks = new HashSet<>();
+      findLinks(
+          cache,
+          cacheAttribute,
+          pageRefs,
+          linksTo,
+          nodesWithLinks,
+          nodesWithChildLinks,
+          captureDescendantPages(servletContext, request, response, root, CaptureLevel.META),
+          root,
+          includeElements
+      );
+    }
+    return new Tree(
+        SemanticCMS.getInstance(servletContext),
+        yuiConfig,
+        includeElements,
+        maxDepth,
+        nodesWithLinks,
+        nodesWithChildLinks,
+        cache,
+        cacheAttribute,
+        pageRefs
+    );
+  }
+
+  /**
+   * @param  cacheAttribute  the cache attribute the tree will be stored in or {@code null} when the tree is not cached
+   */
+  private static Tree buildTree(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      Cache cache,
+      String cacheAttribute,
+      Page root,
+      boolean skipRoot,
+      boolean yuiConfig,
+      boolean includeElements,
+      PageRef linksTo,
+      int maxDepth
+  ) throws ServletException, IOException {
+    Tree tree = newTree(servletContext, request, response, cache, cacheAttribute, root, yuiConfig, includeElements, linksTo, maxDepth);
+    addDependency(cache, cacheAttribute, tree.pageRefs, root.getPageRef());
+    if (skipRoot) {
+      tree.nodes = tree.newNodes(servletContext, request, response, null, root, 1);
+    } else {
+      tree.nodes = Collections.singletonList(tree.newNode(null, root, 1));
+    }
+    return tree;
+  }
+
+  /**
+   * Gets the navigation tree, building and caching the tree when not yet in the cache.
+   */
+  private static Tree getTree(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      Page root,
+      boolean skipRoot,
+      boolean yuiConfig,
+      boolean includeElements,
+      PageRef linksTo,
+      int maxDepth
+  ) throws ServletException, IOException {
+    // The page currently being captured is not complete and must not be cached
+    Page currentPage = CurrentPage.getCurrentPage(request);
+    PageRef rootPageRef = root.getPageRef();
+    if (currentPage != null && currentPage.getPageRef().equals(rootPageRef)) {
+      return buildTree(servletContext, request, response, null, null, root, skipRoot, yuiConfig, includeElements, linksTo, maxDepth);
+    }
+    StringBuilder key = new StringBuilder(TREE_CACHE_ATTRIBUTE_PREFIX);
+    appendPageRef(key, rootPageRef);
+    key
+        .append(skipRoot).append('\0')
+        .append(yuiConfig).append('\0')
+        .append(includeElements).append('\0')
+        .append(maxDepth).append('\0');
+    appendPageRef(key, linksTo);
+    String cacheAttribute = key.toString();
+    // Exports record the pages each exported page was derived from in the capture cache
+    Cache cache = Headers.isExporting(request) ? null : SemanticCMS.getInstance(servletContext).getWatchedCache();
+    if (cache == null) {
+      cache = CacheFilter.getCache(request);
+    }
+    Tree tree = cache.getAttribute(cacheAttribute, Tree.class);
+    if (tree == null) {
+      long generation = cache.getGeneration();
+      // It is possible to build the same tree concurrently, but the result is the same
+      tree = buildTree(servletContext, request, response, cache, cacheAttribute, root, skipRoot, yuiConfig, includeElements, linksTo, maxDepth);
+      cache.setAttribute(cacheAttribute, tree, generation);
+    } else {
+      // Record the pages of a shared tree in the capture cache, such as for the output cache
+      Cache captureCache = CacheFilter.getCache(request);
+      if (captureCache != cache) {
+        for (PageRef pageRef : tree.pageRefs) {
+          captureCache.addDependency(cacheAttribute, pageRef);
+        }
+      }
+    }
+    return tree;
+  }
+
+  /**
+   * The server-side parameters of lazily written trees, by the opaque id written into their {@code yuiConfig}.
+   * Only the parameters of trees that have been written are accepted when loading collapsed subtrees, so clients
+   * may not request arbitrary depths or elements.  There is one entry per distinct combination of parameters,
+   * which is bounded by the trees in the application.
+   */
+  private static final class LazyTrees {
+
+    private static final ScopeEE.Application.Attribute<LazyTrees> APPLICATION_ATTRIBUTE =
+        ScopeEE.APPLICATION.attribute(LazyTrees.class.getName());
+
+    private static LazyTrees getInstance(ServletContext servletContext) {
+      return APPLICATION_ATTRIBUTE.context(servletContext).computeIfAbsent(name -> new LazyTrees());
+    }
+
+    private final AtomicLong lastId = new AtomicLong();
+    private final ConcurrentMap<List<Object>, String> idsByParameters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, List<Object>> parametersById = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a lazily written tree.
+     *
+     * @return  the id of the tree, which is the same for every tree with the same parameters
+     */
+    private String register(boolean includeElements, int maxDepth) {
+      return idsByParameters.computeIfAbsent(
+          Arrays.asList(includeElements, maxDepth),
+          parameters -> {
+            String id = Long.toString(lastId.incrementAndGet(), Character.MAX_RADIX);
+            parametersById.put(id, parameters);
+            return id;
+          }
+      );
+    }
+
+    /**
+     * Gets the parameters of a lazily written tree.
+     *
+     * @return  the {@code includeElements} and {@code maxDepth} of the tree or {@code null} when not registered
+     */
+    private List<Object> getParameters(String id) {
+      return parametersById.get(id);
+    }
+  }
+
+  /**
+   * Finds all the pages on the path from the roots of the page DAG to the given page, including the page itself.
+   */
+  private static Set<PageRef> findPathTo(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      PageRef pageRef
+  ) throws ServletException, IOException {
+    Set<PageRef> path = ConcurrentHashMap.newKeySet();
+    CapturePage.traversePagesAnyOrder(
+        servletContext,
+        request,
+        response,
+        pageRef,
+        CaptureLevel.PAGE,
+        page -> {
+          path.add(page.getPageRef());
+          return null;
+        },
+        Page::getParentRefs,
+        // Parent not in missing book
+        parentPage -> parentPage.getBook() != null
+    );
+    return path;
+  }
+
   private static void writeNavigationTreeImpl(
       ServletContext servletContext,
       HttpServletRequest request,
@@ -297,6 +969,7 @@ public final class NavigationTreeImpl {
       String linksToBook,
       String linksToPage,
       int maxDepth,
+      int lazyDepth,
       CaptureLevel captureLevel
   ) throws ServletException, IOException {
     assert captureLevel.compareTo(CaptureLevel.META) >= 0;
@@ -308,29 +981,14 @@ public final class NavigationTreeImpl {
     linksToPage = nullIfEmpty(linksToPage);
 
     // Filter by link-to
-    final Set<Node> nodesWithLinks;
-    final Set<Node> nodesWithChildLinks;
+    final PageRef linksTo;
     if (linksToPage == null) {
       if (linksToBook != null) {
         throw new ServletException("linksToPage must be provided when linksToBook is provided.");
       }
-      nodesWithLinks = null;
-      nodesWithChildLinks = null;
+      linksTo = null;
     } else {
-      // Find all nodes in the navigation tree that link to the linksToPage
-      PageRef linksTo = PageRefResolver.getPageRef(servletContext, request, linksToBook, linksToPage);
-      nodesWithLinks = new HashSet<>();
-      nodesWithChildLinks = new HashSet<>();
-      findLinks(
-          servletContext,
-          request,
-          response,
-          linksTo,
-          nodesWithLinks,
-          nodesWithChildLinks,
-          root,
-          includeElements
-      );
+      linksTo = PageRefResolver.getPageRef(servletContext, request, linksToBook, linksToPage);
     }
 
     PageRef thisPageRef;
@@ -343,74 +1001,79 @@ public final class NavigationTreeImpl {
       thisPageRef = PageRefResolver.getPageRef(servletContext, request, thisBook, thisPage);
     }
 
-    boolean foundThisPage = false;
-    PageIndex pageIndex = PageIndex.getCurrentPageIndex(request);
-    if (skipRoot) {
-      List<Node> childNodes = NavigationTreeImpl.getChildNodes(
-          servletContext,
-          request,
-          response,
-          includeElements,
-          false,
-          root
-      );
-      if (nodesWithChildLinks != null) {
-        childNodes = NavigationTreeImpl.filterNodes(childNodes, nodesWithChildLinks);
-      }
-      if (!childNodes.isEmpty()) {
-        AnyUL_c<?, ?, ?> ul_c = (captureLevel == CaptureLevel.BODY) ? content.ul_c() : null;
-        for (Node childNode : childNodes) {
-          foundThisPage = writeNode(
-              servletContext,
-              request,
-              response,
-              ul_c,
-              currentNode,
-              nodesWithLinks,
-              nodesWithChildLinks,
-              pageIndex,
-              null, // parentPageRef
-              childNode,
-              yuiConfig,
-              includeElements,
-              target,
-              thisPageRef,
-              foundThisPage,
-              maxDepth,
-              1
-          );
-        }
-        if (ul_c != null) {
-          ul_c.__();
-        }
-      }
+    // Lazy loading requires yuiConfig to identify the nodes, and filtering by link-to requires the whole tree
+    if (!yuiConfig || linksTo != null) {
+      lazyDepth = 0;
+    }
+    Set<PageRef> thisPagePath;
+    if (lazyDepth != 0 && thisPageRef != null && thisPageRef.getBook() != null) {
+      thisPagePath = findPathTo(servletContext, request, response, thisPageRef);
     } else {
+      thisPagePath = null;
+    }
+    String lazyTreeId;
+    if (lazyDepth != 0 && captureLevel == CaptureLevel.BODY) {
+      lazyTreeId = LazyTrees.getInstance(servletContext).register(includeElements, maxDepth);
+    } else {
+      lazyTreeId = null;
+    }
+
+    Tree tree = getTree(
+        servletContext,
+        request,
+        response,
+        root,
+        skipRoot,
+        yuiConfig,
+        includeElements,
+        linksTo,
+        maxDepth
+    );
+    if (!skipRoot || !tree.nodes.isEmpty()) {
+      boolean foundThisPage = false;
+      PageIndex pageIndex = PageIndex.getCurrentPageIndex(request);
       AnyUL_c<?, ?, ?> ul_c = (captureLevel == CaptureLevel.BODY) ? content.ul_c() : null;
-      /*foundThisPage =*/ writeNode(
-          servletContext,
-          request,
-          response,
-          ul_c,
-          currentNode,
-          nodesWithLinks,
-          nodesWithChildLinks,
-          pageIndex,
-          null, // parentPageRef
-          root,
-          yuiConfig,
-          includeElements,
-          target,
-          thisPageRef,
-          foundThisPage,
-          maxDepth,
-          1
-      );
+      for (TreeNode treeNode : tree.nodes) {
+        foundThisPage = writeNode(
+            servletContext,
+            request,
+            response,
+            ul_c,
+            currentNode,
+            linksTo != null,
+            pageIndex,
+            treeNode,
+            target,
+            thisPageRef,
+            foundThisPage,
+            lazyDepth,
+            lazyTreeId,
+            thisPagePath
+        );
+      }
       if (ul_c != null) {
         ul_c.__();
       }
     }
   }
 
+  /**
+   * Adds page links for every descendant of a node that is not written, so the links recorded for the current
+   * node are the same whether or not the tree is written lazily.
+   */
+  private static void addPageLinks(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      Node currentNode,
+      TreeNode treeNode
+  ) throws ServletException, IOException {
+    for (TreeNode child : treeNode.getChildren(servletContext, request, response)) {
+      currentNode.addPageLink(child.page.getPageRef());
+      addPageLinks(servletContext, request, response, currentNode, child);
+    }
+  }
+
   @SuppressWarnings("deprecation")
   private static boolean writeNode(
       ServletContext servletContext,
@@ -418,76 +1081,45 @@ public final class NavigationTreeImpl {
       HttpServletResponse response,
       AnyUL_c<?, ?, ?> ul__,
       Node currentNode,
-      Set<Node> nodesWithLinks,
-      Set<Node> nodesWithChildLinks,
+      boolean filterLinksTo,
       PageIndex pageIndex,
-      PageRef parentPageRef,
-      Node node,
-      boolean yuiConfig,
-      boolean includeElements,
+      TreeNode treeNode,
       String target,
       PageRef thisPageRef,
       boolean foundThisPage,
-      int maxDepth,
-      int level
+      int lazyDepth,
+      String lazyTreeId,
+      Set<PageRef> thisPagePath
   ) throws IOException, ServletException {
-    final Page page;
-    final Element element;
-    if (node instanceof Page) {
-      page = (Page) node;
-      element = null;
-    } else if (node instanceof Element) {
-      assert includeElements;
-      element = (Element) node;
-      assert !element.isHidden();
-      page = element.getPage();
-    } else {
-      throw new AssertionError();
-    }
-    final PageRef pageRef = page.getPageRef();
+    final Node node = treeNode.node;
+    final Element element = treeNode.element;
+    final PageRef pageRef = treeNode.page.getPageRef();
+    final int level = treeNode.level;
     if (currentNode != null) {
       // Add page links
       currentNode.addPageLink(pageRef);
     }
-    final String servletPath;
-    if (ul__ == null) {
-      // Will be unused
-      servletPath = null;
-    } else {
-      if (element == null) {
-        servletPath = pageRef.getServletPath();
-      } else {
-        // TODO: encodeIRIComponent to do this in one shot?
-        String elemIdIri = URIDecoder.decodeURI(URIEncoder.encodeURIComponent(element.getId()));
-        assert elemIdIri != null;
-        String bookPrefix = pageRef.getBookPrefix();
-        String pagePath = pageRef.getPath();
-        int sbLen =
-            bookPrefix.length()
-                + pagePath.length()
-                + 1 // '#'
-                + elemIdIri.length();
-        StringBuilder sb = new StringBuilder(sbLen);
-        sb
-            .append(bookPrefix)
-            .append(pagePath)
-            .append('#')
-            .append(elemIdIri);
-        assert sb.length() == sbLen;
-        servletPath = sb.toString();
-      }
-    }
+    // Lazy trees only write the first levels and the path to thisPage
+    final boolean writeChildren =
+        lazyDepth == 0
+            || level < lazyDepth
+            || (element == null && thisPagePath != null && thisPagePath.contains(pageRef));
     AnyLI_c<?, ?, ?> li_c;
     AnyA<?, ? extends AnyUnion_Palpable_Phrasing<?, ?>, ?, ?> a;
     if (ul__ != null) {
       AnyLI<?, ?, ?, ?, ?> li = ul__.li();
-      if (yuiConfig) {
+      String yuiData = treeNode.yuiData;
+      if (yuiData != null) {
+        String yuiConfigEnd =
+            !writeChildren && treeNode.mayHaveChildren()
+                ? ("\",\"lazy\":true,\"tree\":\"" + lazyTreeId + "\"}")
+                : "\"}";
         li.attribute("yuiConfig", attr -> attr
-            .append("{\"data\":\"").append(encodeHexData(servletPath)).append("\"}")
+            .append("{\"data\":\"").append(yuiData).append(yuiConfigEnd)
         );
       }
       li.clazz(
-          SemanticCMS.getInstance(servletContext).getListItemCssClass(node),
+          treeNode.listItemCssClass,
           level == 1 ? "expanded" : null
       );
       li_c = li._c();
@@ -508,10 +1140,10 @@ public final class NavigationTreeImpl {
       thisPageClass = true;
     }
     // Look for linkToPage match
-    boolean linksToPageClass = nodesWithLinks != null && nodesWithLinks.contains(node);
+    boolean linksToPageClass = treeNode.linksToPage;
     if (a != null) {
       if (thisPageClass || linksToPageClass) {
-        if (thisPageClass && nodesWithLinks != null && !linksToPageClass) {
+        if (thisPageClass && filterLinksTo && !linksToPageClass) {
           a.clazz("semanticcms-core-no-link-to-this-page");
         } else if (thisPageClass) {
           a.clazz("semanticcms-core-tree-this-page");
@@ -535,13 +1167,13 @@ public final class NavigationTreeImpl {
         );
       } else {
         URIEncoder.encodeURI(request.getContextPath(), href);
-        URIEncoder.encodeURI(servletPath, href);
+        URIEncoder.encodeURI(treeNode.servletPath, href);
       }
       a.href(response.encodeURL(href.toString()));
       a.__(a__ -> {
         if (node instanceof Page) {
           // Use shortTitle for pages
-          a__.text(PageUtils.getShortTitle(parentPageRef, (Page) node));
+          a__.text(PageUtils.getShortTitle(treeNode.parentPageRef, (Page) node));
         } else {
           a__.text(node);
         }
@@ -552,42 +1184,147 @@ public final class NavigationTreeImpl {
         }
       });
     }
-    if (maxDepth == 0 || level < maxDepth) {
-      List<Node> childNodes = NavigationTreeImpl.getChildNodes(servletContext, request, response, includeElements, false, node);
-      if (nodesWithChildLinks != null) {
-        childNodes = NavigationTreeImpl.filterNodes(childNodes, nodesWithChildLinks);
-      }
-      if (!childNodes.isEmpty()) {
+    if (writeChildren) {
+      List<TreeNode> children = treeNode.getChildren(servletContext, request, response);
+      if (!children.isEmpty()) {
         AnyUL_c<?, ?, ?> ul_c = (li_c != null) ? li_c.ul_c() : null;
-        for (Node childNode : childNodes) {
+        for (TreeNode child : children) {
           foundThisPage = writeNode(
               servletContext,
               request,
               response,
               ul_c,
               currentNode,
-              nodesWithLinks,
-              nodesWithChildLinks,
+              filterLinksTo,
               pageIndex,
-              element == null ? pageRef : parentPageRef,
-              childNode,
-              yuiConfig,
-              includeElements,
+              child,
               target,
               thisPageRef,
               foundThisPage,
-              maxDepth,
-              level + 1
+              lazyDepth,
+              lazyTreeId,
+              thisPagePath
           );
         }
         if (ul_c != null) {
           ul_c.__();
         }
       }
+    } else if (currentNode != null) {
+      addPageLinks(servletContext, request, response, currentNode, treeNode);
     }
     if (li_c != null) {
       li_c.__();
     }
     return foundThisPage;
   }
+
+  /**
+   * Writes the children of a node of a lazily written navigation tree as a JSON array.
+   * Each child has a {@code label}, {@code href}, {@code className}, and {@code data}, along with
+   * {@code "lazy":true} and its {@code tree} when it may have children of its own.
+   *
+   * <p>Only one level of children is written per call.  The tree must have been lazily written by a page, and the
+   * tree's {@code includeElements} and {@code maxDepth} are those it was written with.</p>
+   *
+   * @param  tree  the {@code tree} from the node's {@code yuiConfig}
+   * @param  data  the {@code data} from the node's {@code yuiConfig}
+   * @param  level  the level of the node in the tree, where the top-most nodes are level {@code 1}
+   *
+   * @return  {@code false} when the tree or node was not found and nothing was written
+   *
+   * @see  NavigationTreeServlet
+   */
+  public static boolean writeChildNodesJson(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      String tree,
+      String data,
+      int level
+  ) throws ServletException, IOException {
+    List<Object> parameters = LazyTrees.getInstance(servletContext).getParameters(tree);
+    if (parameters == null) {
+      return false;
+    }
+    final boolean includeElements = (Boolean) parameters.get(0);
+    final int maxDepth = (Integer) parameters.get(1);
+    final String servletPath;
+    try {
+      servletPath = decodeHexData(data);
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+    // Find the node
+    int hashPos = servletPath.indexOf('#');
+    String pagePath = hashPos == -1 ? servletPath : servletPath.substring(0, hashPos);
+    if (pagePath.isEmpty() || pagePath.charAt(0) != '/') {
+      return false;
+    }
+    SemanticCMS semanticCms = SemanticCMS.getInstance(servletContext);
+    Book book = semanticCms.getBook(pagePath);
+    if (book == null) {
+      return false;
+    }
+    Page page = CapturePage.capturePage(
+        servletContext,
+        request,
+        response,
+        PageRefResolver.getPageRef(servletContext, book, pagePath.substring(book.getPathPrefix().length())),
+        includeElements ? CaptureLevel.META : CaptureLevel.PAGE
+    );
+    Node node;
+    if (hashPos == -1) {
+      node = page;
+    } else {
+      if (!includeElements) {
+        return false;
+      }
+      Element element = page.getElementsById().get(URIDecoder.decodeURIComponent(servletPath.substring(hashPos + 1)));
+      if (element == null || element.isHidden()) {
+        return false;
+      }
+      node = element;
+    }
+    Tree lazyTree = newTree(servletContext, request, response, null, null, node, true, includeElements, null, maxDepth);
+    List<TreeNode> children = lazyTree.newNode(null, node, level).getChildren(servletContext, request, response);
+    response.setContentType(ContentType.JSON);
+    response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+    Writer out = response.getWriter();
+    out.write('[');
+    boolean didOne = false;
+    for (TreeNode child : children) {
+      if (didOne) {
+        out.write(',');
+      } else {
+        didOne = true;
+      }
+      out.write("{\"label\":");
+      encodeTextInJavaScript(
+          child.element == null
+              ? PageUtils.getShortTitle(child.parentPageRef, child.page)
+              : child.node.toString(),
+          out
+      );
+      StringBuilder href = new StringBuilder();
+      URIEncoder.encodeURI(request.getContextPath(), href);
+      URIEncoder.encodeURI(child.servletPath, href);
+      out.write(",\"href\":");
+      encodeTextInJavaScript(response.encodeURL(href.toString()), out);
+      if (child.listItemCssClass != null) {
+        out.write(",\"className\":");
+        encodeTextInJavaScript(child.listItemCssClass, out);
+      }
+      out.write(",\"data\":\"");
+      out.write(child.yuiData);
+      out.write('"');
+      if (child.mayHaveChildren()) {
+        out.write(",\"lazy\":true,\"tree\":");
+        encodeTextInJavaScript(tree, out);
+      }
+      out.write('}');
+    }
+    out.write(']');
+    return true;
+  }
 }
@@ -1,6 +1,6 @@
 /*
  * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
- * Copyright (C) 2013, 2014, 2015, 2016, 2017, 2018, 2019, 2020, 2021, 2022, 2023, 2025  AO Industries, Inc.
+ * Copyright (C) 2013, 2014, 2015, 2016, 2017, 2018, 2019, 2020, 2021, 2022, 2023, 2025, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -39,20 +39,28 @@ import com.aoapps.web.resources.registry.Registry;
 import com.aoapps.web.resources.servlet.RegistryEE;
 import com.semanticcms.core.model.Book;
 import com.semanticcms.core.model.ChildRef;
+import com.semanticcms.core.model.Element;
 import com.semanticcms.core.model.Node;
 import com.semanticcms.core.model.Page;
 import com.semanticcms.core.model.PageRef;
 import com.semanticcms.core.model.ParentRef;
+import com.semanticcms.core.servlet.Cache;
+import com.semanticcms.core.servlet.CacheFilter;
 import com.semanticcms.core.servlet.CaptureLevel;
 import com.semanticcms.core.servlet.CapturePage;
+import com.semanticcms.core.servlet.ConcurrencyCoordinator;
+import com.semanticcms.core.servlet.ConditionalGet;
 import com.semanticcms.core.servlet.CurrentNode;
 import com.semanticcms.core.servlet.CurrentPage;
+import com.semanticcms.core.servlet.OutputCache;
+import com.semanticcms.core.servlet.PageRefResolver;
 import com.semanticcms.core.servlet.PageUtils;
 import com.semanticcms.core.servlet.SemanticCMS;
 import com.semanticcms.core.servlet.Theme;
 import com.semanticcms.core.servlet.View;
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
@@ -179,6 +187,102 @@ public final class PageImpl {
     }
   }
 
+  /**
+   * The cache attribute holding the targets of the links written by each page, along with the level each target is
+   * captured at when its link is written.
+   */
+  private static final String LINK_TARGETS_CACHE_ATTRIBUTE = PageImpl.class.getName() + ".linkTargets";
+
+  /**
+   * Records the target of a link written by the page currently being captured at {@link CaptureLevel#META}.
+   * Only links written by {@link LinkImpl} are recorded, so pages linked by other means, such as the nodes of
+   * navigation trees, are not prefetched.
+   *
+   * @param  level  {@link CaptureLevel#META} for links to elements, otherwise {@link CaptureLevel#PAGE}
+   *
+   * @see  #prefetchPageLinks(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.PageRef)
+   */
+  static void addLinkTarget(HttpServletRequest request, PageRef pageRef, PageRef targetPageRef, CaptureLevel level) {
+    Cache cache = CacheFilter.getCache(request);
+    @SuppressWarnings("unchecked")
+    Map<PageRef, Map<PageRef, CaptureLevel>> linkTargets = cache.getAttribute(
+        LINK_TARGETS_CACHE_ATTRIBUTE,
+        Map.class,
+        () -> cache.newMap()
+    );
+    Map<PageRef, CaptureLevel> targets = linkTargets.get(pageRef);
+    if (targets == null) {
+      targets = cache.newMap();
+      Map<PageRef, CaptureLevel> existing = linkTargets.putIfAbsent(pageRef, targets);
+      if (existing != null) {
+        targets = existing;
+      }
+    }
+    targets.merge(targetPageRef, level, (level1, level2) -> level1.compareTo(level2) >= 0 ? level1 : level2);
+    cache.addDependency(LINK_TARGETS_CACHE_ATTRIBUTE, pageRef);
+  }
+
+  /**
+   * Captures the targets of all links on a page, in a single batch, before the page body is invoked at
+   * {@link CaptureLevel#BODY}.  The links written by the body will then find their targets in the cache instead
+   * of capturing each target in turn.
+   *
+   * <p>The link targets are recorded during a {@link CaptureLevel#META} capture of the page.  Each target is
+   * captured at the level its link will capture it at: {@link CaptureLevel#META} for links to elements, otherwise
+   * {@link CaptureLevel#PAGE}.  When the {@link CaptureLevel#META} capture was found in the cache without its link
+   * targets, such as after an unrelated page was invalidated, nothing is prefetched.</p>
+   *
+   * <p>This is only done when {@linkplain ConcurrencyCoordinator#useConcurrentSubrequests(javax.servlet.ServletRequest) concurrent subrequests}
+   * are used, since otherwise the targets would still be captured one at a time, with the additional capture of the
+   * page itself.</p>
+   */
+  private static void prefetchPageLinks(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      PageRef pageRef
+  ) throws ServletException, IOException {
+    if (ConcurrencyCoordinator.useConcurrentSubrequests(request)) {
+      Page metaPage = CapturePage.capturePage(servletContext, request, response, pageRef, CaptureLevel.META);
+      @SuppressWarnings("unchecked")
+      Map<PageRef, Map<PageRef, CaptureLevel>> linkTargets = CacheFilter.getCache(request).getAttribute(
+          LINK_TARGETS_CACHE_ATTRIBUTE,
+          Map.class
+      );
+      Map<PageRef, CaptureLevel> targets = (linkTargets == null) ? null : linkTargets.get(metaPage.getPageRef());
+      if (targets != null) {
+        Set<PageRef> pageTargets = new LinkedHashSet<>();
+        Set<PageRef> metaTargets = new LinkedHashSet<>();
+        for (Map.Entry<PageRef, CaptureLevel> entry : targets.entrySet()) {
+          PageRef targetPageRef = entry.getKey();
+          // Already captured
+          if (!targetPageRef.equals(metaPage.getPageRef())) {
+            (entry.getValue() == CaptureLevel.META ? metaTargets : pageTargets).add(targetPageRef);
+          }
+        }
+        // Capture the element targets first, since they also satisfy any lookups at PAGE level
+        if (!metaTargets.isEmpty()) {
+          CapturePage.capturePages(
+              servletContext,
+              request,
+              response,
+              PageUtils.filterNotMissingBook(metaTargets),
+              CaptureLevel.META
+          );
+        }
+        if (!pageTargets.isEmpty()) {
+          CapturePage.capturePages(
+              servletContext,
+              request,
+              response,
+              PageUtils.filterNotMissingBook(pageTargets),
+              CaptureLevel.PAGE
+          );
+        }
+      }
+    }
+  }
+
   /**
    * @param  <Ex>  An arbitrary exception type that may be thrown
    * @param pageRef  the default path to this page, this might be changed during page processing
@@ -317,6 +421,23 @@ public final class PageImpl {
                     try {
                       final CaptureLevel captureLevel = CaptureLevel.getCaptureLevel(request);
                       if (captureLevel == CaptureLevel.BODY) {
+                        if (CapturePage.getCaptureContext(request) == null) {
+                          // Write the cached output of the page being served without capturing its body
+                          SemanticCMS semanticCms = SemanticCMS.getInstance(servletContext);
+                          if (
+                              OutputCache.writeCached(
+                                  servletContext,
+                                  request,
+                                  response,
+                                  getView(semanticCms, request),
+                                  getTheme(semanticCms),
+                                  page
+                              )
+                          ) {
+                            throw ServletUtil.SKIP_PAGE_EXCEPTION;
+                          }
+                        }
+                        prefetchPageLinks(servletContext, request, response, pageRef);
                         // Invoke page body, capturing output
                         page.setBody(body.doBody(false, page).trim());
                       } else {
@@ -346,6 +467,8 @@ public final class PageImpl {
                 RegistryEE.Page.set(request, oldPageRegistry);
               }
               doAutoParents(servletContext, page);
+              // Share the final page reference with the references to this page held by other captured pages
+              page.setPageRef(PageRefResolver.getPageRef(servletContext, page.getPageRef()));
             } finally {
               page.freeze();
             }
@@ -357,52 +480,13 @@ public final class PageImpl {
               // Perform full verification now since not interacting with the page cache
               fullVerifyParentChild(servletContext, request, response, page);
 
-              // Resolve the view
               SemanticCMS semanticCms = SemanticCMS.getInstance(servletContext);
-              View view;
-              {
-                String viewName = request.getParameter(SemanticCMS.VIEW_PARAM);
-                Map<String, View> viewsMap = semanticCms.getViewsByName();
-                if (viewName == null) {
-                  view = null;
-                } else {
-                  if (SemanticCMS.DEFAULT_VIEW_NAME.equals(viewName)) {
-                    throw new ServletException(SemanticCMS.VIEW_PARAM + " paramater may not be sent for default view: " + viewName);
-                  }
-                  view = viewsMap.get(viewName);
-                }
-                if (view == null) {
-                  // Find default
-                  view = viewsMap.get(SemanticCMS.DEFAULT_VIEW_NAME);
-                  if (view == null) {
-                    throw new ServletException("Default view not found: " + SemanticCMS.DEFAULT_VIEW_NAME);
-                  }
-                }
-              }
+              View view = getView(semanticCms, request);
+              Theme theme = getTheme(semanticCms);
 
-              // Find the theme
-              Theme theme = null;
-              {
-                // Currently just picks the first non-default theme registered, the uses default
-                Theme defaultTheme = null;
-                for (Theme t : semanticCms.getThemes().values()) {
-                  if (t.isDefault()) {
-                    assert defaultTheme == null : "More than one default theme registered";
-                    defaultTheme = t;
-                  } else {
-                    // Use first non-default
-                    theme = t;
-                    break;
-                  }
-                }
-                if (theme == null) {
-                  // Use default
-                  if (defaultTheme == null) {
-                    throw new ServletException("No themes registered");
-                  }
-                  theme = defaultTheme;
-                }
-                assert theme != null;
+              // Answer conditional requests without rendering the theme
+              if (ConditionalGet.checkNotModified(servletContext, request, response, view, theme, page)) {
+                throw ServletUtil.SKIP_PAGE_EXCEPTION;
               }
 
               // Clear the output buffer
@@ -439,7 +523,7 @@ public final class PageImpl {
 
                 // Forward to theme
                 if (!response.isCommitted()) {
-                  theme.doTheme(servletContext, request, response, view, page);
+                  OutputCache.doTheme(servletContext, request, response, view, theme, page);
                 } else {
                   logger.log(Level.FINE, "Not forwarding to theme due to response already committed: request.servletPath = {0}, theme = {1}",
                       new Object[] {request.getServletPath(), theme});
@@ -472,14 +556,39 @@ public final class PageImpl {
     }
   }
 
-  // TODO: Profile this since have many books now.  Maybe create method on SemanticCMS for this lookup
-  private static Book findBookByContentRoot(ServletContext servletContext, PageRef pageRef) {
-    for (Book book : SemanticCMS.getInstance(servletContext).getBooks().values()) {
-      if (pageRef.equals(book.getContentRoot())) {
-        return book;
+  /**
+   * Resolves the view from the request parameter, or the default view when not provided.
+   */
+  private static View getView(SemanticCMS semanticCms, HttpServletRequest request) throws ServletException {
+    View view;
+    String viewName = request.getParameter(SemanticCMS.VIEW_PARAM);
+    if (viewName == null) {
+      view = null;
+    } else {
+      if (SemanticCMS.DEFAULT_VIEW_NAME.equals(viewName)) {
+        throw new ServletException(SemanticCMS.VIEW_PARAM + " paramater may not be sent for default view: " + viewName);
+      }
+      view = semanticCms.getViewsByName().get(viewName);
+    }
+    if (view == null) {
+      // Find default
+      view = semanticCms.getDefaultView();
+      if (view == null) {
+        throw new ServletException("Default view not found: " + SemanticCMS.DEFAULT_VIEW_NAME);
       }
     }
-    return null;
+    return view;
+  }
+
+  /**
+   * Finds the selected theme.
+   */
+  private static Theme getTheme(SemanticCMS semanticCms) throws ServletException {
+    Theme theme = semanticCms.getSelectedTheme();
+    if (theme == null) {
+      throw new ServletException("No themes registered");
+    }
+    return theme;
   }
 
   private static void doAutoParents(ServletContext servletContext, Page page) throws ServletException, MalformedURLException {
@@ -490,7 +599,8 @@ public final class PageImpl {
       PageRef pageRef = page.getPageRef();
 
       // If this page is the "content.root" of a book, include all parents configured when book imported.
-      Book book = findBookByContentRoot(servletContext, pageRef);
+      SemanticCMS semanticCms = SemanticCMS.getInstance(servletContext);
+      Book book = semanticCms.getBookByContentRoot(pageRef);
       if (book != null) {
         for (ParentRef bookParentRef : book.getParentRefs()) {
           page.addParentRef(bookParentRef);
@@ -518,13 +628,13 @@ public final class PageImpl {
           String endSlashPath = pagePath.substring(0, nextLastSlash + 1);
           PageRef indexJspxPageRef = new PageRef(pageBook, endSlashPath + "index.jspx");
           if (servletContextCache.getResource(indexJspxPageRef.getServletPath()) != null) {
-            page.addParentRef(new ParentRef(indexJspxPageRef, null));
+            page.addParentRef(PageRefResolver.getParentRef(servletContext, indexJspxPageRef));
           } else {
             PageRef indexJspPageRef = new PageRef(pageBook, endSlashPath + "index.jsp");
             if (servletContextCache.getResource(indexJspPageRef.getServletPath()) != null) {
-              page.addParentRef(new ParentRef(indexJspPageRef, null));
+              page.addParentRef(PageRefResolver.getParentRef(servletContext, indexJspPageRef));
             } else {
-              page.addParentRef(new ParentRef(new PageRef(pageBook, endSlashPath), null));
+              page.addParentRef(PageRefResolver.getParentRef(servletContext, new PageRef(pageBook, endSlashPath)));
             }
           }
         } else {
@@ -536,13 +646,13 @@ public final class PageImpl {
           String endSlashPath = pagePath.substring(0, lastSlash + 1);
           PageRef indexJspxPageRef = new PageRef(pageBook, endSlashPath + "index.jspx");
           if (servletContextCache.getResource(indexJspxPageRef.getServletPath()) != null) {
-            page.addParentRef(new ParentRef(indexJspxPageRef, null));
+            page.addParentRef(PageRefResolver.getParentRef(servletContext, indexJspxPageRef));
           } else {
             PageRef indexJspPageRef = new PageRef(pageBook, endSlashPath + "index.jsp");
             if (servletContextCache.getResource(indexJspPageRef.getServletPath()) != null) {
-              page.addParentRef(new ParentRef(indexJspPageRef, null));
+              page.addParentRef(PageRefResolver.getParentRef(servletContext, indexJspPageRef));
             } else {
-              page.addParentRef(new ParentRef(new PageRef(pageBook, endSlashPath), null));
+              page.addParentRef(PageRefResolver.getParentRef(servletContext, new PageRef(pageBook, endSlashPath)));
             }
           }
         }
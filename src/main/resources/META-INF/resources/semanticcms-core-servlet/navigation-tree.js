@@ -0,0 +1,85 @@
+/*
+ * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-servlet.
+ *
+ * semanticcms-core-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Loads the collapsed subtrees of lazily written navigation trees into a YUI TreeView.
+ * Requires the YUI treeview, connection, and json modules.
+ */
+var semanticcms_core_servlet = semanticcms_core_servlet || {};
+
+/**
+ * Enables loading of collapsed subtrees on a tree built from the markup of a lazily written navigation tree.
+ * Call before rendering the tree.
+ *
+ * @param  tree         the YAHOO.widget.TreeView
+ * @param  contextPath  the context path of the application
+ */
+semanticcms_core_servlet.lazyNavigationTree = function(tree, contextPath) {
+  function isLazy(node) {
+    return node.data && node.data.lazy && node.data.tree;
+  }
+  // Nodes without children that are not lazy have nothing to load
+  function markLeaves(node) {
+    var children = node.children;
+    if (children.length === 0) {
+      if (!isLazy(node)) {
+        node.isLeaf = true;
+      }
+    } else {
+      for (var i = 0; i < children.length; i++) {
+        markLeaves(children[i]);
+      }
+    }
+  }
+  var rootChildren = tree.getRoot().children;
+  for (var i = 0; i < rootChildren.length; i++) {
+    markLeaves(rootChildren[i]);
+  }
+  tree.setDynamicLoad(function(node, onComplete) {
+    if (!isLazy(node)) {
+      onComplete();
+      return;
+    }
+    YAHOO.util.Connect.asyncRequest(
+      "GET",
+      contextPath + "/semanticcms-core-servlet/navigation-tree"
+        + "?tree=" + encodeURIComponent(node.data.tree)
+        + "&data=" + encodeURIComponent(node.data.data)
+        // The top-most nodes are at depth 0
+        + "&level=" + (node.depth + 1),
+      {
+        success: function(o) {
+          var children = YAHOO.lang.JSON.parse(o.responseText);
+          for (var i = 0; i < children.length; i++) {
+            var child = new YAHOO.widget.TextNode(children[i], node, false);
+            child.isLeaf = !children[i].lazy;
+          }
+          onComplete();
+        },
+        failure: function() {
+          onComplete();
+        }
+      }
+    );
+  }, 1);
+};
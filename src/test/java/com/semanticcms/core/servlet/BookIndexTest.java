@@ -0,0 +1,148 @@
+/*
+ * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-servlet.
+ *
+ * semanticcms-core-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.servlet;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.semanticcms.core.model.Book;
+import com.semanticcms.core.model.PageRef;
+import com.semanticcms.core.model.ParentRef;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests {@link BookIndex#getBook(java.lang.String)} against the linear search it replaced, and the shared references.
+ */
+public class BookIndexTest {
+
+  private static Book newBook(String name) {
+    return new Book(name, "~/cvswork" + name, true, Collections.emptySet(), new Properties());
+  }
+
+  private static BookIndex newBookIndex(String... names) {
+    Map<String, Book> books = new LinkedHashMap<>();
+    for (String name : names) {
+      books.put(name, newBook(name));
+    }
+    return new BookIndex(books, Collections.emptySet(), books.values().iterator().next(), Collections.emptyMap(), 0, new byte[0]);
+  }
+
+  /**
+   * The search by successively shorter prefixes that was used before the index.
+   */
+  private static Book getBookLinear(Map<String, Book> books, String servletPath) {
+    final int originalLen = servletPath.length();
+    int len = originalLen;
+    // Quick path for initial trailing slash: avoid map lookup that will never match
+    if (servletPath.charAt(len - 1) == '/') {
+      len -= 1;
+    }
+    while (len > 0) {
+      servletPath = servletPath.substring(0, len);
+      // Do not match the full servletPath as a book
+      if (len < originalLen) {
+        Book book = books.get(servletPath);
+        if (book != null) {
+          return book;
+        }
+      }
+      len = servletPath.lastIndexOf('/');
+    }
+    return books.get("/");
+  }
+
+  private static void assertMatchesLinear(BookIndex index, String servletPath) {
+    assertSame(servletPath, getBookLinear(index.getBooks(), servletPath), index.getBook(servletPath));
+  }
+
+  @Test
+  public void testSegmentBoundaries() {
+    BookIndex index = newBookIndex("/", "/api", "/api/v1", "/apidocs");
+    Map<String, Book> books = index.getBooks();
+    assertSame(books.get("/api"), index.getBook("/api/index.jspx"));
+    assertSame(books.get("/api"), index.getBook("/api/"));
+    assertSame(books.get("/api/v1"), index.getBook("/api/v1/index.jspx"));
+    assertSame(books.get("/apidocs"), index.getBook("/apidocs/index.html"));
+    // Never matches the full servlet path
+    assertSame(books.get("/"), index.getBook("/api"));
+    assertSame(books.get("/api"), index.getBook("/api/v1"));
+    // Not along a segment boundary
+    assertSame(books.get("/"), index.getBook("/apix/index.jspx"));
+    assertSame(books.get("/api"), index.getBook("/api/v10/index.jspx"));
+  }
+
+  @Test
+  public void testNoRootBook() {
+    BookIndex index = newBookIndex("/api", "/docs");
+    assertNull(index.getBook("/index.jspx"));
+    assertNull(index.getBook("/api"));
+    assertSame(index.getBooks().get("/docs"), index.getBook("/docs/"));
+  }
+
+  @Test
+  public void testMatchesLinear() {
+    BookIndex index = newBookIndex("/", "/a", "/a/b", "/a/b/c", "/ab", "/abc/d", "/b", "/ba/a");
+    String[] paths = {
+        "/", "//", "/a", "/a/", "/a//", "/a/b", "/a/b/", "/a/b/c", "/a/b/c/", "/a/b/c/d", "/a/bc/d",
+        "/ab", "/ab/", "/abc", "/abc/", "/abc/d", "/abc/d/", "/abc/de/", "/b/a", "/ba/a/x", "/ba/ab/x", "/c/a/b/"
+    };
+    for (String path : paths) {
+      assertMatchesLinear(index, path);
+    }
+  }
+
+  @Test
+  public void testMatchesLinearRandom() {
+    BookIndex index = newBookIndex("/", "/a", "/a/b", "/a/b/c", "/ab", "/abc/d", "/b", "/ba/a");
+    char[] chars = {'/', '/', 'a', 'b', 'c', 'd'};
+    Random random = new Random(20261019L);
+    StringBuilder path = new StringBuilder();
+    for (int i = 0; i < 100000; i++) {
+      path.setLength(0);
+      path.append('/');
+      for (int j = random.nextInt(10); j > 0; j--) {
+        path.append(chars[random.nextInt(chars.length)]);
+      }
+      assertMatchesLinear(index, path.toString());
+    }
+  }
+
+  @Test
+  public void testInternParentRef() {
+    BookIndex index = newBookIndex("/", "/docs");
+    Book docs = index.getBooks().get("/docs");
+    PageRef pageRef = index.internPageRef(new PageRef(docs, "/index.jspx"));
+    ParentRef parentRef = index.internParentRef(new PageRef(docs, "/index.jspx"));
+    assertSame(pageRef, parentRef.getPageRef());
+    assertNull(parentRef.getShortTitle());
+    assertSame(parentRef, index.internParentRef(new PageRef(docs, "/index.jspx")));
+    assertNotSame(parentRef, index.internParentRef(new PageRef(docs, "/other.jspx")));
+  }
+}
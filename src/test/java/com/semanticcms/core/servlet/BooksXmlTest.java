@@ -0,0 +1,113 @@
+/*
+ * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-servlet.
+ *
+ * semanticcms-core-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.servlet;
+package com.semanticcms.core.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.aoapps.lang.xml.XmlUtils;
+import com.semanticcms.core.model.Book;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import org.junit.Test;
+
+/**
+ * Tests that books are the same whether or not {@code /WEB-INF/books.xml} is validated.
+ */
+public class BooksXmlTest {
+
+  private static final String BOOKS_XML =
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+          + "<books xmlns=\"https://semanticcms.com/core/servlet/\" rootBook=\"/\">\n"
+          + "  <missingBook name=\"/missing\" />\n"
+          + "  <book name=\"/\" cvsworkDirectory=\"~/cvswork/root\" />\n"
+          + "  <book name=\"/allowed\" cvsworkDirectory=\"~/cvswork/allowed\" allowRobots=\"true\">\n"
+          + "    <parent book=\"/\" page=\"/index.jspx\" />\n"
+          + "  </book>\n"
+          + "  <book name=\"/denied\" cvsworkDirectory=\"~/cvswork/denied\" allowRobots=\"false\">\n"
+          + "    <parent book=\"/\" page=\"/index.jspx\" />\n"
+          + "  </book>\n"
+          + "</books>\n";
+
+  private static List<org.w3c.dom.Element> getBookElems(boolean validate) throws Exception {
+    List<org.w3c.dom.Element> bookElems = new ArrayList<>();
+    for (org.w3c.dom.Element bookElem : XmlUtils.iterableChildElementsByTagName(
+        SemanticCMS.parseBooksXml(BOOKS_XML.getBytes(StandardCharsets.UTF_8), validate).getDocumentElement(),
+        "book"
+    )) {
+      bookElems.add(bookElem);
+    }
+    return bookElems;
+  }
+
+  private static List<Book> getBooks(boolean validate) throws Exception {
+    List<Book> books = new ArrayList<>();
+    for (org.w3c.dom.Element bookElem : getBookElems(validate)) {
+      books.add(SemanticCMS.newBook(bookElem, Collections.emptySet(), new Properties()));
+    }
+    return books;
+  }
+
+  @Test
+  public void testAllowRobotsDefault() throws Exception {
+    for (boolean validate : new boolean[]{true, false}) {
+      List<Book> books = getBooks(validate);
+      assertEquals(3, books.size());
+      assertTrue("Not specified, validate=" + validate, books.get(0).getAllowRobots());
+      assertTrue("Specified, validate=" + validate, books.get(1).getAllowRobots());
+      assertFalse("Specified, validate=" + validate, books.get(2).getAllowRobots());
+    }
+  }
+
+  @Test
+  public void testSameBooksWithoutValidation() throws Exception {
+    List<Book> validated = getBooks(true);
+    List<Book> unvalidated = getBooks(false);
+    assertEquals(validated.size(), unvalidated.size());
+    for (int i = 0; i < validated.size(); i++) {
+      Book expected = validated.get(i);
+      Book actual = unvalidated.get(i);
+      assertEquals(expected.getName(), actual.getName());
+      assertEquals(expected.getPathPrefix(), actual.getPathPrefix());
+      assertEquals(expected.getAllowRobots(), actual.getAllowRobots());
+    }
+  }
+
+  /**
+   * The configuration compared when reloading must not differ, or every book would look changed.
+   */
+  @Test
+  public void testSameAllowRobotsConfigWithoutValidation() throws Exception {
+    List<org.w3c.dom.Element> validated = getBookElems(true);
+    List<org.w3c.dom.Element> unvalidated = getBookElems(false);
+    for (int i = 0; i < validated.size(); i++) {
+      assertEquals(SemanticCMS.getAllowRobots(validated.get(i)), SemanticCMS.getAllowRobots(unvalidated.get(i)));
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-servlet.
+ *
+ * semanticcms-core-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.servlet;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the evaluation of conditional request headers by {@link ConditionalGet}.
+ */
+public class ConditionalGetTest {
+
+  private static final String ETAG = "W/\"0123456789abcdef0123456789abcdef\"";
+
+  private static final long LAST_MODIFIED = 1760000000123L;
+
+  @Test
+  public void testWeakMatchesWeak() {
+    assertTrue(ConditionalGet.matches(ETAG, ETAG));
+  }
+
+  @Test
+  public void testWeakMatchesStrong() {
+    assertTrue(ConditionalGet.matches("\"0123456789abcdef0123456789abcdef\"", ETAG));
+  }
+
+  @Test
+  public void testMatchesInList() {
+    assertTrue(ConditionalGet.matches("\"other\", W/\"0123456789abcdef0123456789abcdef\" , \"another\"", ETAG));
+    assertFalse(ConditionalGet.matches("\"other\", W/\"another\"", ETAG));
+  }
+
+  @Test
+  public void testMatchesAny() {
+    assertTrue(ConditionalGet.matches("*", ETAG));
+  }
+
+  @Test
+  public void testDoesNotMatchUnquoted() {
+    assertFalse(ConditionalGet.matches("0123456789abcdef0123456789abcdef", ETAG));
+  }
+
+  @Test
+  public void testIfModifiedSince() {
+    assertTrue(ConditionalGet.isNotModified(null, LAST_MODIFIED, ETAG, LAST_MODIFIED));
+    assertTrue(ConditionalGet.isNotModified(null, LAST_MODIFIED + 1000, ETAG, LAST_MODIFIED));
+    assertFalse(ConditionalGet.isNotModified(null, LAST_MODIFIED - 1000, ETAG, LAST_MODIFIED));
+    assertFalse(ConditionalGet.isNotModified(null, -1, ETAG, LAST_MODIFIED));
+  }
+
+  @Test
+  public void testIfModifiedSinceWholeSeconds() {
+    // The milliseconds are not sent in HTTP dates
+    assertTrue(ConditionalGet.isNotModified(null, LAST_MODIFIED / 1000 * 1000, ETAG, LAST_MODIFIED));
+  }
+
+  @Test
+  public void testIfNoneMatchTakesPrecedence() {
+    // A mismatched entity tag is modified, even when not modified since
+    assertFalse(ConditionalGet.isNotModified("\"other\"", LAST_MODIFIED, ETAG, LAST_MODIFIED));
+    // A matched entity tag is not modified, even when modified since
+    assertTrue(ConditionalGet.isNotModified(ETAG, LAST_MODIFIED - 1000, ETAG, LAST_MODIFIED));
+  }
+}
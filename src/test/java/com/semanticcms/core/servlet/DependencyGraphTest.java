@@ -0,0 +1,159 @@
+/*
+ * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-servlet.
+ *
+ * semanticcms-core-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.servlet;
+package com.semanticcms.core.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import com.semanticcms.core.model.Book;
+import com.semanticcms.core.model.PageRef;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the transitive invalidation and pruning of {@link DependencyGraph}.
+ */
+public class DependencyGraphTest {
+
+  private Book book;
+  private DependencyGraph graph;
+
+  @Before
+  public void setUp() {
+    book = new Book("/book", "~/book", true, Collections.emptySet(), new Properties());
+    graph = new DependencyGraph();
+  }
+
+  private PageRef newPageRef(String path) {
+    return new PageRef(book, path);
+  }
+
+  private static Set<Object> setOf(Object... entries) {
+    return new HashSet<>(Arrays.asList(entries));
+  }
+
+  @Test
+  public void testInvalidateTransitive() {
+    PageRef root = newPageRef("/index.jspx");
+    PageRef middle = newPageRef("/middle/index.jspx");
+    PageRef page = newPageRef("/middle/page.jspx");
+    // page was captured from middle, which was captured from root
+    graph.addDependency(middle, root);
+    graph.addDependency(page, middle);
+    graph.addDependency("attribute", page);
+    assertEquals(
+        setOf(root, middle, page, "attribute"),
+        graph.invalidate(Collections.singleton(root))
+    );
+  }
+
+  @Test
+  public void testInvalidateOnlyDependents() {
+    PageRef root = newPageRef("/index.jspx");
+    PageRef middle = newPageRef("/middle/index.jspx");
+    PageRef page = newPageRef("/middle/page.jspx");
+    PageRef other = newPageRef("/other.jspx");
+    graph.addDependency(middle, root);
+    graph.addDependency(page, middle);
+    graph.addDependency(other, root);
+    graph.addDependency("attribute", other);
+    // Neither root nor other depend on middle
+    assertEquals(setOf(middle, page), graph.invalidate(Collections.singleton(middle)));
+    assertEquals(setOf(root, other, "attribute"), graph.invalidate(Collections.singleton(root)));
+  }
+
+  @Test
+  public void testInvalidateCycle() {
+    PageRef parent = newPageRef("/index.jspx");
+    PageRef child = newPageRef("/child.jspx");
+    graph.addDependency(parent, child);
+    graph.addDependency(child, parent);
+    assertEquals(setOf(parent, child), graph.invalidate(Collections.singleton(child)));
+    assertEquals(0, graph.size());
+  }
+
+  @Test
+  public void testInvalidateUnknown() {
+    PageRef page = newPageRef("/page.jspx");
+    assertEquals(setOf(page), graph.invalidate(Collections.singleton(page)));
+  }
+
+  @Test
+  public void testPrunedOnInvalidate() {
+    PageRef root = newPageRef("/index.jspx");
+    PageRef page = newPageRef("/page.jspx");
+    PageRef other = newPageRef("/other.jspx");
+    graph.addDependency(page, root);
+    graph.addDependency("attribute", page);
+    graph.addDependency("attribute", other);
+    assertEquals(4, graph.size());
+    graph.invalidate(Collections.singleton(root));
+    // other is no longer a dependency of anything
+    assertEquals(0, graph.size());
+  }
+
+  @Test
+  public void testReusedIdsDoNotCascade() {
+    PageRef root = newPageRef("/index.jspx");
+    PageRef page = newPageRef("/page.jspx");
+    graph.addDependency(page, root);
+    graph.invalidate(Collections.singleton(root));
+    // Reuse the freed ids
+    PageRef other = newPageRef("/other.jspx");
+    PageRef another = newPageRef("/another.jspx");
+    graph.addDependency("attribute", other);
+    graph.addDependency(another, other);
+    assertEquals(3, graph.size());
+    assertEquals(setOf(root), graph.invalidate(Collections.singleton(root)));
+    assertEquals(setOf(page), graph.invalidate(Collections.singleton(page)));
+    assertEquals(setOf(other, another, "attribute"), graph.invalidate(Collections.singleton(other)));
+  }
+
+  @Test
+  public void testRecordedAgainAfterInvalidate() {
+    PageRef root = newPageRef("/index.jspx");
+    PageRef page = newPageRef("/page.jspx");
+    graph.addDependency(page, root);
+    graph.invalidate(Collections.singleton(page));
+    // root is kept only while page depends on it
+    assertEquals(0, graph.size());
+    graph.addDependency(page, root);
+    assertEquals(setOf(root, page), graph.invalidate(Collections.singleton(root)));
+  }
+
+  @Test
+  public void testGeneration() {
+    long generation = graph.getGeneration();
+    graph.addDependency(newPageRef("/page.jspx"), newPageRef("/index.jspx"));
+    assertEquals(generation, graph.getGeneration());
+    graph.invalidate(Collections.singleton(newPageRef("/unknown.jspx")));
+    assertNotEquals(generation, graph.getGeneration());
+  }
+}
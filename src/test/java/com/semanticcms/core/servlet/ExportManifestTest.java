@@ -0,0 +1,181 @@
+/*
+ * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-servlet.
+ *
+ * semanticcms-core-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.servlet.ServletContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the reading, comparison, and dependency checks of {@link ExportManifest}.
+ */
+public class ExportManifestTest {
+
+  private static final String FILE_NAME = ".semanticcms-export";
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory(ExportManifestTest.class.getSimpleName());
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(directory.resolve(FILE_NAME));
+    Files.deleteIfExists(directory);
+  }
+
+  private ExportManifest read(String... lines) throws IOException {
+    Files.write(directory.resolve(FILE_NAME), String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    return ExportManifest.read(directory);
+  }
+
+  /**
+   * Answers {@link ServletContext#getResource(java.lang.String)} with URLs of the given last modified times.
+   */
+  private static final class LastModifiedServletContext {
+
+    private final ServletContext proxy;
+
+    private LastModifiedServletContext(Map<String, Long> lastModifieds) {
+      proxy = (ServletContext) Proxy.newProxyInstance(
+          ExportManifestTest.class.getClassLoader(),
+          new Class<?>[] {ServletContext.class},
+          (p, method, args) -> {
+            if ("getResource".equals(method.getName())) {
+              Long lastModified = lastModifieds.get((String) args[0]);
+              return (lastModified == null) ? null : new URL(
+                  null,
+                  "test:" + args[0],
+                  new URLStreamHandler() {
+                    @Override
+                    protected URLConnection openConnection(URL url) {
+                      return new URLConnection(url) {
+                        @Override
+                        public void connect() {
+                          // Nothing to connect
+                        }
+
+                        @Override
+                        public long getLastModified() {
+                          return lastModified;
+                        }
+                      };
+                    }
+                  }
+              );
+            }
+            throw new UnsupportedOperationException(method.getName());
+          }
+      );
+    }
+  }
+
+  @Test
+  public void testRead() throws IOException {
+    ExportManifest manifest = read(
+        "1000",
+        "content\t/book/page.jspx\t/book/page.jspx\t2000\t/book/other.jspx\t3000"
+    );
+    assertEquals(1000, manifest.getBooksLastModified());
+  }
+
+  @Test
+  public void testReadInvalid() throws IOException {
+    assertNull(read("1000", "content\t/book/page.jspx\t/book/page.jspx"));
+  }
+
+  @Test
+  public void testReadMissing() throws IOException {
+    assertNull(ExportManifest.read(directory));
+  }
+
+  @Test
+  public void testGetRemoved() throws IOException {
+    ExportManifest previous = read(
+        "1000",
+        "content\t/book/page.jspx\t/book/page.jspx\t2000",
+        "content\t/book/removed.jspx\t/book/removed.jspx\t2000",
+        "all\t/book/page.jspx\t/book/page.jspx\t2000"
+    );
+    ExportManifest current = read(
+        "1000",
+        "content\t/book/page.jspx\t/book/page.jspx\t2000",
+        "content\t/book/added.jspx\t/book/added.jspx\t2000"
+    );
+    List<Map.Entry<String, String>> removed = previous.getRemoved(current);
+    assertEquals(2, removed.size());
+    assertTrue(removed.contains(new AbstractMap.SimpleImmutableEntry<>("content", "/book/removed.jspx")));
+    assertTrue(removed.contains(new AbstractMap.SimpleImmutableEntry<>("all", "/book/page.jspx")));
+    assertTrue(current.getRemoved(current).isEmpty());
+  }
+
+  @Test
+  public void testIsCurrent() throws IOException {
+    Map<String, Long> lastModifieds = new HashMap<>();
+    lastModifieds.put("/book/page.jspx", 2000L);
+    lastModifieds.put("/book/page.inc.jspx", 3000L);
+    Map<String, Long> dependencies = new LinkedHashMap<>(lastModifieds);
+    ServletContext servletContext = new LastModifiedServletContext(lastModifieds).proxy;
+    assertTrue(ExportManifest.isCurrent(servletContext, dependencies, new ConcurrentHashMap<>()));
+    // Modified
+    lastModifieds.put("/book/page.inc.jspx", 4000L);
+    assertFalse(ExportManifest.isCurrent(servletContext, dependencies, new ConcurrentHashMap<>()));
+    // Removed
+    lastModifieds.remove("/book/page.inc.jspx");
+    assertFalse(ExportManifest.isCurrent(servletContext, dependencies, new ConcurrentHashMap<>()));
+  }
+
+  @Test
+  public void testIsCurrentLooksUpOnce() throws IOException {
+    Map<String, Long> lastModifieds = Collections.singletonMap("/book/page.jspx", 2000L);
+    ServletContext servletContext = new LastModifiedServletContext(lastModifieds).proxy;
+    ConcurrentHashMap<String, Long> shared = new ConcurrentHashMap<>();
+    shared.put("/book/page.jspx", 5000L);
+    // The shared value from earlier in the export is used
+    assertFalse(ExportManifest.isCurrent(servletContext, lastModifieds, shared));
+  }
+}
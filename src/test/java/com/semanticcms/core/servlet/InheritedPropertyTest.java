@@ -0,0 +1,215 @@
+/*
+ * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-servlet.
+ *
+ * semanticcms-core-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.semanticcms.core.model.Book;
+import com.semanticcms.core.model.ChildRef;
+import com.semanticcms.core.model.Page;
+import com.semanticcms.core.model.PageRef;
+import com.semanticcms.core.model.ParentRef;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import javax.servlet.ServletException;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the memoized resolution of {@link InheritedProperty}, using {@link PageUtils#ALLOW_ROBOTS}.
+ */
+public class InheritedPropertyTest {
+
+  private Book book;
+  private Book otherBook;
+  private Map<PageRef, Page> pages;
+  private List<PageRef> captured;
+  private int batches;
+  private Cache cache;
+
+  @Before
+  public void setUp() {
+    book = new Book("/book", "~/book", true, Collections.emptySet(), new Properties());
+    otherBook = new Book("/other", "~/other", false, Collections.emptySet(), new Properties());
+    pages = new HashMap<>();
+    captured = new ArrayList<>();
+    cache = new ConcurrentCache();
+  }
+
+  private Page newPage(Book pageBook, String path, Boolean allowRobots, Page... parents) {
+    Page page = new Page();
+    PageRef pageRef = new PageRef(pageBook, path);
+    page.setPageRef(pageRef);
+    page.setAllowRobots(allowRobots);
+    for (Page parent : parents) {
+      page.addParentRef(new ParentRef(parent.getPageRef(), null));
+      parent.addChildRef(new ChildRef(pageRef));
+    }
+    pages.put(pageRef, page);
+    return page;
+  }
+
+  private Map<PageRef, Page> capturePages(Set<PageRef> pageRefs) {
+    batches++;
+    Map<PageRef, Page> result = new LinkedHashMap<>();
+    for (PageRef pageRef : pageRefs) {
+      captured.add(pageRef);
+      result.put(pageRef, pages.get(pageRef));
+    }
+    return result;
+  }
+
+  private boolean get(Page page) throws Exception {
+    return PageUtils.ALLOW_ROBOTS.get(cache, this::capturePages, page);
+  }
+
+  private Map<PageRef, Boolean> getAll(Page root) throws Exception {
+    return PageUtils.ALLOW_ROBOTS.getAll(cache, this::capturePages, root);
+  }
+
+  @Test
+  public void testNoParentsUsesBook() throws Exception {
+    Page root = newPage(book, "/index.jspx", null);
+    assertTrue(get(root));
+    assertTrue(captured.isEmpty());
+  }
+
+  @Test
+  public void testOverrideDoesNotCaptureParents() throws Exception {
+    Page root = newPage(book, "/index.jspx", null);
+    Page page = newPage(book, "/page.jspx", false, root);
+    assertFalse(get(page));
+    assertTrue(captured.isEmpty());
+  }
+
+  @Test
+  public void testInheritsThroughAncestors() throws Exception {
+    Page root = newPage(book, "/index.jspx", false);
+    Page middle = newPage(book, "/middle/index.jspx", null, root);
+    Page page = newPage(book, "/middle/page.jspx", null, middle);
+    assertFalse(get(page));
+    assertEquals(2, captured.size());
+  }
+
+  @Test
+  public void testParentsInOtherBooksIgnored() throws Exception {
+    Page otherRoot = newPage(otherBook, "/index.jspx", false);
+    Page page = newPage(book, "/page.jspx", null, otherRoot);
+    assertTrue(get(page));
+    assertTrue(captured.isEmpty());
+  }
+
+  @Test
+  public void testMultipleParentsInheritAndOverride() throws Exception {
+    Page root = newPage(book, "/index.jspx", null);
+    Page overrides = newPage(book, "/overrides.jspx", false, root);
+    Page inheritsOverride = newPage(book, "/inherits-override.jspx", null, overrides);
+    Page page = newPage(book, "/page.jspx", null, overrides, inheritsOverride);
+    assertFalse(get(page));
+    // The overriding parent is captured once, even though reached through both parents
+    assertEquals(2, captured.size());
+    assertEquals(1, Collections.frequency(captured, overrides.getPageRef()));
+  }
+
+  @Test
+  public void testMultipleParentsMismatch() throws Exception {
+    Page root = newPage(book, "/index.jspx", null);
+    Page overrides = newPage(book, "/overrides.jspx", false, root);
+    Page inherits = newPage(book, "/inherits.jspx", null, root);
+    Page page = newPage(book, "/page.jspx", null, overrides, inherits);
+    try {
+      get(page);
+      fail("Mismatched parents must not be combined");
+    } catch (ServletException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void testMemoized() throws Exception {
+    Page root = newPage(book, "/index.jspx", false);
+    Page page1 = newPage(book, "/page1.jspx", null, root);
+    Page page2 = newPage(book, "/page2.jspx", null, root);
+    assertFalse(get(page1));
+    assertEquals(1, captured.size());
+    // Resolved parent is not captured again for a sibling
+    assertFalse(get(page2));
+    assertEquals(1, captured.size());
+    // Resolved page is answered directly
+    assertFalse(get(page1));
+    assertEquals(1, captured.size());
+  }
+
+  @Test
+  public void testMemoizedPerCache() throws Exception {
+    Page root = newPage(book, "/index.jspx", false);
+    Page page = newPage(book, "/page.jspx", null, root);
+    assertFalse(get(page));
+    cache = new ConcurrentCache();
+    assertFalse(get(page));
+    assertEquals(2, captured.size());
+  }
+
+  @Test
+  public void testGetAllResolvesBookInOnePass() throws Exception {
+    Page root = newPage(book, "/index.jspx", null);
+    Page overrides = newPage(book, "/overrides/index.jspx", false, root);
+    Page inherits = newPage(book, "/inherits.jspx", null, root);
+    Page inheritsOverride = newPage(book, "/overrides/page.jspx", null, overrides);
+    newPage(otherBook, "/index.jspx", null, root);
+    Map<PageRef, Boolean> all = getAll(root);
+    assertEquals(4, all.size());
+    assertTrue(all.get(root.getPageRef()));
+    assertFalse(all.get(overrides.getPageRef()));
+    assertTrue(all.get(inherits.getPageRef()));
+    assertFalse(all.get(inheritsOverride.getPageRef()));
+    // One batch per level, with parents already resolved
+    assertEquals(2, batches);
+    assertEquals(3, captured.size());
+    // Resolved values are memoized
+    assertFalse(get(inheritsOverride));
+    assertEquals(2, batches);
+  }
+
+  @Test
+  public void testGetAllWalksSharedChildOnce() throws Exception {
+    Page root = newPage(book, "/index.jspx", false);
+    Page parent1 = newPage(book, "/parent1.jspx", null, root);
+    Page parent2 = newPage(book, "/parent2.jspx", null, root);
+    Page child = newPage(book, "/child.jspx", null, parent1, parent2);
+    Map<PageRef, Boolean> all = getAll(root);
+    assertEquals(4, all.size());
+    assertFalse(all.get(child.getPageRef()));
+    assertEquals(1, Collections.frequency(captured, child.getPageRef()));
+  }
+}
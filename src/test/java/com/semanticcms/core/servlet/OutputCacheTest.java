@@ -0,0 +1,196 @@
+/*
+ * semanticcms-core-servlet - Java API for modeling web page content and relationships in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-servlet.
+ *
+ * semanticcms-core-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.core.servlet;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.aoapps.io.buffer.BufferWriter;
+import com.aoapps.io.buffer.SegmentedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import javax.servlet.ServletContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the staleness of {@link OutputCache} entries when the resources they depend on change.
+ */
+public class OutputCacheTest {
+
+  private static final String PAGE = "/book/page.jspx";
+
+  private static final String OTHER_PAGE = "/book/other.jspx";
+
+  private static final long START = 1760000000000L;
+
+  private Path root;
+  private ServletContext servletContext;
+  private OutputCache outputCache;
+
+  @Before
+  public void setUp() throws IOException {
+    root = Files.createTempDirectory(OutputCacheTest.class.getSimpleName());
+    Files.createDirectories(root.resolve("book"));
+    touch(PAGE, START);
+    touch(OTHER_PAGE, START);
+    servletContext = (ServletContext) Proxy.newProxyInstance(
+        OutputCacheTest.class.getClassLoader(),
+        new Class<?>[] {ServletContext.class},
+        (proxy, method, args) -> {
+          if ("getResource".equals(method.getName())) {
+            File file = resolve((String) args[0]).toFile();
+            return file.exists() ? file.toURI().toURL() : null;
+          }
+          throw new UnsupportedOperationException(method.getName());
+        }
+    );
+    outputCache = new OutputCache(10, false);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(resolve(PAGE));
+    Files.deleteIfExists(resolve(OTHER_PAGE));
+    Files.deleteIfExists(root.resolve("book"));
+    Files.deleteIfExists(root);
+  }
+
+  private Path resolve(String servletPath) {
+    return root.resolve(servletPath.substring(1));
+  }
+
+  private void touch(String servletPath, long lastModified) throws IOException {
+    Path file = resolve(servletPath);
+    if (!Files.exists(file)) {
+      Files.createFile(file);
+    }
+    Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified));
+  }
+
+  private OutputCache.Entry newEntry(long currentTime, String... servletPaths) throws IOException {
+    BufferWriter buffer = new SegmentedWriter();
+    buffer.write("<html></html>");
+    buffer.close();
+    Map<String, Long> dependencies = new HashMap<>();
+    for (String servletPath : servletPaths) {
+      dependencies.put(servletPath, ConditionalGet.getResourceLastModified(servletContext, servletPath));
+    }
+    return new OutputCache.Entry(
+        buffer.getResult(),
+        "text/html;charset=UTF-8",
+        null,
+        Collections.emptyList(),
+        null,
+        Collections.unmodifiableMap(dependencies),
+        currentTime
+    );
+  }
+
+  @Test
+  public void testValidWhenUnchanged() throws IOException {
+    OutputCache.Entry entry = newEntry(START, PAGE, OTHER_PAGE);
+    assertTrue(entry.isValid(servletContext, START + OutputCache.VALIDATE_INTERVAL_MILLIS * 10));
+  }
+
+  @Test
+  public void testStaleWhenDependencyChanged() throws IOException {
+    OutputCache.Entry entry = newEntry(START, PAGE, OTHER_PAGE);
+    touch(OTHER_PAGE, START + 60000);
+    assertFalse(entry.isValid(servletContext, START + OutputCache.VALIDATE_INTERVAL_MILLIS));
+  }
+
+  @Test
+  public void testStaleWhenDependencyRemoved() throws IOException {
+    OutputCache.Entry entry = newEntry(START, PAGE, OTHER_PAGE);
+    Files.delete(resolve(OTHER_PAGE));
+    assertFalse(entry.isValid(servletContext, START + OutputCache.VALIDATE_INTERVAL_MILLIS));
+  }
+
+  @Test
+  public void testChecksThrottled() throws IOException {
+    OutputCache.Entry entry = newEntry(START, PAGE);
+    touch(PAGE, START + 60000);
+    // Not checked again within the interval
+    assertTrue(entry.isValid(servletContext, START + OutputCache.VALIDATE_INTERVAL_MILLIS - 1));
+    assertFalse(entry.isValid(servletContext, START + OutputCache.VALIDATE_INTERVAL_MILLIS));
+  }
+
+  @Test
+  public void testGetValidRemovesStale() throws IOException {
+    OutputCache.Entry entry = newEntry(START, PAGE);
+    assertTrue(outputCache.put("key", entry, outputCache.getGeneration()));
+    assertSame(entry, outputCache.getValid(servletContext, "key", START + OutputCache.VALIDATE_INTERVAL_MILLIS));
+    touch(PAGE, START + 60000);
+    assertNull(outputCache.getValid(servletContext, "key", START + OutputCache.VALIDATE_INTERVAL_MILLIS * 2));
+    assertNull(outputCache.get("key"));
+  }
+
+  @Test
+  public void testWatchedNotChecked() throws IOException {
+    outputCache.setWatched(true);
+    OutputCache.Entry entry = newEntry(START, PAGE);
+    assertTrue(outputCache.put("key", entry, outputCache.getGeneration()));
+    touch(PAGE, START + 60000);
+    // Left to the watcher
+    assertSame(entry, outputCache.getValid(servletContext, "key", START + OutputCache.VALIDATE_INTERVAL_MILLIS));
+    outputCache.invalidate(Collections.singleton(PAGE));
+    assertNull(outputCache.getValid(servletContext, "key", START + OutputCache.VALIDATE_INTERVAL_MILLIS));
+  }
+
+  @Test
+  public void testInvalidateOnlyDependents() throws IOException {
+    OutputCache.Entry pageEntry = newEntry(START, PAGE);
+    OutputCache.Entry bothEntry = newEntry(START, PAGE, OTHER_PAGE);
+    OutputCache.Entry otherEntry = newEntry(START, OTHER_PAGE);
+    long generation = outputCache.getGeneration();
+    assertTrue(outputCache.put("page", pageEntry, generation));
+    assertTrue(outputCache.put("both", bothEntry, generation));
+    assertTrue(outputCache.put("other", otherEntry, generation));
+    outputCache.invalidate(Collections.singleton(OTHER_PAGE));
+    assertSame(pageEntry, outputCache.get("page"));
+    assertNull(outputCache.get("both"));
+    assertNull(outputCache.get("other"));
+  }
+
+  @Test
+  public void testNotAddedWhenRenderedBeforeChange() throws IOException {
+    long generation = outputCache.getGeneration();
+    OutputCache.Entry entry = newEntry(START, PAGE);
+    // Changed while rendering
+    outputCache.invalidate(Collections.singleton(PAGE));
+    assertFalse(outputCache.put("key", entry, generation));
+    assertNull(outputCache.get("key"));
+  }
+}